@@ -0,0 +1,98 @@
+package main;
+
+import main.agent.RentalAgent;
+import main.building.BuildingService;
+import main.client.ClientAgent;
+import main.domain.BookingReply;
+import main.domain.MessageType;
+import main.domain.WireMessage;
+import main.util.MessageSerializer;
+import main.util.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency of a full book -> confirm -> cancel cycle with a client,
+ * an agent and a building running in this JVM, i.e. six broker hops per
+ * request/reply pair. {@code transport=memory} uses the in-JVM broker;
+ * {@code transport=rabbitmq} needs a RabbitMQ broker as configured in rabbitmq.properties.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class BookingCycleBenchmark {
+
+    private static final String BUILDING = "BenchBuilding";
+    private static final long REPLY_TIMEOUT_MS = 5_000;
+
+    @Param({"JAVA", "BINARY"})
+    public WireFormat format;
+
+    @Param({"memory"})
+    public String transport;
+
+    private RentalAgent agent;
+    private BuildingService building;
+    private ClientAgent client;
+    private LocalDate date;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        MessageSerializer.setFormat(format);
+        System.setProperty("transport", transport);
+        agent = new RentalAgent("BenchAgent");
+        agent.start();
+        // Capacity high enough that the cycle never runs out of rooms
+        building = new BuildingService(BUILDING, Integer.MAX_VALUE / 2);
+        building.start();
+        client = new ClientAgent("BenchClient");
+        client.start();
+        date = LocalDate.now().plusDays(1);
+
+        // Wait until the agent has discovered the building
+        for (int i = 0; i < 50; i++) {
+            client.clearReplies();
+            client.requestBuildingList();
+            WireMessage reply = client.waitForReply(REPLY_TIMEOUT_MS);
+            if (reply != null && reply.payload() instanceof BookingReply br
+                    && br.message() != null && br.message().contains(BUILDING)) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("agent did not discover " + BUILDING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.stop();
+        building.stop();
+        agent.stop();
+    }
+
+    @Benchmark
+    public String bookConfirmCancel() throws Exception {
+        client.bookRoom(BUILDING, 1, date, 1);
+        String id = expect(MessageType.BOOK_ROOM).reservationNumber();
+        client.confirmReservation(BUILDING, id);
+        expect(MessageType.CONFIRM_RESERVATION);
+        client.cancelReservation(BUILDING, id);
+        expect(MessageType.CANCEL_RESERVATION);
+        return id;
+    }
+
+    private BookingReply expect(MessageType type) throws InterruptedException {
+        WireMessage reply = client.waitForReply(REPLY_TIMEOUT_MS);
+        if (reply == null || reply.type() != type
+                || !(reply.payload() instanceof BookingReply br) || !br.success()) {
+            throw new IllegalStateException("unexpected reply for " + type + ": " + reply);
+        }
+        return br;
+    }
+}
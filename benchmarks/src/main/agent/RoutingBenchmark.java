@@ -0,0 +1,77 @@
+package main.agent;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.impl.LongStringHelper;
+import main.domain.BookingRequest;
+import main.domain.MessageType;
+import main.domain.WireMessage;
+import main.util.MessageHeaders;
+import main.util.MessageSerializer;
+import main.util.PartitionScheme;
+import main.util.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-message routing decision of {@link RentalAgent}: finding the message
+ * type and target building, checking it against the discovered buildings and picking the
+ * partition with {@link RentalAgent#partitionOf}.
+ * {@code headers} is the header-only path used for current clients, {@code decode}
+ * the fallback for clients that do not send routing headers, which decodes the body
+ * (once to find the building, and once more in {@code partitionOf}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RoutingBenchmark {
+
+    @Param({"JAVA", "BINARY"})
+    public WireFormat format;
+
+    private final Set<String> knownBuildings = ConcurrentHashMap.newKeySet();
+    private final PartitionScheme scheme = new PartitionScheme(4, 7);
+    private AMQP.BasicProperties props;
+    private AMQP.BasicProperties legacyProps;
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        MessageSerializer.setFormat(format);
+        for (int i = 0; i < 100; i++) knownBuildings.add("Building" + i);
+
+        WireMessage msg = new WireMessage(MessageType.BOOK_ROOM, "Client1",
+                new BookingRequest("Building42", 1, LocalDate.of(2030, 1, 15), 2));
+        body = MessageSerializer.serialize(msg);
+
+        // The broker hands string headers back as LongString, so build them the same way
+        Map<String, Object> headers = new HashMap<>();
+        MessageHeaders.headers(msg).forEach((k, v) -> headers.put(k, LongStringHelper.asLongString(v.toString())));
+        props = MessageHeaders.properties(msg, true).builder().headers(headers).build();
+        legacyProps = MessageSerializer.properties(true);
+    }
+
+    @Benchmark
+    public int headers() {
+        MessageType type = MessageHeaders.type(props);
+        String building = MessageHeaders.building(props);
+        if (type != MessageType.BOOK_ROOM || building == null || !knownBuildings.contains(building)) return -1;
+        return RentalAgent.partitionOf(scheme, building, type, props, body);
+    }
+
+    @Benchmark
+    public int decode() {
+        WireMessage msg = MessageSerializer.deserialize(body, legacyProps.getContentType());
+        if (msg.type() != MessageType.BOOK_ROOM || !(msg.payload() instanceof BookingRequest req)
+                || req.building() == null || !knownBuildings.contains(req.building())) return -1;
+        return RentalAgent.partitionOf(scheme, req.building(), msg.type(), legacyProps, body);
+    }
+}
@@ -0,0 +1,88 @@
+package main.building;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the capacity check + update on the building's capacity ledger under contention.
+ * Each operation reserves one room for one hour and releases it again, so the ledger stays in
+ * a steady state. Contention is controlled by the number of distinct dates the
+ * threads spread over ({@code dates=1} means every thread fights for one entry)
+ * and by the thread count of each benchmark method.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CapacityBenchmark {
+
+    @Param({"1", "16", "365"})
+    public int dates;
+
+    private static final LocalTime START = LocalTime.of(9, 0);
+
+    private BuildingService building;
+    private LocalDate[] days;
+
+    @Setup
+    public void setup() {
+        // Capacity high enough that reservations never fail; no broker connection is opened
+        building = new BuildingService("BenchBuilding", Integer.MAX_VALUE / 2);
+        days = new LocalDate[dates];
+        LocalDate start = LocalDate.now().plusDays(1);
+        for (int i = 0; i < dates; i++) days[i] = start.plusDays(i);
+    }
+
+    private boolean reserveAndRelease() {
+        LocalDate d = days[ThreadLocalRandom.current().nextInt(days.length)];
+        boolean ok = building.tryReserve(d, START, 1, 1);
+        if (ok) building.release(d, START, 1, 1);
+        return ok;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean uncontended() {
+        return reserveAndRelease();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads4() {
+        return reserveAndRelease();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean threadsMax() {
+        return reserveAndRelease();
+    }
+
+    /**
+     * Rejected bookings: the date is full, so every attempt fails the capacity check.
+     */
+    @State(Scope.Benchmark)
+    public static class FullBuilding {
+        BuildingService building;
+        LocalDate day;
+
+        @Setup
+        public void setup() {
+            building = new BuildingService("FullBuilding", 1);
+            day = LocalDate.now().plusDays(1);
+            building.tryReserve(day, START, 1, 1);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean rejected(FullBuilding full) {
+        return full.building.tryReserve(full.day, START, 1, 1);
+    }
+}
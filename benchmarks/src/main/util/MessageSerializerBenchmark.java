@@ -0,0 +1,63 @@
+package main.util;
+
+import main.domain.BookingReply;
+import main.domain.BookingRequest;
+import main.domain.MessageType;
+import main.domain.WireMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of the messages that cross every hop:
+ * a BOOK_ROOM request (client -> agent -> building) and its BookingReply.
+ * Run with {@code -prof gc} to see the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageSerializerBenchmark {
+
+    @Param({"JAVA", "BINARY"})
+    public WireFormat format;
+
+    private WireMessage request;
+    private WireMessage reply;
+    private byte[] requestBytes;
+    private String contentType;
+
+    @Setup
+    public void setup() {
+        MessageSerializer.setFormat(format);
+        contentType = MessageSerializer.contentType();
+        request = new WireMessage(MessageType.BOOK_ROOM, "Client1",
+                new BookingRequest("BuildingA", 2, LocalDate.of(2030, 1, 15), 3));
+        reply = new WireMessage(MessageType.BOOK_ROOM, "BuildingA",
+                new BookingReply(true, "9b0c7dd1-24e4-4488-a304-1b99d386bd6e", "Provisional hold created; please confirm"));
+        requestBytes = MessageSerializer.serialize(request);
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() {
+        return MessageSerializer.serialize(request);
+    }
+
+    @Benchmark
+    public WireMessage deserializeRequest() {
+        return MessageSerializer.deserialize(requestBytes, contentType);
+    }
+
+    @Benchmark
+    public WireMessage roundTripRequest() {
+        return MessageSerializer.deserialize(MessageSerializer.serialize(request), contentType);
+    }
+
+    @Benchmark
+    public WireMessage roundTripReply() {
+        return MessageSerializer.deserialize(MessageSerializer.serialize(reply), contentType);
+    }
+}
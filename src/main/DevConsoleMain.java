@@ -5,6 +5,7 @@ import main.building.BuildingService;
 import main.client.ClientAgent;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -27,6 +28,7 @@ public class DevConsoleMain {
      * an interactive command interface for testing.
      *
      * @param args command line arguments where:
+     *             --memory = use the in-JVM broker instead of RabbitMQ (optional, first)
      *             args[0] = agent name (optional)
      *             args[1] = building name (optional)
      *             args[2] = building capacity (optional)
@@ -34,6 +36,11 @@ public class DevConsoleMain {
      * @throws Exception if any component fails to start
      */
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--memory")) {
+            // Run every actor on the in-memory broker; no RabbitMQ needed
+            System.setProperty("transport", "memory");
+            args = java.util.Arrays.copyOfRange(args, 1, args.length);
+        }
         String agentName = argOr(args, 0, "Agent1");
         String building = argOr(args, 1, "BuildingA");
         int capacity = Integer.parseInt(argOr(args, 2, "5"));
@@ -92,16 +99,17 @@ public class DevConsoleMain {
                     case "list" -> client.requestBuildingList();
 
                     case "book" -> {
-                        // book <building> <rooms> <hours> [yyyy-mm-dd]
+                        // book <building> <rooms> <hours> [yyyy-mm-dd] [HH:mm]
                         if (parts.length < 4) {
-                            System.out.println("Usage: book <b> <rooms> <hours> [yyyy-mm-dd]");
+                            System.out.println("Usage: book <b> <rooms> <hours> [yyyy-mm-dd] [HH:mm]");
                             break;
                         }
                         String bld = parts[1];
                         int rooms = Integer.parseInt(parts[2]);
                         int hours = Integer.parseInt(parts[3]);
                         LocalDate date = (parts.length >= 5) ? LocalDate.parse(parts[4]) : LocalDate.now().plusDays(1);
-                        client.bookRoom(bld, rooms, date, hours);
+                        LocalTime start = (parts.length >= 6) ? LocalTime.parse(parts[5]) : null;
+                        client.bookRoom(bld, rooms, date, start, hours);
                     }
 
                     case "confirm" -> {
@@ -171,7 +179,7 @@ public class DevConsoleMain {
                 Commands:
                   help                       - show this help
                   list                       - request list of buildings
-                  book <b> <rooms> <hours> [yyyy-mm-dd]  - book rooms at building b
+                  book <b> <rooms> <hours> [yyyy-mm-dd] [HH:mm]  - book rooms at building b
                   confirm <b> <reservationId>            - confirm a reservation
                   cancel  <b> <reservationId>            - cancel a reservation
                   add-agent [name]            - start another RentalAgent (embedded)
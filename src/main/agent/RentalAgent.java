@@ -1,30 +1,53 @@
 package main.agent;
 
-import com.rabbitmq.client.*;
-import main.config.AppConfig;
+import com.rabbitmq.client.AMQP;
 import main.config.Constants;
 import main.domain.*;
+import main.transport.DeliveryHandler;
+import main.transport.QueueSpec;
+import main.transport.Transport;
+import main.transport.Transports;
+import main.util.MessageHeaders;
 import main.util.MessageSerializer;
+import main.util.PartitionScheme;
 import main.util.RabbitMQConfig;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RentalAgent {
 
     private final String agentName;
-    private Connection connection;
-    private Channel channel;
+    private final boolean ownsTransport; // true if the transport is opened and closed by this agent
+    private Transport transport;
+    private final List<String> consumerTags = new CopyOnWriteArrayList<>();
 
     // learned from building fanout announcements
     private final Set<String> knownBuildings = ConcurrentHashMap.newKeySet();
     private final Map<String, Long> buildingLastSeen = new ConcurrentHashMap<>();
+    // How each building's dates are split over its instances, as announced by them
+    private final Map<String, PartitionScheme> partitionSchemes = new ConcurrentHashMap<>();
     private final boolean verbose = false; // set true if you want periodic "still alive" logs
     private static final long HEARTBEAT_LOG_MS = 60_000; // log at most once per minute per building
 
+    // Availability queries over several partitions of a building: each partition is asked on
+    // the agent's own reply queue, and their merged answer goes to the client
+    private static final long SPLIT_QUERY_TIMEOUT_MS = 5_000;
+    private String queryReplyQueue; // server-named, so replies meant for an earlier run never arrive
+    private final AtomicLong querySequence = new AtomicLong();
+    private final Map<String, SplitQuery> splitQueries = new ConcurrentHashMap<>(); // by correlationId prefix
 
     /**
      * Creates a new rental agent with the specified name.
@@ -32,44 +55,62 @@ public class RentalAgent {
      * @param agentName the unique identifier for this agent
      */
     public RentalAgent(String agentName) {
+        this(agentName, null);
+    }
+
+    /**
+     * Creates a new rental agent that communicates over the given transport.
+     *
+     * @param agentName the unique identifier for this agent
+     * @param transport the transport to use, or null to open the configured one on start
+     *                  (a given transport is not closed by {@link #stop()})
+     */
+    public RentalAgent(String agentName, Transport transport) {
         this.agentName = agentName;
+        this.transport = transport;
+        this.ownsTransport = transport == null;
     }
 
     /**
-     * Starts the agent by connecting to RabbitMQ, setting up message queues,
+     * Starts the agent by connecting to the transport, setting up message queues,
      * and beginning to listen for building announcements and client requests.
      *
-     * @throws IOException      if there's an issue with RabbitMQ connection
+     * @throws IOException      if there's an issue with the connection
      * @throws TimeoutException if the connection times out
      */
     public void start() throws IOException, TimeoutException {
-        connection = RabbitMQConfig.createConnection(AppConfig.getRabbitHost(), AppConfig.getRabbitUser(), AppConfig.getRabbitPass());
-        channel = connection.createChannel();
+        if (ownsTransport) transport = Transports.create();
 
-        declareTopology(channel);
+        declareTopology(transport);
 
-        subscribeDiscovery(channel);      // learn buildings via fanout
-        subscribeClientInbox(channel);    // handle client requests
+        subscribeDiscovery(transport);      // learn buildings via fanout
+        subscribeQueryReplies(transport);   // partial answers of split availability queries
+        subscribeClientInbox(transport);    // handle client requests
 
         System.out.printf("[Agent %s] up. Known buildings: %s%n", agentName, knownBuildings);
     }
 
     /**
-     * Stops the agent and closes all RabbitMQ connections.
+     * Stops the agent and closes its connection.
      *
      * @throws IOException      if there's an issue closing connections
      * @throws TimeoutException if closing times out
      */
     public void stop() throws IOException, TimeoutException {
-        if (channel != null) channel.close();
-        if (connection != null) connection.close();
+        if (ownsTransport && transport != null) {
+            transport.close();
+        } else {
+            for (String tag : consumerTags) transport.cancel(tag); // shared transport stays open
+        }
+        consumerTags.clear();
+        for (SplitQuery query : splitQueries.values()) query.result.cancel(false);
         System.out.printf("[Agent %s] down.%n", agentName);
     }
 
     // topology
 
     // sets up RabbitMQ exchanges and queues
-    private void declareTopology(Channel ch) throws IOException {
+    private void declareTopology(Transport ch) throws IOException {
         // Declare common exchanges
         RabbitMQConfig.declareCommonExchanges(ch);
 
@@ -82,19 +123,25 @@ public class RentalAgent {
     /**
      * Subscribe to building announcements (fanout)
      *
-     * @param ch the RabbitMQ channel to use for subscription
+     * @param ch the transport to use for subscription
      * @throws IOException if subscription fails
      */
-    private void subscribeDiscovery(Channel ch) throws IOException {
-        String tmpQueue = ch.queueDeclare().getQueue(); // auto-delete, exclusive
-        ch.queueBind(tmpQueue, Constants.BUILDINGS_FANOUT_EXCHANGE, "");
+    private void subscribeDiscovery(Transport ch) throws IOException {
+        String tmpQueue = ch.declareQueue(QueueSpec.serverNamed()); // auto-delete, exclusive
+        ch.bindQueue(tmpQueue, Constants.BUILDINGS_FANOUT_EXCHANGE, "");
 
-        DeliverCallback cb = (tag, delivery) -> {
-            String buildingName = new String(delivery.getBody());
+        DeliveryHandler cb = delivery -> {
+            String buildingName = new String(delivery.body());
             if (buildingName == null || buildingName.isBlank()) return;
 
             long now = System.currentTimeMillis();
             Long prev = buildingLastSeen.put(buildingName, now);
+            PartitionScheme scheme = MessageHeaders.partitionScheme(delivery.properties());
+            PartitionScheme prevScheme = partitionSchemes.put(buildingName, scheme);
+            if (prevScheme != null && !prevScheme.equals(scheme)) {
+                System.out.printf("[Agent %s] %s now has %d partitions (was %d)%n", agentName, buildingName,
+                        scheme.partitions(), prevScheme.partitions());
+            }
 
             // First time seeing this building
             if (knownBuildings.add(buildingName) || prev == null) {
@@ -108,118 +155,184 @@ public class RentalAgent {
             }
         };
 
-        ch.basicConsume(tmpQueue, true, cb, tag -> {
-        });
+        consumerTags.add(ch.consume(tmpQueue, true, cb));
+    }
+
+    /**
+     * Subscribe to the partial answers of availability queries split over partitions
+     *
+     * @param ch the transport to use for subscription
+     * @throws IOException if subscription fails
+     */
+    private void subscribeQueryReplies(Transport ch) throws IOException {
+        queryReplyQueue = ch.declareQueue(QueueSpec.serverNamed()); // auto-delete, exclusive
+        DeliveryHandler cb = delivery -> {
+            // correlationId is <query>/<partition>
+            String correlationId = delivery.properties().getCorrelationId();
+            int slash = correlationId == null ? -1 : correlationId.lastIndexOf('/');
+            SplitQuery query = slash < 0 ? null : splitQueries.get(correlationId.substring(0, slash));
+            if (query == null) return; // answered or timed out already
+            try {
+                query.add(Integer.parseInt(correlationId.substring(slash + 1)),
+                        MessageSerializer.deserialize(delivery.body(), delivery.properties().getContentType()));
+            } catch (RuntimeException e) {
+                System.err.printf("[Agent %s] bad availability reply: %s%n", agentName, e.getMessage());
+            }
+        };
+        consumerTags.add(ch.consume(queryReplyQueue, true, cb));
     }
 
     /**
      * Subscribe to the shared client -> agents inbox (round-robin)
      *
-     * @param ch the RabbitMQ channel to use for subscription
+     * @param ch the transport to use for subscription
      * @throws IOException if subscription fails
      */
-    private void subscribeClientInbox(Channel ch) throws IOException {
-        DeliverCallback cb = (tag, delivery) -> {
+    private void subscribeClientInbox(Transport ch) throws IOException {
+        DeliveryHandler cb = delivery -> {
             try {
-                WireMessage msg = MessageSerializer.deserialize(delivery.getBody());
-                handleClientMessage(msg);
+                route(delivery.properties(), delivery.body());
                 // Acknowledge successful processing
-                ch.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+                delivery.ack();
             } catch (Exception e) {
                 System.err.printf("[Agent %s] error handling message: %s%n", agentName, e.getMessage());
                 // Reject and requeue for retry (or use false to send to DLQ if configured)
                 try {
-                    ch.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
+                    delivery.nack(true);
                 } catch (IOException ioEx) {
                     System.err.printf("[Agent %s] Failed to nack message: %s%n", agentName, ioEx.getMessage());
                 }
             }
         };
         // Set autoAck to false for manual acknowledgment
-        ch.basicConsume(Constants.AGENT_INBOX_QUEUE, false, cb, tag -> {
-        });
+        consumerTags.add(ch.consume(Constants.AGENT_INBOX_QUEUE, false, cb));
         System.out.printf("[Agent %s] listening on %s%n", agentName, Constants.AGENT_INBOX_QUEUE);
     }
 
     // message handling
 
-    private void handleClientMessage(WireMessage msg) throws IOException {
+    /**
+     * Routes a client request using its routing headers only, so the body is
+     * forwarded to the building without being decoded or re-encoded.
+     * Requests without headers (older clients), or without the sender header, are decoded
+     * once to find their route and who to answer.
+     *
+     * @param props the AMQP properties of the delivery
+     * @param body  the raw message body
+     * @throws IOException if forwarding or replying fails
+     */
+    private void route(AMQP.BasicProperties props, byte[] body) throws IOException {
+        MessageType type = MessageHeaders.type(props);
+        String building = MessageHeaders.building(props);
+        String sender = MessageHeaders.sender(props);
+        if (type == null || sender == null || (building == null && type != MessageType.REQUEST_BUILDINGS)) {
+            WireMessage msg = MessageSerializer.deserialize(body, props.getContentType());
+            handleClientMessage(msg, props, body);
+            return;
+        }
+        switch (type) {
+            case REQUEST_BUILDINGS -> handleRequestBuildings(sender, props);
+            case BOOK_ROOM, CONFIRM_RESERVATION, CANCEL_RESERVATION, QUERY_AVAILABILITY -> {
+                if (isUnknown(building)) {
+                    replyError(sender, props, "Unknown building: " + building);
+                    return;
+                }
+                if (type == MessageType.QUERY_AVAILABILITY) queryAvailability(building, sender, props, body, null);
+                else forwardToBuilding(building, type, props, body);
+            }
+            default -> replyError(sender, props, "Unsupported message type: " + type);
+        }
+    }
+
+    private void handleClientMessage(WireMessage msg, AMQP.BasicProperties props, byte[] body) throws IOException {
         switch (msg.type()) {
-            case REQUEST_BUILDINGS -> handleRequestBuildings(msg);
-            case BOOK_ROOM -> handleBookRoom(msg);
-            case CONFIRM_RESERVATION -> handleConfirm(msg);
-            case CANCEL_RESERVATION -> handleCancel(msg);
-            default -> replyError(msg.sender(), "Unsupported message type: " + msg.type());
+            case REQUEST_BUILDINGS -> handleRequestBuildings(msg.sender(), props);
+            case BOOK_ROOM, QUERY_AVAILABILITY -> handleBookRoom(msg, props, body);
+            case CONFIRM_RESERVATION -> handleConfirm(msg, props, body);
+            case CANCEL_RESERVATION -> handleCancel(msg, props, body);
+            default -> replyError(msg.sender(), props, "Unsupported message type: " + msg.type());
         }
     }
 
     /**
      * Handles building list requests by sending the current known buildings.
      *
-     * @param msg the incoming request message
+     * @param clientId the ID of the requesting client
+     * @param props    the AMQP properties of the request (reply metadata)
      * @throws IOException if reply fails to send
      */
-    private void handleRequestBuildings(WireMessage msg) throws IOException {
+    private void handleRequestBuildings(String clientId, AMQP.BasicProperties props) throws IOException {
         var list = knownBuildings.stream().sorted().toList();
         var reply = new BookingReply(true, null, list.toString());
         WireMessage out = new WireMessage(MessageType.RESPONSE_BUILDINGS, agentName, reply);
-        replyToClient(msg.sender(), out);
+        replyToClient(clientId, props, out);
     }
 
     /**
-     * Handles room booking requests by validating the building and forwarding to it.
+     * Handles room booking requests and availability queries by validating the building
+     * and forwarding to it.
      *
-     * @param msg the booking request message
+     * @param msg   the decoded booking request message
+     * @param props the AMQP properties of the delivery
+     * @param body  the raw message body to forward
      * @throws IOException if forwarding fails
      */
-    private void handleBookRoom(WireMessage msg) throws IOException {
+    private void handleBookRoom(WireMessage msg, AMQP.BasicProperties props, byte[] body) throws IOException {
         if (!(msg.payload() instanceof BookingRequest req)) {
-            replyError(msg.sender(), "Invalid payload for BOOK_ROOM");
+            replyError(msg.sender(), props, "Invalid payload for " + msg.type());
             return;
         }
         if (isUnknown(req.building())) {
-            replyError(msg.sender(), "Unknown building: " + req.building());
+            replyError(msg.sender(), props, "Unknown building: " + req.building());
+            return;
+        }
+        if (msg.type() == MessageType.QUERY_AVAILABILITY) {
+            queryAvailability(req.building(), msg.sender(), props, body, req);
             return;
         }
-        forwardToBuilding(req.building(), msg); // building replies directly to client (by sender id)
+        forwardToBuilding(req.building(), msg.type(), props, body); // building replies directly to client (by sender id)
     }
 
     /**
      * Handles reservation confirmation requests.
      *
-     * @param msg the confirmation request message
+     * @param msg   the decoded confirmation request message
+     * @param props the AMQP properties of the delivery
+     * @param body  the raw message body to forward
      * @throws IOException if forwarding fails
      */
-    private void handleConfirm(WireMessage msg) throws IOException {
+    private void handleConfirm(WireMessage msg, AMQP.BasicProperties props, byte[] body) throws IOException {
         if (msg.payload() instanceof BookingRequest req) {
             if (isUnknown(req.building())) {
-                replyError(msg.sender(), "Unknown building: " + req.building());
+                replyError(msg.sender(), props, "Unknown building: " + req.building());
                 return;
             }
-            forwardToBuilding(req.building(), msg);
+            forwardToBuilding(req.building(), msg.type(), props, body);
         } else {
-            replyError(msg.sender(), "Invalid payload for CONFIRM_RESERVATION");
+            replyError(msg.sender(), props, "Invalid payload for CONFIRM_RESERVATION");
         }
     }
 
     /**
      * Handles reservation cancellation requests.
      *
-     * @param msg the cancellation request message
+     * @param msg   the decoded cancellation request message
+     * @param props the AMQP properties of the delivery
+     * @param body  the raw message body to forward
      * @throws IOException if forwarding fails
      */
 
-    private void handleCancel(WireMessage msg) throws IOException {
+    private void handleCancel(WireMessage msg, AMQP.BasicProperties props, byte[] body) throws IOException {
         if (msg.payload() instanceof BookingRequest r) {
             if (isUnknown(r.building())) {
-                replyError(msg.sender(), "Unknown building: " + r.building());
+                replyError(msg.sender(), props, "Unknown building: " + r.building());
                 return;
             }
-            forwardToBuilding(r.building(), msg);
+            forwardToBuilding(r.building(), msg.type(), props, body);
         } else if (msg.payload() instanceof String) {
-            replyError(msg.sender(), "Cancel needs building + reservationNumber (BookingRequest), not just the id");
+            replyError(msg.sender(), props, "Cancel needs building + reservationNumber (BookingRequest), not just the id");
         } else {
-            replyError(msg.sender(), "Invalid payload for CANCEL_RESERVATION");
+            replyError(msg.sender(), props, "Invalid payload for CANCEL_RESERVATION");
         }
     }
 
@@ -237,35 +350,155 @@ public class RentalAgent {
 
     /**
      * Forwards a message to a specific building using the direct exchange.
-     * Preserves the original sender so the building can reply directly to the client.
+     * The original body and properties are passed through untouched, which keeps the
+     * original sender (so the building can reply directly to the client), the wire
+     * format and the routing headers.
      *
      * @param buildingName the target building name
-     * @param original     the original message to forward
+     * @param type         the message type (for logging)
+     * @param props        the original AMQP properties
+     * @param body         the original message body
      * @throws IOException if publishing fails
      */
-    private void forwardToBuilding(String buildingName, WireMessage original) throws IOException {
-        // keep original sender (clientId) so Building can reply directly to the client
-        WireMessage forwarded = original;
-        byte[] body = MessageSerializer.serialize(forwarded);
-        String rk = Constants.RK_BUILDING_PREFIX + buildingName;
+    private void forwardToBuilding(String buildingName, MessageType type, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        PartitionScheme scheme = partitionSchemes.getOrDefault(buildingName, PartitionScheme.NONE);
+        String rk = scheme.routingKey(buildingName, partitionOf(scheme, buildingName, type, props, body));
         // Make message persistent for fault tolerance
-        channel.basicPublish(Constants.BUILDING_DIRECT_EXCHANGE, rk, MessageProperties.PERSISTENT_BASIC, body);
-        System.out.printf("[Agent %s] -> [%s] %s%n", agentName, rk, forwarded.type());
+        AMQP.BasicProperties out = Integer.valueOf(2).equals(props.getDeliveryMode())
+                ? props : props.builder().deliveryMode(2).build();
+        transport.publish(Constants.BUILDING_DIRECT_EXCHANGE, rk, out, body);
+        System.out.printf("[Agent %s] -> [%s] %s%n", agentName, rk, type);
+    }
+
+
+    /**
+     * Forwards an availability query. A range over several partitions of a partitioned
+     * building is asked of each of them, with the agent's reply queue and a correlationId
+     * of its own; their answers are merged into one reply to the client, under the query's
+     * original correlationId. A partition that has not answered within
+     * {@value #SPLIT_QUERY_TIMEOUT_MS} ms fails the query.
+     *
+     * @param building the building name
+     * @param clientId the sender of the query
+     * @param props    the AMQP properties of the query
+     * @param body     the raw query body
+     * @param req      the decoded query, or null to decode it if the building is partitioned
+     * @throws IOException if forwarding fails
+     */
+    private void queryAvailability(String building, String clientId, AMQP.BasicProperties props, byte[] body,
+                                   BookingRequest req) throws IOException {
+        PartitionScheme scheme = partitionSchemes.getOrDefault(building, PartitionScheme.NONE);
+        if (scheme.partitioned() && req == null
+                && MessageSerializer.deserialize(body, props.getContentType()).payload() instanceof BookingRequest r) {
+            req = r;
+        }
+        SortedSet<Integer> partitions = partitionsOf(scheme, req);
+        if (partitions.size() <= 1) {
+            forwardToBuilding(building, MessageType.QUERY_AVAILABILITY, props, body);
+            return;
+        }
+
+        String id = Long.toString(querySequence.incrementAndGet(), 36);
+        SplitQuery query = new SplitQuery(building, partitions);
+        splitQueries.put(id, query);
+        query.result.orTimeout(SPLIT_QUERY_TIMEOUT_MS, TimeUnit.MILLISECONDS).whenComplete((reply, e) -> {
+            splitQueries.remove(id);
+            if (e instanceof CancellationException) return; // not sent, or the agent stopped
+            try {
+                if (reply != null) replyToClient(clientId, props, reply);
+                else replyError(clientId, props, "No availability reply from " + building + " partitions "
+                        + query.missing());
+            } catch (IOException ioEx) {
+                System.err.printf("[Agent %s] Failed to reply to %s: %s%n", agentName, clientId, ioEx.getMessage());
+            }
+        });
+        try {
+            for (int p : partitions) {
+                AMQP.BasicProperties out = props.builder().replyTo(queryReplyQueue).correlationId(id + "/" + p)
+                        .deliveryMode(2).build();
+                transport.publish(Constants.BUILDING_DIRECT_EXCHANGE, scheme.routingKey(building, p), out, body);
+            }
+        } catch (IOException e) {
+            query.result.cancel(false); // the query is requeued and asked again
+            throw e;
+        }
+        System.out.printf("[Agent %s] -> [%s] %s over partitions %s%n", agentName, building,
+                MessageType.QUERY_AVAILABILITY, partitions);
     }
 
+    /**
+     * Gets the partitions that serve the days of an availability query.
+     *
+     * @param scheme the building's partition scheme
+     * @param req    the query, or null if it could not be decoded
+     * @return the partitions in order; empty if the building is not partitioned or the query
+     *         is invalid (the building then explains why)
+     */
+    private static SortedSet<Integer> partitionsOf(PartitionScheme scheme, BookingRequest req) {
+        SortedSet<Integer> partitions = new TreeSet<>();
+        if (!scheme.partitioned() || req == null || req.date() == null) return partitions;
+        long first = req.date().toEpochDay();
+        long last = req.endDate() != null ? req.endDate().toEpochDay() : first;
+        if (last < first || last - first >= Availability.MAX_DAYS) return partitions;
+        for (long day = first; day <= last && partitions.size() < scheme.partitions(); day++) {
+            partitions.add(scheme.ofEpochDay(day));
+        }
+        return partitions;
+    }
+
+    /**
+     * Picks the partition of a partitioned building that serves a request: by the booking
+     * date for bookings (and the first day for availability queries within one partition),
+     * by the reservation id for confirm/cancel. Both come from the routing headers; requests
+     * without them (older clients) are decoded.
+     *
+     * @param scheme   the building's partition scheme
+     * @param building the building name
+     * @param type     the message type
+     * @param props    the AMQP properties of the request
+     * @param body     the raw message body
+     * @return the partition index (0 if the building is not partitioned)
+     */
+    static int partitionOf(PartitionScheme scheme, String building, MessageType type,
+                                   AMQP.BasicProperties props, byte[] body) {
+        if (!scheme.partitioned()) return 0;
+        boolean byDate = type == MessageType.BOOK_ROOM || type == MessageType.QUERY_AVAILABILITY;
+        if (byDate) {
+            Long epochDay = MessageHeaders.date(props);
+            if (epochDay != null) return scheme.ofEpochDay(epochDay);
+        } else {
+            String reservation = MessageHeaders.reservation(props);
+            if (reservation != null) return scheme.ofReservation(building, reservation);
+        }
+        if (!(MessageSerializer.deserialize(body, props.getContentType()).payload() instanceof BookingRequest req)) {
+            return 0;
+        }
+        if (byDate) return req.date() != null ? scheme.ofDate(req.date()) : 0;
+        return req.reservationNumber() != null ? scheme.ofReservation(building, req.reservationNumber()) : 0;
+    }
 
     /**
-     * Sends a reply message to a specific client's private queue.
+     * Sends a reply message to the request's replyTo queue, or to the client's private queue.
+     * The correlationId of the request is copied to the reply. A reply with neither is dropped.
      *
      * @param clientId the ID of the client to reply to
+     * @param request  the AMQP properties of the request
      * @param reply    the reply message to send
      * @throws IOException if publishing fails
      */
-    private void replyToClient(String clientId, WireMessage reply) throws IOException {
-        String q = Constants.CLIENT_QUEUE_PREFIX + clientId;
-        channel.queueDeclare(q, false, false, true, null);
+    private void replyToClient(String clientId, AMQP.BasicProperties request, WireMessage reply) throws IOException {
+        if (clientId == null && (request == null || request.getReplyTo() == null || request.getReplyTo().isBlank())) {
+            System.err.printf("[Agent %s] dropping %s: the request names no sender or reply queue%n", agentName,
+                    reply.type());
+            return;
+        }
+        String q = MessageHeaders.replyQueue(request, clientId);
+        if (request == null || request.getReplyTo() == null) {
+            transport.declareQueue(QueueSpec.autoDelete(q));
+        }
         byte[] body = MessageSerializer.serialize(reply);
-        channel.basicPublish("", q, null, body);
+        transport.publish("", q, MessageHeaders.replyProperties(request, clientId), body);
         System.out.printf("[Agent %s] -> [client %s] %s%n", agentName, clientId, reply.type());
     }
 
@@ -273,12 +506,61 @@ public class RentalAgent {
      * Sends an error message to a client.
      *
      * @param clientId the ID of the client to notify
+     * @param request  the AMQP properties of the request
      * @param message  the error message to send
      * @throws IOException if publishing fails
      */
-    private void replyError(String clientId, String message) throws IOException {
+    private void replyError(String clientId, AMQP.BasicProperties request, String message) throws IOException {
         WireMessage err = new WireMessage(MessageType.ERROR, agentName, message);
-        replyToClient(clientId, err);
+        replyToClient(clientId, request, err);
     }
 
+    /**
+     * An availability query asked of several partitions of a building. Each reports its own
+     * days and -1 for the others; the query completes with the merged counts once every
+     * partition answered, or with the first failure one of them reported.
+     */
+    private static final class SplitQuery {
+        private final String building;
+        private final Set<Integer> missing; // partitions that have not answered yet
+        final CompletableFuture<WireMessage> result = new CompletableFuture<>();
+        private LocalDate from;
+        private int[] free; // merged so far
+
+        SplitQuery(String building, Set<Integer> partitions) {
+            this.building = building;
+            this.missing = new TreeSet<>(partitions);
+        }
+
+        /**
+         * Adds the answer of one partition.
+         *
+         * @param partition the partition that answered
+         * @param reply     its reply
+         * @throws IllegalArgumentException if the reply is not an availability reply for the range
+         */
+        synchronized void add(int partition, WireMessage reply) {
+            if (!missing.remove(partition) || result.isDone()) return;
+            if (reply.type() != MessageType.QUERY_AVAILABILITY || !(reply.payload() instanceof BookingReply r)
+                    || !r.success()) {
+                result.complete(reply); // e.g. wrong building: the client gets the building's answer
+                return;
+            }
+            int[] counts = Availability.parse(r.message());
+            if (free == null) {
+                from = Availability.from(r.message());
+                free = counts;
+            } else {
+                Availability.merge(free, counts);
+            }
+            if (missing.isEmpty()) {
+                result.complete(new WireMessage(MessageType.QUERY_AVAILABILITY, building,
+                        new BookingReply(true, null, Availability.format(from, free))));
+            }
+        }
+
+        synchronized String missing() {
+            return missing.toString();
+        }
+    }
 }
@@ -0,0 +1,116 @@
+package main.building;
+
+import main.transport.Delivery;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Acknowledgement window of one consumer channel whose deliveries complete out of order.
+ * <p>
+ * Deliveries are tracked in arrival order. Completing or rejecting one only marks it;
+ * the tracker then acknowledges the longest settled prefix of the window with a single
+ * multiple ack. A multiple ack covers every outstanding delivery up to its tag, so acking
+ * only settled prefixes guarantees it never covers a delivery that is still being
+ * processed on another lane.
+ */
+final class AckTracker {
+
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+    private static final int REJECTED = 2;
+
+    private final ArrayDeque<Ticket> window = new ArrayDeque<>();
+
+    /**
+     * One tracked delivery.
+     */
+    static final class Ticket {
+        final Delivery delivery;
+        private final AckTracker tracker;
+        private volatile int state = PENDING;
+
+        private Ticket(Delivery delivery, AckTracker tracker) {
+            this.delivery = delivery;
+            this.tracker = tracker;
+        }
+    }
+
+    /**
+     * Starts tracking a delivery. Called on the consumer thread, in delivery order.
+     *
+     * @param delivery the delivery
+     * @return its ticket
+     */
+    synchronized Ticket track(Delivery delivery) {
+        Ticket t = new Ticket(delivery, this);
+        window.addLast(t);
+        return t;
+    }
+
+    /**
+     * Rejects a delivery and requeues it, then acknowledges what became contiguous.
+     * If the reject itself fails the delivery stays in the window, so later acks stop
+     * before it and it is redelivered with the rest when the channel recovers.
+     *
+     * @param ticket the delivery
+     * @throws IOException if the reject or the ack fails
+     */
+    static void reject(Ticket ticket) throws IOException {
+        ticket.delivery.nack(true);
+        ticket.state = REJECTED;
+        ticket.tracker.advance();
+    }
+
+    /**
+     * Marks deliveries as processed and acknowledges, per tracker, the settled prefix.
+     *
+     * @param tickets the processed deliveries, from any number of trackers
+     * @throws IOException if an ack fails (the remaining trackers are still advanced)
+     */
+    static void complete(List<Ticket> tickets) throws IOException {
+        List<AckTracker> touched = new ArrayList<>(2);
+        for (Ticket t : tickets) {
+            t.state = DONE;
+            if (!touched.contains(t.tracker)) touched.add(t.tracker);
+        }
+        IOException failure = null;
+        for (AckTracker tracker : touched) {
+            try {
+                tracker.advance();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Gets the number of tracked deliveries not acknowledged yet.
+     *
+     * @return the window size
+     */
+    synchronized int pending() {
+        return window.size();
+    }
+
+    /**
+     * Drops the settled prefix of the window and acks its last processed delivery.
+     * Rejected deliveries in it are no longer outstanding, so the multiple ack skips them.
+     */
+    private synchronized void advance() throws IOException {
+        Ticket last = null;
+        int done = 0;
+        Ticket head;
+        while ((head = window.peekFirst()) != null && head.state != PENDING) {
+            window.pollFirst();
+            if (head.state == DONE) {
+                last = head;
+                done++;
+            }
+        }
+        if (last != null) last.delivery.ack(done > 1);
+    }
+}
@@ -0,0 +1,254 @@
+package main.building;
+
+import main.config.AppConfig;
+import main.transport.Transport;
+import main.transport.Transports;
+import main.util.PartitionScheme;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serves many buildings from one process.
+ * <p>
+ * All buildings share one transport (so one broker connection, whose consumer threads
+ * deliver to every inbox), one small scheduler for their periodic tasks, one worker
+ * pool that runs their lanes and snapshots, and one pool for their reply workers (at most
+ * one thread per busy building). A building holds no thread of its own while idle. Each building keeps its own {@link BuildingService}: reservations,
+ * capacity, journal and snapshots stay isolated, under {@code <dataDir>/<building>}.
+ * <p>
+ * A hot building can be split into date partitions ({@link PartitionScheme}); each hosted
+ * entry then serves one partition, and the partitions of a building may be spread over
+ * several hosts.
+ */
+public final class BuildingHost {
+
+    private final boolean ownsTransport; // true if the transport is opened and closed by this host
+    private Transport transport;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+    private final ExecutorService repliers; // reply workers, apart from the lanes that fill their rings
+    private final Map<String, BuildingService> buildings = new LinkedHashMap<>(); // by Hosted#id()
+
+    /**
+     * One building, or one partition of a building, to serve.
+     *
+     * @param name       the building name
+     * @param capacity   the maximum number of rooms available per day
+     * @param partition  the served partition (0 if not partitioned)
+     * @param partitions the number of partitions of the building (1 if not partitioned)
+     */
+    public record Hosted(String name, int capacity, int partition, int partitions) {
+
+        /**
+         * Gets the key of this entry within a host.
+         *
+         * @return the building name, followed by {@code /p<k>} for a partition
+         */
+        public String id() {
+            return partitions > 1 ? name + "/p" + partition : name;
+        }
+    }
+
+    /**
+     * Creates a host that opens the configured transport on start.
+     */
+    public BuildingHost() {
+        this(null);
+    }
+
+    /**
+     * Creates a host that communicates over the given transport.
+     *
+     * @param transport the transport to use, or null to open the configured one on start
+     *                  (a given transport is not closed by {@link #stop()})
+     */
+    public BuildingHost(Transport transport) {
+        this.transport = transport;
+        this.ownsTransport = transport == null;
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, AppConfig.getHostSchedulerThreads()),
+                BuildingService.daemonThreads("host-timer"));
+        this.workers = Executors.newFixedThreadPool(Math.max(1, AppConfig.getHostWorkers()),
+                BuildingService.daemonThreads("host-worker"));
+        this.repliers = Executors.newCachedThreadPool(BuildingService.daemonThreads("host-replier"));
+    }
+
+    /**
+     * Starts serving the given buildings. A building that fails to start is reported and
+     * skipped, so one bad journal does not keep the others down.
+     *
+     * @param entries the buildings (or partitions) to serve
+     * @return the number of buildings started
+     * @throws IOException if the transport cannot be opened
+     */
+    public synchronized int start(List<Hosted> entries) throws IOException {
+        if (transport == null) transport = Transports.create();
+        int started = 0;
+        for (Hosted h : entries) {
+            try {
+                add(h);
+                started++;
+            } catch (Exception ex) {
+                System.err.printf("[BuildingHost] failed to start %s: %s%n", h.id(), ex.getMessage());
+            }
+        }
+        System.out.printf("[BuildingHost] serving %d of %d buildings%n", started, entries.size());
+        return started;
+    }
+
+    /**
+     * Starts serving one more building, or partition of a building.
+     *
+     * @param hosted the building to serve
+     * @return the started building
+     * @throws IOException              if the building cannot be started
+     * @throws TimeoutException         if setting up its topology times out
+     * @throws IllegalArgumentException if the host already serves it, or the partition is invalid
+     * @throws IllegalStateException    if the host is not started
+     */
+    public synchronized BuildingService add(Hosted hosted) throws IOException, TimeoutException {
+        if (transport == null) throw new IllegalStateException("host not started");
+        if (buildings.containsKey(hosted.id())) throw new IllegalArgumentException("already hosted: " + hosted.id());
+        PartitionScheme scheme = hosted.partitions() > 1
+                ? new PartitionScheme(hosted.partitions(), AppConfig.getBuildingPartitionDays())
+                : PartitionScheme.NONE;
+        BuildingService svc = new BuildingService(hosted.name(), hosted.capacity(), transport, scheme,
+                hosted.partition(), scheduler, workers, repliers);
+        svc.start();
+        buildings.put(hosted.id(), svc);
+        return svc;
+    }
+
+    /**
+     * Stops serving a building; the others keep running.
+     *
+     * @param id the building name, or {@code <name>/p<k>} for a partition
+     * @return true if the building was hosted
+     * @throws IOException      if stopping it fails
+     * @throws TimeoutException if stopping it times out
+     */
+    public synchronized boolean remove(String id) throws IOException, TimeoutException {
+        BuildingService svc = buildings.remove(id);
+        if (svc == null) return false;
+        svc.stop();
+        return true;
+    }
+
+    /**
+     * Gets the ids of the hosted buildings and partitions.
+     *
+     * @return the ids (see {@link Hosted#id()}), in start order
+     */
+    public synchronized Set<String> buildings() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(buildings.keySet()));
+    }
+
+    /**
+     * Stops every building, then the shared threads and (if owned) the transport.
+     */
+    public synchronized void stop() {
+        for (String name : new ArrayList<>(buildings.keySet())) {
+            try {
+                remove(name);
+            } catch (Exception e) {
+                System.err.printf("[BuildingHost] failed to stop %s: %s%n", name, e.getMessage());
+            }
+        }
+        scheduler.shutdownNow();
+        workers.shutdown();
+        repliers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+            repliers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ownsTransport && transport != null) {
+            try {
+                transport.close();
+            } catch (Exception e) {
+                System.err.printf("[BuildingHost] failed to close transport: %s%n", e.getMessage());
+            }
+        }
+        System.out.println("[BuildingHost] down.");
+    }
+
+    /**
+     * Parses a building list of comma separated {@code name[:capacity[:k/n]]} entries,
+     * where {@code k/n} serves partition k of n.
+     *
+     * @param spec            the list, e.g. {@code BuildingA:5,Hot:10:0/4,Hot:10:1/4}
+     * @param defaultCapacity the capacity of entries without one
+     * @return the entries, in list order
+     * @throws IllegalArgumentException if an entry is malformed or repeated
+     */
+    public static List<Hosted> parseBuildings(String spec, int defaultCapacity) {
+        List<Hosted> out = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            add(out, entry.trim().split(":"), defaultCapacity);
+        }
+        return out;
+    }
+
+    /**
+     * Reads a building list file: one {@code name [capacity [k/n]]} per line, blank lines
+     * and lines starting with {@code #} ignored.
+     *
+     * @param file            the file
+     * @param defaultCapacity the capacity of lines without one
+     * @return the entries, in file order
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a line is malformed or repeated
+     */
+    public static List<Hosted> readBuildings(Path file, int defaultCapacity) throws IOException {
+        List<Hosted> out = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            add(out, line.split("\\s+"), defaultCapacity);
+        }
+        return out;
+    }
+
+    private static void add(List<Hosted> out, String[] parts, int defaultCapacity) {
+        if (parts.length == 0 || parts[0].isEmpty() || parts.length > 3) {
+            throw new IllegalArgumentException("malformed building entry: " + String.join(" ", parts));
+        }
+        int capacity = parts.length >= 2 ? Integer.parseInt(parts[1].trim()) : defaultCapacity;
+        int[] partition = parts.length == 3 ? parsePartition(parts[2].trim()) : new int[]{0, 1};
+        Hosted h = new Hosted(parts[0].trim(), capacity, partition[0], partition[1]);
+        for (Hosted other : out) {
+            if (other.id().equals(h.id())) throw new IllegalArgumentException("duplicate building: " + h.id());
+        }
+        out.add(h);
+    }
+
+    /**
+     * Parses a partition assignment.
+     *
+     * @param spec {@code k/n}: partition k of n
+     * @return {k, n}
+     * @throws IllegalArgumentException if malformed
+     */
+    public static int[] parsePartition(String spec) {
+        String[] kn = spec.split("/");
+        if (kn.length != 2) throw new IllegalArgumentException("partition must be k/n: " + spec);
+        int k = Integer.parseInt(kn[0].trim());
+        int n = Integer.parseInt(kn[1].trim());
+        if (n < 1 || k < 0 || k >= n) throw new IllegalArgumentException("partition out of range: " + spec);
+        return new int[]{k, n};
+    }
+}
@@ -0,0 +1,38 @@
+package main.building;
+
+import main.config.AppConfig;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Main entry point for serving many buildings from one process.
+ * The buildings come from a list file given on the command line, or from the
+ * {@code building.host.buildings} property.
+ */
+public class BuildingHostMain {
+
+    /**
+     * Starts a building host and keeps it running.
+     *
+     * @param args command line arguments where:
+     *             args[0] = building list file, one "name [capacity [k/n]]" per line, where
+     *             k/n serves partition k of n of the building (optional)
+     * @throws Exception if the host fails to start or no building could be started
+     */
+    public static void main(String[] args) throws Exception {
+        int defaultCapacity = AppConfig.getDefaultBuildingCapacity();
+        List<BuildingHost.Hosted> buildings = args.length > 0
+                ? BuildingHost.readBuildings(Path.of(args[0]), defaultCapacity)
+                : BuildingHost.parseBuildings(AppConfig.getHostBuildings(), defaultCapacity);
+
+        BuildingHost host = new BuildingHost();
+        if (host.start(buildings) == 0) {
+            host.stop();
+            throw new IllegalStateException("no building could be started");
+        }
+
+        System.out.printf("[BuildingHostMain] Running %d buildings — Ctrl+C to stop%n", host.buildings().size());
+        Thread.currentThread().join();
+    }
+}
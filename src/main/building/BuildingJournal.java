@@ -0,0 +1,226 @@
+package main.building;
+
+import main.domain.Reservation;
+import main.storage.Journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Building events on top of a {@link Journal}: the record types, their binary
+ * payloads and the replay dispatch.
+ * <p>
+ * Payloads:
+ * <pre>
+ *   BOOK     id, rooms, epochDay, startMinute, hours, createdAt ms, hold deadline ms[, request key]
+ *   CONFIRM  id
+ *   CANCEL   id
+ *   EXPIRE   id
+ * </pre>
+ * Strings are an int byte length followed by UTF-8 bytes. The request key of a BOOK record
+ * ({@link RequestCache}) is only present if the request carried an id; older records lack it.
+ * Records are written without flushing; callers group them and {@link #flush()} once
+ * per batch according to the building's {@link main.storage.DurabilityPolicy}.
+ * A {@link Tap} sees every record as it is written, in LSN order (the replication stream).
+ */
+final class BuildingJournal implements AutoCloseable {
+
+    static final byte BOOK = 1;
+    static final byte CONFIRM = 2;
+    static final byte CANCEL = 3;
+    static final byte EXPIRE = 4;
+
+    private final Journal journal;
+    private volatile Tap tap;
+
+    /**
+     * Receives replayed events.
+     */
+    interface Listener {
+        void booked(ReservationEntry entry, String requestKey) throws IOException;
+
+        void confirmed(String reservationId) throws IOException;
+
+        void canceled(String reservationId) throws IOException;
+
+        void expired(String reservationId) throws IOException;
+    }
+
+    /**
+     * Sees every record written, in LSN order. Called while the journal is locked, so it
+     * must not block.
+     */
+    @FunctionalInterface
+    interface Tap {
+        void written(long lsn, byte type, byte[] payload);
+    }
+
+    private BuildingJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Opens the journal of a building.
+     *
+     * @param dir          the journal directory of the building
+     * @param segmentBytes the segment file size
+     * @return the opened journal
+     * @throws IOException if the journal cannot be opened
+     */
+    static BuildingJournal open(Path dir, int segmentBytes) throws IOException {
+        return new BuildingJournal(Journal.open(dir, segmentBytes));
+    }
+
+    /**
+     * Records a new PENDING reservation.
+     *
+     * @param entry      the new reservation
+     * @param requestKey the key of the request that booked it, or null
+     * @throws IOException if the record cannot be written
+     */
+    void book(ReservationEntry entry, String requestKey) throws IOException {
+        Reservation r = entry.reservation;
+        byte[] id = r.id.getBytes(StandardCharsets.UTF_8);
+        byte[] key = requestKey != null ? requestKey.getBytes(StandardCharsets.UTF_8) : null;
+        ByteBuffer b = ByteBuffer.allocate(4 + id.length + 4 + 8 + 4 + 4 + 8 + 8 + (key != null ? 4 + key.length : 0));
+        b.putInt(id.length).put(id)
+                .putInt(r.rooms)
+                .putLong(r.date.toEpochDay())
+                .putInt(r.startTime.getHour() * 60 + r.startTime.getMinute())
+                .putInt(r.hours)
+                .putLong(r.createdAt.toEpochMilli())
+                .putLong(entry.holdDeadline);
+        if (key != null) b.putInt(key.length).put(key);
+        write(BOOK, b.array());
+    }
+
+    /**
+     * Records a state transition of an existing reservation.
+     *
+     * @param type          CONFIRM, CANCEL or EXPIRE
+     * @param reservationId the reservation
+     * @throws IOException if the record cannot be written
+     */
+    void transition(byte type, String reservationId) throws IOException {
+        byte[] id = reservationId.getBytes(StandardCharsets.UTF_8);
+        write(type, ByteBuffer.allocate(4 + id.length).putInt(id.length).put(id).array());
+    }
+
+    private void write(byte type, byte[] payload) throws IOException {
+        // Durable only after the next flush(), which the caller issues before acknowledging
+        Tap t = tap;
+        if (t == null) {
+            journal.append(type, payload);
+            return;
+        }
+        synchronized (this) { // so the tap sees the records in LSN order
+            t.written(journal.append(type, payload), type, payload);
+        }
+    }
+
+    /**
+     * Sets the tap that sees the records written from now on.
+     *
+     * @param tap the tap, or null for none
+     */
+    void tap(Tap tap) {
+        this.tap = tap;
+    }
+
+    /**
+     * Forces every record written so far to disk.
+     *
+     * @throws IOException if the flush fails
+     */
+    void flush() throws IOException {
+        journal.flush();
+    }
+
+    /**
+     * Gets the LSN the next record will get. Every record below it has already been applied
+     * to the building's in-memory state, which makes it the cut point of a snapshot.
+     *
+     * @return the next LSN
+     */
+    long nextLsn() {
+        return journal.nextLsn();
+    }
+
+    /**
+     * Drops journal segments that a snapshot has made redundant.
+     *
+     * @param lsn the LSN the snapshot covers up to (exclusive)
+     * @return the number of deleted segments
+     * @throws IOException if a segment cannot be deleted
+     */
+    int truncateBefore(long lsn) throws IOException {
+        return journal.truncateBefore(lsn);
+    }
+
+    /**
+     * Replays the recorded events from an LSN on, in order.
+     *
+     * @param fromLsn  the first LSN to replay (1 for all)
+     * @param building the building name (for reconstructing reservations)
+     * @param listener receives the events
+     * @return the number of replayed events
+     * @throws IOException if the journal is corrupt
+     */
+    long replay(long fromLsn, String building, Listener listener) throws IOException {
+        long[] count = {0};
+        journal.replay(fromLsn, (lsn, type, payload) -> {
+            dispatch(lsn, type, payload, building, listener);
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    /**
+     * Decodes one record and hands it to a listener.
+     *
+     * @param lsn      the LSN of the record (for error messages)
+     * @param type     the record type
+     * @param payload  the record payload
+     * @param building the building name (for reconstructing reservations)
+     * @param listener receives the event
+     * @throws IOException if the record type is unknown
+     */
+    static void dispatch(long lsn, byte type, ByteBuffer payload, String building, Listener listener)
+            throws IOException {
+        String id = readString(payload);
+        switch (type) {
+            case BOOK -> {
+                int rooms = payload.getInt();
+                LocalDate date = LocalDate.ofEpochDay(payload.getLong());
+                int startMinute = payload.getInt();
+                int hours = payload.getInt();
+                Instant createdAt = Instant.ofEpochMilli(payload.getLong());
+                long holdDeadline = payload.getLong();
+                String requestKey = payload.remaining() >= 4 ? readString(payload) : null;
+                Reservation r = new Reservation(id, building, rooms, date,
+                        LocalTime.of(startMinute / 60, startMinute % 60), hours, createdAt);
+                listener.booked(new ReservationEntry(r, holdDeadline), requestKey);
+            }
+            case CONFIRM -> listener.confirmed(id);
+            case CANCEL -> listener.canceled(id);
+            case EXPIRE -> listener.expired(id);
+            default -> throw new IOException("unknown journal record type " + type + " at lsn " + lsn);
+        }
+    }
+
+    private static String readString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getInt()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+}
@@ -1,6 +1,7 @@
 package main.building;
 
 import main.config.AppConfig;
+import main.util.PartitionScheme;
 
 /**
  * Main entry point for starting a Building Service instance.
@@ -16,6 +17,7 @@ public class BuildingMain {
      * @param args command line arguments where:
      *             args[0] = building name (optional)
      *             args[1] = capacity per day (optional)
+     *             args[2] = partition "k/n": serve partition k of n of the building (optional)
      * @throws Exception if the building service fails to start or 
      *                   encounters an error during operation
      */
@@ -25,10 +27,16 @@ public class BuildingMain {
         // Get capacity from args or fall back to config default
         int capacity = args.length > 1 ? Integer.parseInt(args[1]) : AppConfig.getDefaultBuildingCapacity();
 
-        BuildingService svc = new BuildingService(name, capacity);
+        // Get the served partition from args, if the building is split over several processes
+        int[] partition = args.length > 2 ? BuildingHost.parsePartition(args[2]) : new int[]{0, 1};
+        PartitionScheme scheme = partition[1] > 1
+                ? new PartitionScheme(partition[1], AppConfig.getBuildingPartitionDays()) : PartitionScheme.NONE;
+
+        BuildingService svc = new BuildingService(name, capacity, null, scheme, partition[0]);
         svc.start();
 
-        System.out.printf("[BuildingMain] Running %s (capacity %d) — Ctrl+C to stop%n", name, capacity);
+        System.out.printf("[BuildingMain] Running %s (capacity %d, partition %d/%d) — Ctrl+C to stop%n", name,
+                capacity, partition[0], partition[1]);
         Thread.currentThread().join();
     }
 }
\ No newline at end of file
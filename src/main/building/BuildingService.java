@@ -1,24 +1,40 @@
 package main.building;
 
-import com.rabbitmq.client.BuiltinExchangeType;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.AMQP;
 import main.config.AppConfig;
 import main.config.Constants;
 import main.domain.*;
+import main.storage.DurabilityPolicy;
+import main.storage.SnapshotStore;
+import main.transport.Delivery;
+import main.transport.QueueSpec;
+import main.transport.Transport;
+import main.transport.Transports;
+import main.util.MessageHeaders;
 import main.util.MessageSerializer;
+import main.util.PartitionScheme;
+import main.util.ReservationIds;
 import main.util.RabbitMQConfig;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.Map;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
-import java.util.Timer;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * BuildingService is a standalone "Building" actor/process.
@@ -28,25 +44,125 @@ import java.util.concurrent.TimeoutException;
  *  - Announce itself on a fanout exchange so agents can discover it.
  *  - Consume building-specific commands from cr.building.direct (rk=building.<name>).
  *  - Implement the hold -> confirm/cancel lifecycle.
- *  - Reply to clients on their private queue (cr.client.<clientId>).
+ *  - Record every state change in a write-ahead journal (if a data directory is configured)
+ *    before the request is acknowledged, and replay it on start.
+ *  - Keep only live reservations on the heap: canceled, expired and past confirmed ones move
+ *    to an off-heap {@link ReservationArchive} that still answers repeated confirm/cancel requests.
+ *  - Periodically snapshot the reservations in the background and drop the journal
+ *    segments the snapshot covers, so a restart loads the snapshot and replays only the tail.
+ *  - Keyed lanes: inbox consumer threads only decode requests and route them by date (bookings)
+ *    or reservation id (confirm/cancel) onto a fixed set of lane threads, so requests with the
+ *    same key are applied in order and different keys in parallel. Availability queries change
+ *    nothing and are answered on the consumer thread from the ledger's published day peaks.
+ *  - Group commit: each lane applies a batch of inbox deliveries, flushes the journal once,
+ *    acknowledges what became contiguous in each channel's {@link AckTracker} with one multiple
+ *    ack, then hands the replies to a separate reply thread (see {@link DurabilityPolicy}).
+ *  - Reply to clients on the request's replyTo queue, or their private queue (cr.client.<clientId>),
+ *    echoing the request's correlationId.
+ *  - Answer a booking request whose request id it has booked recently with the original reply
+ *    ({@link RequestCache}); the ids are journaled with the bookings, so this holds across restarts.
+ *    Refused requests are not remembered.
+ *  - Replication (building.replication): publish every journal record, in LSN order, on the
+ *    {@link ReplicationStream} for followers. A follower (building.role=follower) keeps a hot copy
+ *    of the state and consumes the inbox only once the primary has gone silent.
+ *  - Ownership: serve only while holding the building's owner lock, an exclusive queue
+ *    (cr.building.<name>.owner) the broker grants to one connection at a time and releases when it
+ *    closes. Another instance stands by and takes over once the lock is free; an owner whose
+ *    connection drops requeues every delivery until it has checked that it still holds the lock.
  */
 public class BuildingService {
 
     private final String buildingName;
-    private final int capacityPerDay; // simplistic capacity model (rooms per day)
+    private final int capacityPerDay; // rooms available in every time slot of a day
+    private final PartitionScheme scheme; // how the building's dates are split over instances
+    private final int partition;          // the partition of the dates this instance owns
+    private final AMQP.BasicProperties announceProps; // announcement headers (partition scheme)
 
-    private Connection connection;
-    private Channel channel;
-    private java.util.concurrent.ScheduledExecutorService announcer;
+    private final boolean ownsTransport; // true if the transport is opened and closed by this service
+    private Transport transport;
+    // Periodic tasks (announce, hold expiry, retention, snapshots) and lane/reply runs; shared
+    // between the buildings of a BuildingHost, otherwise owned and shut down by this service
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+    private final ExecutorService repliers;
+    private final boolean ownsExecutors;
+    private final boolean ownsRepliers;
+    private final List<ScheduledFuture<?>> periodic = new CopyOnWriteArrayList<>(); // also added on takeover
 
     // == Authoritative state ==
-    // Reservations by id
-    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
-    private final Map<String, ReservationStatus> status = new ConcurrentHashMap<>();
+    // Live reservations by id key (pending, or confirmed for today or later), each with its own atomic state
+    private final ConcurrentLongMap<ReservationEntry> reservations = new ConcurrentLongMap<>();
+    // Final state of canceled, expired and past reservations, off heap
+    private final ReservationArchive archive = new ReservationArchive(1024);
+    private final int archiveRetentionDays;
+    // Replies to recent booking requests, so a resent one is not booked twice
+    private final RequestCache requests;
     // Total rooms booked per date (for availability check)
-    private final Map<LocalDate, Integer> bookedPerDay = new ConcurrentHashMap<>();
+    private final CapacityLedger ledger;
     private final boolean verbose = false; // disable spam
-    private Timer scheduler;
+    private static final long HOLD_TICK_MS = 250; // resolution of hold expiry
+    private static final long RETENTION_SWEEP_MINUTES = 10; // how often past reservations are archived
+    private final long holdTimeoutMs;                 // default lifetime of a PENDING hold
+    private final TimingWheel<ReservationEntry> holdExpiry; // pending holds by deadline
+    private final ReservationIds ids;                 // time-ordered ids in this building's shard
+    private final String dataDir;    // empty when reservations are kept in memory only
+    private BuildingJournal journal; // null when no data directory is configured
+    private SnapshotStore snapshots; // null when no data directory is configured
+    private long snapshotLsn; // journal LSN covered by the newest snapshot
+
+    // == Keyed lanes ==
+    // Delivery threads decode and route each request by its key (the date to book, or the
+    // reservation id) onto one of the lanes; each lane applies its requests in order on a
+    // worker thread, and the reply worker encodes and publishes the answers.
+    private final DurabilityPolicy durability;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int consumers;     // inbox consumers decoding in parallel
+    private final int prefetch;      // per consumer
+    private final List<RingWorker<Inbound>> lanes;
+    private final AckTracker[] ackTrackers; // per consumer channel
+    private final RingWorker<Reply> replies;
+    // replies of the batch a worker thread is committing
+    private final ThreadLocal<List<Reply>> outbox = ThreadLocal.withInitial(ArrayList::new);
+    private final List<String> inboxConsumerTags = new CopyOnWriteArrayList<>();
+
+    // == Replication ==
+    // A primary tees its journal records into the stream ring, and a worker publishes them
+    // for followers. A follower applies the stream of its primary until it takes over.
+    private static final int STREAM_RING = 1 << 16; // records not yet published; more make followers resync
+    private final boolean replicate;
+    private final long failoverMs;
+    private RingWorker<byte[]> stream;     // replication messages in LSN order (primary)
+    private long streamId;                 // random id of this primary run, never 0
+    private volatile boolean streamFull;   // the ring overflowed and records were dropped
+    private ReplicationFollower follower;  // null unless started as a follower
+    private String streamQueue;            // the follower's private queue of the stream
+    private volatile String streamConsumerTag;
+    private ScheduledFuture<?> followTask;
+
+    // == Ownership ==
+    private final long ownershipRetryMs;
+    private final boolean sharedStorage; // the data directory is the owner's, so a cold standby may take over
+    private volatile boolean owner;  // holds the owner lock
+    private volatile boolean fenced; // nothing is applied: lost the connection until ownership is confirmed, or failed
+    private volatile boolean failed; // the journal failed: fenced for good
+    private ScheduledFuture<?> acquireTask;
+
+    /**
+     * A delivery as decoded by the consumer thread it arrived on.
+     *
+     * @param delivery the delivery
+     * @param ticket   its place in the ack window of its consumer channel
+     * @param message  the decoded message, or null if decoding failed
+     * @param error    the decoding failure, or null
+     */
+    private record Inbound(Delivery delivery, AckTracker.Ticket ticket, WireMessage message,
+                           RuntimeException error) {}
+
+    /**
+     * A reply held back until the batch that produced it is durable.
+     */
+    private record Reply(String clientId, AMQP.BasicProperties request, WireMessage message) {}
 
     /**
      * Creates a new building service with the specified name and capacity.
@@ -55,43 +171,185 @@ public class BuildingService {
      * @param capacityPerDay the maximum number of rooms available per day
      */
     public BuildingService(String buildingName, int capacityPerDay) {
+        this(buildingName, capacityPerDay, null);
+    }
+
+    /**
+     * Creates a new building service that communicates over the given transport.
+     *
+     * @param buildingName the unique name of this building
+     * @param capacityPerDay the maximum number of rooms available per day
+     * @param transport the transport to use, or null to open the configured one on start
+     *                  (a given transport is not closed by {@link #stop()})
+     */
+    public BuildingService(String buildingName, int capacityPerDay, Transport transport) {
+        this(buildingName, capacityPerDay, transport, PartitionScheme.NONE, 0);
+    }
+
+    /**
+     * Creates a new building service that serves one date partition of a building.
+     * Other partitions are served by other instances, in this process or elsewhere.
+     *
+     * @param buildingName the name of the building
+     * @param capacityPerDay the maximum number of rooms available per day
+     * @param transport the transport to use, or null to open the configured one on start
+     *                  (a given transport is not closed by {@link #stop()})
+     * @param scheme how the building is partitioned (the same for all its instances)
+     * @param partition the partition served by this instance
+     * @throws IllegalArgumentException if the partition is not part of the scheme
+     */
+    public BuildingService(String buildingName, int capacityPerDay, Transport transport, PartitionScheme scheme,
+                           int partition) {
+        this(buildingName, capacityPerDay, transport, scheme, partition, null, null, null);
+    }
+
+    /**
+     * Creates a new building service that shares a transport and threads with other buildings.
+     *
+     * @param buildingName the name of the building
+     * @param capacityPerDay the maximum number of rooms available per day
+     * @param transport the transport to use, or null to open the configured one on start
+     * @param scheme how the building is partitioned
+     * @param partition the partition served by this instance
+     * @param scheduler runs the periodic tasks, or null for a thread of its own
+     * @param workers runs the lanes and snapshots, or null for threads of its own
+     * @param repliers runs the reply worker, or null for a thread of its own; never the lanes'
+     *                 executor if that is bounded, since lanes wait for room in the reply ring
+     *                 (given executors are not shut down by {@link #stop()})
+     */
+    BuildingService(String buildingName, int capacityPerDay, Transport transport, PartitionScheme scheme,
+                    int partition, ScheduledExecutorService scheduler, ExecutorService workers,
+                    ExecutorService repliers) {
         this.buildingName = Objects.requireNonNull(buildingName);
         this.capacityPerDay = capacityPerDay;
+        this.scheme = Objects.requireNonNull(scheme);
+        if (partition < 0 || partition >= scheme.partitions()) {
+            throw new IllegalArgumentException("partition " + partition + " not in 0.." + (scheme.partitions() - 1));
+        }
+        this.partition = partition;
+        this.announceProps = new AMQP.BasicProperties.Builder()
+                .headers(MessageHeaders.announceHeaders(scheme)).build();
+        this.ledger = new CapacityLedger(capacityPerDay, AppConfig.getBuildingHorizonDays(),
+                AppConfig.getBuildingSlotMinutes());
+        this.holdTimeoutMs = AppConfig.getHoldTimeoutSeconds() * 1000L;
+        this.holdExpiry = new TimingWheel<>(HOLD_TICK_MS, 512, this::autoCancelReservation);
+        this.ids = new ReservationIds(scheme.shard(buildingName, partition)); // ids name their partition
+        this.archiveRetentionDays = AppConfig.getArchiveRetentionDays();
+        this.requests = new RequestCache(AppConfig.getRequestRetentionSeconds() * 1000L,
+                AppConfig.getRequestCacheEntries());
+        this.dataDir = AppConfig.getBuildingDataDir();
+        this.replicate = AppConfig.getBuildingReplication();
+        this.failoverMs = AppConfig.getBuildingFailoverMs();
+        this.ownershipRetryMs = Math.max(50, AppConfig.getBuildingOwnershipRetryMs());
+        this.sharedStorage = AppConfig.getBuildingSharedStorage();
+        if ("follower".equals(AppConfig.getBuildingRole())) {
+            this.follower = new ReplicationFollower(buildingName, new Standby(), failoverMs);
+        }
+        this.durability = AppConfig.getBuildingDurability();
+        this.batchSize = durability == DurabilityPolicy.PER_MESSAGE ? 1 : Math.max(1, AppConfig.getBuildingBatchSize());
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getBuildingFlushIntervalMs());
+        this.consumers = Math.max(1, AppConfig.getBuildingConsumers());
+        this.prefetch = AppConfig.getBuildingPrefetch();
+        this.ackTrackers = new AckTracker[consumers];
+        for (int i = 0; i < consumers; i++) ackTrackers[i] = new AckTracker();
+        this.ownsExecutors = scheduler == null || workers == null;
+        this.scheduler = scheduler != null ? scheduler
+                : Executors.newSingleThreadScheduledExecutor(daemonThreads("building-" + buildingName + "-timer"));
+        this.workers = workers != null ? workers
+                : Executors.newCachedThreadPool(daemonThreads("building-" + buildingName + "-worker"));
+        int laneCount = Math.max(1, AppConfig.getBuildingLanes());
+        long linger = durability == DurabilityPolicy.INTERVAL ? flushIntervalNanos : 0;
+        List<RingWorker<Inbound>> laneList = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            // Sized for every unacknowledged delivery, so consumer threads never wait for the lane
+            laneList.add(new RingWorker<>(new MpscRing<>(Math.max(1024, prefetch * consumers)), this.workers,
+                    batchSize, linger, this::commit));
+        }
+        this.lanes = List.copyOf(laneList);
+        this.ownsRepliers = repliers == null;
+        this.repliers = repliers != null ? repliers
+                : Executors.newCachedThreadPool(daemonThreads("building-" + buildingName + "-replier"));
+        // Not on the lanes' threads: a lane waiting for room in the ring would otherwise hold
+        // a thread the reply worker needs to drain it
+        this.replies = new RingWorker<>(new MpscRing<>(4096), this.repliers, 256, 0, this::sendReplies);
+        this.transport = transport;
+        this.ownsTransport = transport == null;
     }
 
     /**
-     * Starts the building service by connecting to RabbitMQ, setting up queues,
+     * Starts the building service by connecting to the transport, setting up queues,
      * and beginning to announce availability and handle reservation requests.
      *
-     * @throws IOException if RabbitMQ connection fails
+     * @throws IOException if the connection fails
      * @throws TimeoutException if connection times out
-     */    public void start() throws IOException, TimeoutException {
-        connection = RabbitMQConfig.createConnection(
-                AppConfig.getRabbitHost(), AppConfig.getRabbitUser(), AppConfig.getRabbitPass());
-        channel = connection.createChannel();
+     * @throws IllegalStateException if another instance owns the building and this one is neither
+     *                               a follower nor on shared storage, so it could not take over
+     *                               with the owner's state
+     */
+    public void start() throws IOException, TimeoutException {
+        if (ownsTransport) transport = Transports.create();
+        transport.addConnectionListener(new Fence());
 
+        if (follower != null) {
+            openStorage(); // the primary's snapshot replaces whatever was recorded here
+            declareTopology();
+            startHoldExpiry(); // holds stay pending until the primary expires them; this flushes the journal
+            startSnapshots();
+            follow();
+            System.out.printf("[Building %s] standby up. Capacity/day=%d, failover after %d ms, partition=%d/%d%n",
+                    buildingName, capacityPerDay, failoverMs, partition, scheme.partitions());
+            return;
+        }
+        if (!tryAcquireOwnership()) {
+            if (dataDir.isEmpty() || !sharedStorage) {
+                // It would take over with an empty or stale copy and sell capacity the owner already sold
+                stop();
+                throw new IllegalStateException("building " + buildingName + " is owned by another instance; "
+                        + "a standby needs building.role=follower or a shared building.dataDir "
+                        + "(building.sharedStorage=true)");
+            }
+            // Loads the state only once it owns the building, so it picks up everything the owner recorded
+            System.out.printf("[Building %s] owned by another instance; standing by (retry every %d ms)%n",
+                    buildingName, ownershipRetryMs);
+            acquireTask = scheduler.scheduleWithFixedDelay(this::retryOwnership, ownershipRetryMs, ownershipRetryMs,
+                    TimeUnit.MILLISECONDS);
+            periodic.add(acquireTask);
+            return;
+        }
+        serve();
+    }
+
+    /**
+     * Loads the state and starts serving the building. Called once this instance owns it.
+     *
+     * @throws IOException if the state cannot be restored or the inbox not consumed
+     */
+    private void serve() throws IOException {
+        restoreState(); // before consuming, so requests see the recorded reservations
         declareTopology();
+        startReplication();
         announce(); // initial
         startPeriodicAnnounce();
-        startPendingCleanup();
+        startHoldExpiry();
+        startSnapshots();
         subscribeInbox();
 
-        System.out.printf("[Building %s] up. Capacity/day=%d%n", buildingName, capacityPerDay);
+        System.out.printf("[Building %s] up. Capacity/day=%d, durability=%s, lanes=%d, partition=%d/%d%n",
+                buildingName, capacityPerDay, durability, lanes.size(), partition, scheme.partitions());
     }
 
     /**
      * Periodically announces building availability to rental agents
      */
     private void startPeriodicAnnounce() {
-        announcer = Executors.newSingleThreadScheduledExecutor();
-        announcer.scheduleAtFixedRate(() -> {
+        periodic.add(scheduler.scheduleAtFixedRate(() -> {
             try {
-                channel.basicPublish(Constants.BUILDINGS_FANOUT_EXCHANGE, "", null, buildingName.getBytes());
+                transport.publish(Constants.BUILDINGS_FANOUT_EXCHANGE, "", announceProps, buildingName.getBytes());
                 if (verbose) {
                     System.out.printf("[Building %s] re-announced%n", buildingName);
                 }
             } catch (Exception ignored) {}
-        }, 5, 10, TimeUnit.SECONDS);
+        }, 5, 10, TimeUnit.SECONDS));
     }
 
 
@@ -102,15 +360,169 @@ public class BuildingService {
      * @throws TimeoutException if closing times out
      */
     public void stop() throws IOException, java.util.concurrent.TimeoutException {
-        if (announcer != null) announcer.shutdownNow();  // stop scheduler
-        if (scheduler != null) scheduler.cancel();  // stop cleanup timer
-        if (channel != null) channel.close();
-        if (connection != null) connection.close();
+        for (ScheduledFuture<?> task : periodic) task.cancel(false); // announce, hold expiry, snapshots
+        periodic.clear();
+        stopBatches(); // finishes the batch in progress; undrained deliveries are requeued below
+        stopReplication(); // after the last batch, so followers get its records
+        cancelConsumers();
+        if (journal != null) {
+            if (!fenced) snapshot(); // the next start then has no journal tail to replay
+            journal.close();
+        }
+        // Only now may a standby take over: everything recorded here is on disk
+        releaseOwnership();
+        if (ownsTransport && transport != null) transport.close();
+        if (ownsExecutors) {
+            scheduler.shutdownNow();
+            workers.shutdown();
+        }
+        if (ownsRepliers) repliers.shutdown();
         System.out.printf("[Building %s] down.%n", buildingName);
     }
 
 
 
+    /**
+     * Cancels the inbox, sync and stream consumers; their unacknowledged deliveries are requeued.
+     */
+    private void cancelConsumers() {
+        List<String> tags = new ArrayList<>(inboxConsumerTags);
+        inboxConsumerTags.clear();
+        String stream = streamConsumerTag;
+        streamConsumerTag = null;
+        if (stream != null) tags.add(stream);
+        for (String tag : tags) {
+            try {
+                transport.cancel(tag);
+            } catch (IOException e) {
+                System.err.printf("[Building %s] failed to cancel consumer %s: %s%n", buildingName, tag, e.getMessage());
+            }
+        }
+    }
+
+    // ownership
+
+    /**
+     * Tries to take the building's owner lock by declaring its exclusive queue.
+     *
+     * @return true if this instance owns the building now
+     */
+    private boolean tryAcquireOwnership() {
+        try {
+            transport.declareQueue(QueueSpec.exclusive(scheme.ownerQueue(buildingName, partition)));
+            owner = true;
+            return true;
+        } catch (IOException e) {
+            String reason = String.valueOf(e.getMessage() != null ? e.getMessage() : e.getCause());
+            if (!reason.contains("RESOURCE_LOCKED")) {
+                System.err.printf("[Building %s] ownership check failed: %s%n", buildingName, reason);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Retried by a standing-by instance until the owner lock is free, then starts serving.
+     * The takeover (restoring the state from disk, then serving) runs on a worker, so a long
+     * replay does not hold up the timers the scheduler runs for other buildings. If it fails,
+     * the instance gives the lock up again, so another standby can take over.
+     */
+    private void retryOwnership() {
+        if (!tryAcquireOwnership()) return;
+        acquireTask.cancel(false);
+        System.out.printf("[Building %s] owner lock acquired, taking over%n", buildingName);
+        workers.execute(() -> {
+            try {
+                serve();
+            } catch (IOException | RuntimeException e) {
+                System.err.printf("[Building %s] takeover failed, releasing ownership: %s%n", buildingName, e);
+                stopServing();
+                releaseOwnership();
+            }
+        });
+    }
+
+    /**
+     * Releases the owner lock, so a standing-by instance can take over.
+     */
+    private void releaseOwnership() {
+        if (!owner) return;
+        owner = false;
+        if (fenced && !failed) return; // the lock went with the lost connection
+        try {
+            transport.deleteQueue(scheme.ownerQueue(buildingName, partition));
+        } catch (IOException e) {
+            System.err.printf("[Building %s] failed to release ownership: %s%n", buildingName, e.getMessage());
+        }
+    }
+
+    /**
+     * Tells whether this instance is standing by: a follower that has not taken over, or an
+     * instance waiting for the owner lock (or fenced off after losing it).
+     *
+     * @return true while not serving the building
+     */
+    public boolean isStandby() {
+        return !owner || fenced;
+    }
+
+    /**
+     * Fences the building off while its connection is down. The broker releases the owner
+     * lock with the connection, so another instance may own the building by the time it
+     * recovers, and the recovered consumers must not apply anything until the lock is
+     * confirmed. If it was lost, this instance stops serving for good: its state may
+     * already be behind the new owner's.
+     */
+    private final class Fence implements Transport.ConnectionListener {
+        @Override
+        public void lost() {
+            if (!owner) return;
+            fenced = true;
+            System.err.printf("[Building %s] connection lost; fenced until ownership is confirmed%n", buildingName);
+        }
+
+        @Override
+        public void recovered() {
+            if (!owner || !fenced || failed) return;
+            workers.execute(() -> {
+                if (tryAcquireOwnership()) {
+                    fenced = false;
+                    System.out.printf("[Building %s] connection recovered, still the owner%n", buildingName);
+                    return;
+                }
+                System.err.printf("[Building %s] ownership lost to another instance; no longer serving%n",
+                        buildingName);
+                stopServing();
+            });
+        }
+    }
+
+    /**
+     * Stops serving for good while the process stays up: cancels the periodic tasks and the
+     * consumers, whose unacknowledged deliveries go back to the inbox. Called once fenced.
+     */
+    private void stopServing() {
+        for (ScheduledFuture<?> task : periodic) task.cancel(false);
+        periodic.clear();
+        cancelConsumers();
+    }
+
+    /**
+     * Fences the building for good after a journal append or flush failed. The failed requests
+     * are already applied in memory (reservations, ledger, request cache) but not durable, and
+     * they are redelivered, so this instance must not apply anything more: it stops serving
+     * and releases the owner lock, and a standby takes over from what is on disk.
+     */
+    private void failJournal() {
+        if (failed) return;
+        failed = true;
+        fenced = true;
+        workers.execute(() -> {
+            stopServing();
+            releaseOwnership();
+        });
+    }
+
     // topology
 
     /**
@@ -120,10 +532,10 @@ public class BuildingService {
      */
     private void declareTopology() throws IOException {
         // Declare common exchanges
-        RabbitMQConfig.declareCommonExchanges(channel);
+        RabbitMQConfig.declareCommonExchanges(transport);
 
-        // Declare this building's inbox and bind with routing key "building.<name>"
-        RabbitMQConfig.declareAndBindBuildingInbox(channel, buildingName);
+        // Declare this building's inbox and bind with routing key "building.<name>" (or "building.<name>.p<k>")
+        RabbitMQConfig.declareAndBindBuildingInbox(transport, buildingName, scheme, partition);
     }
 
     /**
@@ -133,45 +545,261 @@ public class BuildingService {
      */
     private void announce() throws IOException {
         // Broadcast building name so RentalAgents discover/maintain registry
-        channel.basicPublish(Constants.BUILDINGS_FANOUT_EXCHANGE, "", null, buildingName.getBytes());
+        transport.publish(Constants.BUILDINGS_FANOUT_EXCHANGE, "", announceProps, buildingName.getBytes());
         System.out.printf("[Building %s] announced on %s%n", buildingName, Constants.BUILDINGS_FANOUT_EXCHANGE);
     }
 
     /**
      * Gets the name of this building's inbox queue.
      *
-     * @return the building-specific queue name
+     * @return the building-specific (or partition-specific) queue name
      */
     private String buildingInboxQueue() {
-        return "cr.building." + buildingName + ".inbox";
+        return scheme.inboxQueue(buildingName, partition);
     }
 
     /**
      * Subscribes to this building's inbox to handle incoming messages.
+     * Each consumer thread only decodes its deliveries and routes them to a lane.
      *
      * @throws IOException if subscription fails
      */
     private void subscribeInbox() throws IOException {
-        DeliverCallback cb = (tag, delivery) -> {
+        for (int i = 0; i < consumers; i++) {
+            int consumer = i;
+            inboxConsumerTags.add(transport.consume(buildingInboxQueue(), false, prefetch,
+                    delivery -> enqueue(delivery, consumer)));
+        }
+        System.out.printf("[Building %s] listening on %s (%d consumers, %d lanes)%n", buildingName,
+                buildingInboxQueue(), consumers, lanes.size());
+    }
+
+    /**
+     * Creates a thread factory for named daemon threads.
+     *
+     * @param prefix the thread name prefix (a counter is appended)
+     * @return the factory
+     */
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Decodes a delivery on its consumer thread and hands it to the lane of its key.
+     *
+     * @param delivery the delivery
+     * @param consumer the index of the consumer it arrived on
+     */
+    private void enqueue(Delivery delivery, int consumer) {
+        if (fenced) {
+            requeue(delivery);
+            return;
+        }
+        WireMessage msg = null;
+        RuntimeException error = null;
+        try {
+            msg = MessageSerializer.deserialize(delivery.body(), delivery.properties().getContentType());
+        } catch (RuntimeException e) {
+            error = e; // rejected by the lane, like a failing request
+        }
+        AckTracker.Ticket ticket = ackTrackers[consumer].track(delivery);
+        if (msg != null && msg.type() == MessageType.QUERY_AVAILABILITY) {
+            answerQuery(delivery, ticket, msg);
+            return;
+        }
+        try {
+            lanes.get(laneOf(msg)).put(new Inbound(delivery, ticket, msg, error));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // shutting down; the delivery is requeued with the consumer
+        }
+    }
+
+    /**
+     * Answers an availability query on the consumer thread it arrived on. It reads only the
+     * ledger's published day peaks, so it neither waits for a lane nor takes a ledger lock,
+     * and it records nothing, so it is acknowledged at once.
+     *
+     * @param delivery the delivery
+     * @param ticket   its place in the ack window of its consumer channel
+     * @param msg      the decoded query
+     */
+    private void answerQuery(Delivery delivery, AckTracker.Ticket ticket, WireMessage msg) {
+        try {
+            AckTracker.complete(List.of(ticket));
+        } catch (IOException e) {
+            System.err.printf("[Building %s] Failed to ack message: %s%n", buildingName, e.getMessage());
+        }
+        String clientId = extractClientId(msg);
+        if (clientId == null) return;
+        try {
+            replies.put(new Reply(clientId, delivery.properties(), availability(msg.payload())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Computes the reply to an availability query: the rooms free in every slot of each day
+     * of the range, or {@link Availability#UNKNOWN} for days another partition serves.
+     *
+     * @param payload the query payload
+     * @return the QUERY_AVAILABILITY reply, or an ERROR for an invalid query
+     */
+    private WireMessage availability(Object payload) {
+        if (!(payload instanceof BookingRequest req) || req.date() == null) {
+            return new WireMessage(MessageType.ERROR, buildingName, "Invalid payload for QUERY_AVAILABILITY (need from)");
+        }
+        if (!buildingName.equals(req.building())) {
+            return new WireMessage(MessageType.ERROR, buildingName,
+                    "Wrong building. Expected " + buildingName + " but got " + req.building());
+        }
+        long first = req.date().toEpochDay();
+        long last = req.endDate() != null ? req.endDate().toEpochDay() : first;
+        if (last < first || last - first >= Availability.MAX_DAYS) {
+            return new WireMessage(MessageType.ERROR, buildingName,
+                    "Availability range must be 1.." + Availability.MAX_DAYS + " days, from " + req.date() + " on");
+        }
+        int[] free = new int[(int) (last - first + 1)];
+        for (int i = 0; i < free.length; i++) {
+            long day = first + i;
+            free[i] = scheme.ofEpochDay(day) != partition ? Availability.UNKNOWN
+                    : Math.max(0, capacityPerDay - ledger.peak(day));
+        }
+        return new WireMessage(MessageType.QUERY_AVAILABILITY, buildingName,
+                new BookingReply(true, null, Availability.format(req.date(), free)));
+    }
+
+    /**
+     * Picks the lane of a request. Bookings are keyed by their date and confirm/cancel by
+     * their reservation id, so requests for the same key are applied in arrival order
+     * while different keys proceed in parallel. Anything else goes to lane 0.
+     *
+     * @param msg the decoded request, or null if it could not be decoded
+     * @return the lane index
+     */
+    private int laneOf(WireMessage msg) {
+        if (lanes.size() == 1 || msg == null || !(msg.payload() instanceof BookingRequest req)) return 0;
+        long key = switch (msg.type()) {
+            case BOOK_ROOM -> req.date() != null ? req.date().toEpochDay() : 0;
+            case CONFIRM_RESERVATION, CANCEL_RESERVATION ->
+                    req.reservationNumber() != null ? ReservationIds.key(req.reservationNumber()) : 0;
+            default -> 0;
+        };
+        // Consecutive days and ids differ in their low bits; spread them over the lanes
+        return (int) (((key * 0x9E3779B97F4A7C15L) >>> 32) % lanes.size());
+    }
+
+    /**
+     * Applies a batch of deliveries routed to one lane, makes their journal records durable
+     * with one flush, marks them processed in their ack windows and hands their replies to
+     * the reply worker. Deliveries that fail are rejected and requeued on their own.
+     * <p>
+     * Lanes share the reservation state; it only needs its atomic entries and per-day ledger
+     * locks because requests that touch the same reservation or date share a lane. Acks go
+     * out once every earlier delivery of the same channel is settled too, which may be after
+     * other lanes commit. Replies do not wait for that: the records they report are already
+     * durable.
+     *
+     * @param batch the deliveries in arrival order
+     */
+    private void commit(List<Inbound> batch) {
+        if (fenced) {
+            for (Inbound in : batch) reject(in.ticket());
+            return;
+        }
+        List<Reply> out = outbox.get();
+        List<AckTracker.Ticket> applied = new ArrayList<>(batch.size());
+        for (Inbound in : batch) {
+            if (fenced) { // a journal append of this batch failed
+                reject(in.ticket());
+                continue;
+            }
+            int before = out.size();
             try {
-                WireMessage msg = MessageSerializer.deserialize(delivery.getBody());
-                handle(msg);
-                // Acknowledge successful processing
-                channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+                if (in.error() != null) throw in.error();
+                handle(in.message(), in.delivery().properties());
+                applied.add(in.ticket());
             } catch (Exception e) {
                 System.err.printf("[Building %s] error: %s%n", buildingName, e.getMessage());
-                // Reject and requeue for retry
-                try {
-                    channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
-                } catch (IOException ioEx) {
-                    System.err.printf("[Building %s] Failed to nack message: %s%n", buildingName, ioEx.getMessage());
-                }
+                out.subList(before, out.size()).clear(); // nothing is answered for a failed request
+                reject(in.ticket()); // requeue for retry
             }
-        };
-        // Set autoAck to false for manual acknowledgment
-        channel.basicConsume(buildingInboxQueue(), false, cb, tag -> {
-        });
-        System.out.printf("[Building %s] listening on %s%n", buildingName, buildingInboxQueue());
+        }
+        if (applied.isEmpty()) return;
+
+        try {
+            if (journal != null) journal.flush();
+        } catch (IOException e) {
+            // Not durable, so neither acknowledged nor answered; the requests are redelivered,
+            // but their effects stay in memory, so the building stops serving
+            System.err.printf("[Building %s] journal flush failed, requeueing %d requests and fencing: %s%n",
+                    buildingName, applied.size(), e.getMessage());
+            failJournal();
+            out.clear();
+            for (AckTracker.Ticket ticket : applied) reject(ticket);
+            return;
+        }
+
+        try {
+            AckTracker.complete(applied);
+        } catch (IOException e) {
+            System.err.printf("[Building %s] Failed to ack %d messages: %s%n", buildingName, applied.size(),
+                    e.getMessage());
+        }
+
+        try {
+            for (Reply r : out) replies.put(r);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.clear();
+    }
+
+    private void requeue(Delivery delivery) {
+        try {
+            delivery.nack(true);
+        } catch (IOException e) {
+            System.err.printf("[Building %s] Failed to nack message: %s%n", buildingName, e.getMessage());
+        }
+    }
+
+    private void reject(AckTracker.Ticket ticket) {
+        try {
+            AckTracker.reject(ticket);
+        } catch (IOException ioEx) {
+            System.err.printf("[Building %s] Failed to nack message: %s%n", buildingName, ioEx.getMessage());
+        }
+    }
+
+    /**
+     * Encodes and publishes the replies of committed batches, off the lanes.
+     *
+     * @param batch the replies in commit order
+     */
+    private void sendReplies(List<Reply> batch) {
+        for (Reply r : batch) {
+            try {
+                publishReply(r.clientId(), r.request(), r.message());
+            } catch (IOException e) {
+                System.err.printf("[Building %s] Failed to reply to %s: %s%n", buildingName, r.clientId(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the lanes after the batches they are working on, then the reply worker once it
+     * has sent the replies of those batches.
+     */
+    private void stopBatches() {
+        for (RingWorker<Inbound> lane : lanes) lane.stop(5_000);
+        replies.awaitEmpty(5_000);
+        replies.stop(5_000);
     }
 
     // message handling
@@ -180,16 +808,17 @@ public class BuildingService {
      * Routes incoming messages to the appropriate handler based on message type.
      *
      * @param msg the incoming message to handle
+     * @param props the AMQP properties of the request (reply metadata)
      * @throws IOException if message processing fails
      */
-    private void handle(WireMessage msg) throws IOException {
+    private void handle(WireMessage msg, AMQP.BasicProperties props) throws IOException {
         switch (msg.type()) {
-            case BOOK_ROOM -> onBook(msg);
-            case CONFIRM_RESERVATION -> onConfirm(msg);
-            case CANCEL_RESERVATION -> onCancel(msg);
+            case BOOK_ROOM -> onBook(msg, props);
+            case CONFIRM_RESERVATION -> onConfirm(msg, props);
+            case CANCEL_RESERVATION -> onCancel(msg, props);
             default -> {
                 String clientId = extractClientId(msg);
-                if (clientId != null) replyError(clientId, "Unsupported at building: " + msg.type());
+                if (clientId != null) replyError(clientId, props, "Unsupported at building: " + msg.type());
             }
         }
     }
@@ -198,102 +827,142 @@ public class BuildingService {
      * Handles room booking requests by checking availability and creating reservations.
      *
      * @param msg the booking request message
+     * @param props the AMQP properties of the request (reply metadata)
      * @throws IOException if reply fails to send
      */
-    private void onBook(WireMessage msg) throws IOException {
+    private void onBook(WireMessage msg, AMQP.BasicProperties props) throws IOException {
         String clientId = requireClientId(msg);
         if (!(msg.payload() instanceof BookingRequest req)) {
-            replyError(clientId, "Invalid payload for BOOK_ROOM");
+            replyError(clientId, props, "Invalid payload for BOOK_ROOM");
             return;
         }
         if (!buildingName.equals(req.building())) {
-            replyError(clientId, "Wrong building. Expected " + buildingName + " but got " + req.building());
+            replyError(clientId, props, "Wrong building. Expected " + buildingName + " but got " + req.building());
+            return;
+        }
+        // A request seen before (redelivered, or resent after a timeout) gets the original reply
+        String requestKey = requests.key(clientId, req.requestId());
+        BookingReply earlier = requestKey != null ? requests.get(requestKey) : null;
+        if (earlier != null) {
+            reply(clientId, props, MessageType.BOOK_ROOM, earlier);
+            System.out.printf("[Building %s] repeated request %s from %s answered with its original reply%n",
+                    buildingName, req.requestId(), clientId);
             return;
         }
         if (req.rooms() == null || req.date() == null || req.hours() == null) {
-            replyError(clientId, "Missing fields for BOOK_ROOM (need rooms, date, hours)");
+            replyError(clientId, props, "Missing fields for BOOK_ROOM (need rooms, date, hours)");
             return;
         }
         if (req.rooms() <= 0 || req.hours() <= 0) {
-            replyError(clientId, "rooms and hours must be > 0");
+            replyError(clientId, props, "rooms and hours must be > 0");
+            return;
+        }
+        if (scheme.ofDate(req.date()) != partition) {
+            replyError(clientId, props, "Wrong partition for " + req.date() + ": expected p" + scheme.ofDate(req.date())
+                    + " but this is p" + partition);
+            return;
+        }
+        // Requests without a start time (older clients) book from the start of the day
+        LocalTime start = req.startTime() != null ? req.startTime() : LocalTime.MIDNIGHT;
+        if (endMinute(start, req.hours()) > CapacityLedger.MINUTES_PER_DAY) {
+            replyError(clientId, props, "Booking must end by midnight (start " + start + ", hours " + req.hours() + ")");
             return;
         }
 
         // Prepare the reservation object (id, timestamps, etc.)
-        Reservation r = new Reservation(req.building(), req.rooms(), req.date(), req.hours());
+        Reservation r = new Reservation(ids.nextString(), req.building(), req.rooms(), req.date(), start,
+                req.hours(), Instant.now());
 
-        // atomic capacity check + update
-        try {
-            bookedPerDay.compute(req.date(), (d, used) -> {
-                int current = (used == null ? 0 : used);
-                // If adding these rooms exceeds capacity, abort
-                if (current + req.rooms() > capacityPerDay) {
-                    throw OverCapacity.INSTANCE;
-                }
-                return current + req.rooms();
-            });
-        } catch (RuntimeException e) {
+        // atomic capacity check + update over the booked time slots
+        if (!tryReserve(req.date(), start, req.hours(), req.rooms())) {
             // handle over-capacity "no availability"
-            if (e == OverCapacity.INSTANCE) {
-                reply(clientId, MessageType.BOOK_ROOM,
-                        new BookingReply(false, null,
-                                "No availability on " + req.date() + " (requested " + req.rooms() +
-                                        ", capacity " + capacityPerDay + ")"));
-                return;
+            BookingReply full = new BookingReply(false, null,
+                    "No availability on " + req.date() + " " + start + "+" + req.hours() + "h (requested "
+                            + req.rooms() + ", capacity " + capacityPerDay + ")");
+            // Not remembered: resent once capacity is freed, the request should get it
+            reply(clientId, props, MessageType.BOOK_ROOM, full);
+            return;
+        }
+
+        // store reservation; it is in the map before its BOOK record, so a snapshot cut after
+        // that record always contains it
+        long holdMs = req.holdSeconds() != null && req.holdSeconds() > 0 ? req.holdSeconds() * 1000L : holdTimeoutMs;
+        ReservationEntry entry = new ReservationEntry(r, System.currentTimeMillis() + holdMs);
+        reservations.put(entry.key, entry);
+        if (journal != null) {
+            try {
+                journal.book(entry, requestKey);
+            } catch (IOException | RuntimeException e) {
+                reservations.remove(entry.key); // not recorded, so not booked
+                release(r.date, r.startTime, r.hours, r.rooms);
+                failJournal();
+                throw e;
             }
-            throw e;
         }
+        holdExpiry.schedule(entry, holdMs);
 
-        // store reservation
-        reservations.put(r.id, r);
-        status.put(r.id, ReservationStatus.PENDING);
+        BookingReply booked = bookedReply(r.id, holdMs);
+        requests.put(requestKey, booked);
+        reply(clientId, props, MessageType.BOOK_ROOM, booked);
 
-        reply(clientId, MessageType.BOOK_ROOM,
-                new BookingReply(true, r.id, "Provisional hold created; please confirm"));
+        System.out.printf("[Building %s] PENDING %s for %s (rooms=%d, date=%s, start=%s, hours=%d)%n",
+                buildingName, r.id, clientId, r.rooms, r.date, r.startTime, r.hours);
+    }
 
-        System.out.printf("[Building %s] PENDING %s for %s (rooms=%d, date=%s)%n",
-                buildingName, r.id, clientId, r.rooms, r.date);
+    private static BookingReply bookedReply(String reservationId, long holdMs) {
+        return new BookingReply(true, reservationId, "Provisional hold created; please confirm within "
+                + holdMs / 1000 + "s");
     }
 
     /**
      * Handles reservation confirmation requests.
      *
      * @param msg the confirmation request message
+     * @param props the AMQP properties of the request (reply metadata)
      * @throws IOException if reply fails to send
      */
-    private void onConfirm(WireMessage msg) throws IOException {
+    private void onConfirm(WireMessage msg, AMQP.BasicProperties props) throws IOException {
         String clientId = requireClientId(msg);
 
         if (!(msg.payload() instanceof BookingRequest req)) {
-            replyError(clientId, "Invalid payload for CONFIRM_RESERVATION");
+            replyError(clientId, props, "Invalid payload for CONFIRM_RESERVATION");
             return;
         }
         String reservationId = req.reservationNumber();
         if (reservationId == null || reservationId.isBlank()) {
-            replyError(clientId, "Missing reservation number for confirm");
+            replyError(clientId, props, "Missing reservation number for confirm");
             return;
         }
 
-        Reservation r = reservations.get(reservationId);
-        if (r == null) {
-            replyError(clientId, "Unknown reservation: " + reservationId);
+        long key = ReservationIds.key(reservationId);
+        ReservationEntry entry = reservations.get(key);
+        if (entry == null) {
+            ReservationStatus archived = archive.lookup(key);
+            if (archived == ReservationStatus.CONFIRMED) {
+                reply(clientId, props, MessageType.CONFIRM_RESERVATION,
+                        new BookingReply(true, reservationId, "Already confirmed"));
+            } else if (archived == ReservationStatus.CANCELED) {
+                replyError(clientId, props, "Reservation already canceled: " + reservationId);
+            } else {
+                replyError(clientId, props, "Unknown reservation: " + reservationId);
+            }
             return;
         }
 
-        // Idempotent confirm
-        ReservationStatus s = status.getOrDefault(reservationId, ReservationStatus.PENDING);
-        if (s == ReservationStatus.CONFIRMED) {
-            reply(clientId, MessageType.CONFIRM_RESERVATION,
-                    new BookingReply(true, reservationId, "Already confirmed"));
-            return;
-        }
-        if (s == ReservationStatus.CANCELED) {
-            replyError(clientId, "Reservation already canceled: " + reservationId);
+        // Single CAS PENDING -> CONFIRMED; if it fails, the current state explains why
+        if (!entry.transition(ReservationStatus.PENDING, ReservationStatus.CONFIRMED)) {
+            if (entry.state() == ReservationStatus.CONFIRMED) {
+                // Idempotent confirm
+                reply(clientId, props, MessageType.CONFIRM_RESERVATION,
+                        new BookingReply(true, reservationId, "Already confirmed"));
+            } else {
+                replyError(clientId, props, "Reservation already canceled: " + reservationId);
+            }
             return;
         }
+        record(BuildingJournal.CONFIRM, reservationId);
 
-        status.put(reservationId, ReservationStatus.CONFIRMED);
-        reply(clientId, MessageType.CONFIRM_RESERVATION,
+        reply(clientId, props, MessageType.CONFIRM_RESERVATION,
                 new BookingReply(true, reservationId, "Confirmed"));
         System.out.printf("[Building %s] CONFIRMED %s for %s%n", buildingName, reservationId, clientId);
     }
@@ -302,81 +971,578 @@ public class BuildingService {
      * Handles reservation cancellation requests.
      *
      * @param msg the cancellation request message
+     * @param props the AMQP properties of the request (reply metadata)
      * @throws IOException if reply fails to send
      */
-    private void onCancel(WireMessage msg) throws IOException {
+    private void onCancel(WireMessage msg, AMQP.BasicProperties props) throws IOException {
         String clientId = requireClientId(msg);
 
         if (!(msg.payload() instanceof BookingRequest req)) {
-            replyError(clientId, "Invalid payload for CANCEL_RESERVATION");
+            replyError(clientId, props, "Invalid payload for CANCEL_RESERVATION");
             return;
         }
         String reservationId = req.reservationNumber();
         if (reservationId == null || reservationId.isBlank()) {
-            replyError(clientId, "Missing reservation number for cancel");
+            replyError(clientId, props, "Missing reservation number for cancel");
             return;
         }
 
-        Reservation r = reservations.get(reservationId);
-        if (r == null) {
-            // Idempotent cancellation: "not found" is treated as safe no-op (or return false)
-            reply(clientId, MessageType.CANCEL_RESERVATION,
-                    new BookingReply(false, reservationId, "Not found (already canceled or never existed)"));
+        long key = ReservationIds.key(reservationId);
+        ReservationEntry entry = reservations.get(key);
+        if (entry == null) {
+            ReservationStatus archived = archive.lookup(key);
+            if (archived == ReservationStatus.CANCELED) {
+                reply(clientId, props, MessageType.CANCEL_RESERVATION,
+                        new BookingReply(true, reservationId, "Already canceled"));
+            } else if (archived == ReservationStatus.CONFIRMED) {
+                reply(clientId, props, MessageType.CANCEL_RESERVATION,
+                        new BookingReply(false, reservationId, "Reservation date has passed"));
+            } else {
+                // Idempotent cancellation: "not found" is treated as safe no-op (or return false)
+                reply(clientId, props, MessageType.CANCEL_RESERVATION,
+                        new BookingReply(false, reservationId, "Not found (already canceled or never existed)"));
+            }
             return;
         }
 
-        ReservationStatus s = status.getOrDefault(reservationId, ReservationStatus.PENDING);
-        if (s == ReservationStatus.CANCELED) {
-            reply(clientId, MessageType.CANCEL_RESERVATION,
+        // Only the caller whose CAS cancels the reservation frees its capacity (never twice)
+        if (entry.cancel() == null) {
+            reply(clientId, props, MessageType.CANCEL_RESERVATION,
                     new BookingReply(true, reservationId, "Already canceled"));
             return;
         }
+        Reservation r = entry.reservation;
+        release(r.date, r.startTime, r.hours, r.rooms);
+        record(BuildingJournal.CANCEL, reservationId);
+        retire(entry);
 
-        status.put(reservationId, ReservationStatus.CANCELED);
-
-        // Free capacity only if canceling a pending/confirmed that was counted
-        bookedPerDay.compute(r.date, (d, used) -> used == null ? 0 : Math.max(0, used - r.rooms));
-
-        reply(clientId, MessageType.CANCEL_RESERVATION,
+        reply(clientId, props, MessageType.CANCEL_RESERVATION,
                 new BookingReply(true, reservationId, "Canceled"));
         System.out.printf("[Building %s] CANCELED %s for %s%n", buildingName, reservationId, clientId);
     }
 
+    // capacity
+
+    /**
+     * Atomically reserves rooms for a time range if every slot in it has capacity left.
+     * Package-private so benchmarks can measure the capacity check in isolation.
+     *
+     * @param date  the booking date
+     * @param start the start time
+     * @param hours the duration in hours (must end by midnight)
+     * @param rooms the number of rooms to reserve
+     * @return true if the rooms were reserved, false if capacity would be exceeded
+     */
+    boolean tryReserve(LocalDate date, LocalTime start, int hours, int rooms) {
+        return ledger.tryReserve(date.toEpochDay(), startMinute(start), (int) endMinute(start, hours), rooms);
+    }
+
+    /**
+     * Releases rooms previously reserved with {@link #tryReserve(LocalDate, LocalTime, int, int)}.
+     *
+     * @param date  the booking date
+     * @param start the start time
+     * @param hours the duration in hours
+     * @param rooms the number of rooms to release
+     */
+    void release(LocalDate date, LocalTime start, int hours, int rooms) {
+        ledger.release(date.toEpochDay(), startMinute(start), (int) endMinute(start, hours), rooms);
+    }
+
+    private static int startMinute(LocalTime start) {
+        return start.getHour() * 60 + start.getMinute();
+    }
+
+    private static long endMinute(LocalTime start, int hours) {
+        return startMinute(start) + hours * 60L;
+    }
+
+    // journal
+
+    /**
+     * Opens the journal (if a data directory is configured) and rebuilds reservations
+     * and capacity from the newest snapshot plus the journal records after it.
+     * Holds still pending are scheduled for expiry again.
+     * <p>
+     * Snapshots are fuzzy: they may already reflect some records at or after their LSN.
+     * Replaying those again is harmless, since a known reservation is not booked twice
+     * and the state transitions are compare-and-sets.
+     *
+     * @throws IOException if the journal or snapshot cannot be opened or is corrupt
+     */
+    private void restoreState() throws IOException {
+        if (!openStorage()) return;
+
+        long started = System.nanoTime();
+        long fromLsn = 1;
+        long loaded = 0;
+        SnapshotStore.Snapshot snap = snapshots.latest();
+        if (snap != null) {
+            loaded = loadSnapshot(snap.body());
+            fromLsn = snap.lsn();
+            snapshotLsn = fromLsn;
+        }
+        long events = journal.replay(fromLsn, buildingName, new Applier(false));
+
+        scheduleHolds();
+        retirePast();
+        System.out.printf("[Building %s] restored %d live + %d archived reservations "
+                        + "(%d from snapshot, %d journal events) in %d ms%n", buildingName, reservations.size(),
+                archive.size(), loaded, events, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Opens the journal and snapshot store, if a data directory is configured.
+     *
+     * @return true if opened
+     * @throws IOException if the journal or snapshot store cannot be opened
+     */
+    private boolean openStorage() throws IOException {
+        if (dataDir.isEmpty()) return false;
+        // Each partition has its own state, so it can be moved to another process on its own
+        Path dir = scheme.partitioned() ? Path.of(dataDir, buildingName, "p" + partition) : Path.of(dataDir, buildingName);
+        journal = BuildingJournal.open(dir.resolve("journal"), AppConfig.getJournalSegmentBytes());
+        snapshots = SnapshotStore.open(dir.resolve("snapshot"));
+        return true;
+    }
+
+    /**
+     * Adds the reservations of a snapshot body.
+     *
+     * @param body the snapshot body
+     * @return the number of live reservations in it
+     * @throws IOException if the body is corrupt
+     */
+    private long loadSnapshot(ByteBuffer body) throws IOException {
+        long loaded = BuildingSnapshot.read(body, buildingName, this::restore, archive, requests);
+        // A reservation archived while the snapshot was written may be in both parts
+        for (ReservationEntry entry : reservations.values()) {
+            if (archive.contains(entry.key)) unrestore(entry);
+        }
+        return loaded;
+    }
+
+    /**
+     * Schedules the expiry of every hold still pending.
+     */
+    private void scheduleHolds() {
+        long now = System.currentTimeMillis();
+        for (ReservationEntry entry : reservations.values()) {
+            if (entry.state() == ReservationStatus.PENDING) {
+                holdExpiry.schedule(entry, entry.holdDeadline - now);
+            }
+        }
+    }
+
+    /**
+     * Applies journal events to the state: the replayed ones on start, and on a follower
+     * the ones streamed by its primary, which it records in its own journal as well.
+     */
+    private final class Applier implements BuildingJournal.Listener {
+        private final boolean record; // also write the events that change something to the journal
+
+        Applier(boolean record) {
+            this.record = record;
+        }
+
+        @Override
+        public void booked(ReservationEntry entry, String requestKey) throws IOException {
+            if (requestKey != null) {
+                // Answered when it was booked: a resent request gets that reply here too
+                long createdAt = entry.reservation.createdAt.toEpochMilli();
+                requests.restore(requestKey, bookedReply(entry.reservation.id, entry.holdDeadline - createdAt), createdAt);
+            }
+            if (restore(entry) && record && journal != null) journal.book(entry, requestKey);
+        }
+
+        @Override
+        public void confirmed(String reservationId) throws IOException {
+            ReservationEntry entry = reservations.get(ReservationIds.key(reservationId));
+            if (entry != null && entry.transition(ReservationStatus.PENDING, ReservationStatus.CONFIRMED) && record) {
+                record(BuildingJournal.CONFIRM, reservationId);
+            }
+        }
+
+        @Override
+        public void canceled(String reservationId) throws IOException {
+            cancel(reservationId, BuildingJournal.CANCEL);
+        }
+
+        @Override
+        public void expired(String reservationId) throws IOException {
+            cancel(reservationId, BuildingJournal.EXPIRE);
+        }
+
+        private void cancel(String reservationId, byte type) throws IOException {
+            ReservationEntry entry = reservations.get(ReservationIds.key(reservationId));
+            if (entry != null && entry.cancel() != null) {
+                Reservation r = entry.reservation;
+                release(r.date, r.startTime, r.hours, r.rooms);
+                if (record) record(type, reservationId);
+                retire(entry);
+            }
+        }
+    }
+
+    /**
+     * Adds a reservation read from a snapshot or the journal, counting its capacity
+     * unless it is canceled. Reservations already known are left alone.
+     *
+     * @param entry the restored reservation in its recorded state
+     * @return true if it was added as a live reservation
+     */
+    private boolean restore(ReservationEntry entry) {
+        Reservation r = entry.reservation;
+        ids.observe(entry.key); // new ids stay above restored ones even if the clock went back
+        if (archive.contains(entry.key)) return false;
+        if (entry.state() == ReservationStatus.CANCELED) {
+            archive.put(entry.key, r.date.toEpochDay(), ReservationStatus.CANCELED);
+            return false;
+        }
+        if (reservations.putIfAbsent(entry.key, entry) != null) return false;
+        ledger.reserve(r.date.toEpochDay(), startMinute(r.startTime), (int) endMinute(r.startTime, r.hours), r.rooms);
+        return true;
+    }
+
+    /**
+     * Drops a restored live reservation that turned out to be archived, with its capacity.
+     *
+     * @param entry the restored reservation
+     */
+    private void unrestore(ReservationEntry entry) {
+        Reservation r = entry.reservation;
+        if (reservations.remove(entry.key, entry) && entry.state() != ReservationStatus.CANCELED) {
+            release(r.date, r.startTime, r.hours, r.rooms);
+        }
+    }
+
+    // retention
+
+    /**
+     * Moves a reservation that reached its final state from the live map to the archive.
+     * It is archived before it leaves the map, so a concurrent lookup always finds it in one.
+     *
+     * @param entry the canceled or past reservation
+     */
+    private void retire(ReservationEntry entry) {
+        Reservation r = entry.reservation;
+        archive.put(entry.key, r.date.toEpochDay(), entry.state());
+        reservations.remove(entry.key, entry);
+    }
+
+    /**
+     * Archives confirmed reservations whose date has passed and forgets archived ones
+     * older than the retention period. Walks only the live reservations.
+     */
+    private void retirePast() {
+        long today = LocalDate.now().toEpochDay();
+        int retired = 0;
+        for (ReservationEntry entry : reservations.values()) {
+            if (entry.reservation.date.toEpochDay() < today && entry.state() == ReservationStatus.CONFIRMED) {
+                retire(entry);
+                retired++;
+            }
+        }
+        int forgotten = archive.pruneBefore(today - archiveRetentionDays);
+        if (retired > 0 || forgotten > 0) {
+            System.out.printf("[Building %s] retention: %d past reservations archived, %d archived ones forgotten%n",
+                    buildingName, retired, forgotten);
+        }
+    }
+
+    /**
+     * Takes a snapshot every {@code building.snapshotIntervalSeconds} on a worker thread,
+     * so writing it never delays the hold expiry ticks sharing the scheduler.
+     */
+    private void startSnapshots() {
+        int interval = AppConfig.getSnapshotIntervalSeconds();
+        if (journal == null || interval <= 0) return;
+        periodic.add(scheduler.scheduleWithFixedDelay(() -> workers.execute(() -> {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                System.err.printf("[Building %s] snapshot failed: %s%n", buildingName, e.getMessage());
+            }
+        }), interval, interval, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Writes a snapshot of all reservations and drops the journal segments before it.
+     * The consumer keeps running meanwhile: the cut is the journal's next LSN, taken
+     * first, and every record below it is already reflected in the map being copied.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    private synchronized void snapshot() throws IOException {
+        long lsn = journal.nextLsn();
+        if (lsn == snapshotLsn) return; // nothing happened since the last one
+        long started = System.nanoTime();
+        long[] count = {0};
+        long bytes = snapshots.write(lsn,
+                out -> count[0] = BuildingSnapshot.write(out, reservations.values(), archive, requests));
+        snapshotLsn = lsn;
+        int truncated = journal.truncateBefore(lsn);
+        System.out.printf("[Building %s] snapshot at lsn %d: %d reservations, %d bytes in %d ms, %d segments dropped%n",
+                buildingName, lsn, count[0], bytes, (System.nanoTime() - started) / 1_000_000, truncated);
+    }
+
+    /**
+     * Records a state transition in the journal, if journaling is enabled. The transition is
+     * already applied in memory (and a cancel's rooms released), so if the record cannot be
+     * written the building is fenced, as after a failed flush: a redelivered request must not
+     * be answered from a state the journal does not have.
+     *
+     * @param type the journal record type
+     * @param reservationId the reservation
+     * @throws IOException if the record cannot be written
+     */
+    private void record(byte type, String reservationId) throws IOException {
+        if (journal == null) return;
+        try {
+            journal.transition(type, reservationId);
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("[Building %s] journal append failed, fencing: %s%n", buildingName, e);
+            failJournal();
+            throw e;
+        }
+    }
+
+    // replication
+
+    /**
+     * Starts publishing the replication stream, if enabled: every journal record from now
+     * on, a heartbeat every second, and a snapshot for each follower that asks to sync.
+     *
+     * @throws IOException if the sync queue cannot be set up
+     */
+    private void startReplication() throws IOException {
+        if (!replicate) return;
+        if (journal == null) {
+            System.err.printf("[Building %s] replication needs building.dataDir; not replicating%n", buildingName);
+            return;
+        }
+        streamId = ThreadLocalRandom.current().nextLong() | 1;
+        stream = new RingWorker<>(new MpscRing<>(STREAM_RING), workers, 256, 0, this::publishStream);
+        RabbitMQConfig.declareReplicationExchange(transport);
+        String syncQueue = scheme.syncQueue(buildingName, partition);
+        transport.declareQueue(QueueSpec.autoDelete(syncQueue));
+        inboxConsumerTags.add(transport.consume(syncQueue, true,
+                delivery -> workers.execute(() -> sendSnapshot(delivery.properties().getReplyTo()))));
+        // Offered while the journal is locked, so the ring holds the records in LSN order
+        journal.tap((lsn, type, payload) -> offerStream(ReplicationStream.event(streamId, lsn, type, payload)));
+        periodic.add(scheduler.scheduleAtFixedRate(
+                () -> offerStream(ReplicationStream.heartbeat(streamId, journal.nextLsn() - 1)),
+                0, ReplicationStream.HEARTBEAT_MS, TimeUnit.MILLISECONDS));
+        System.out.printf("[Building %s] replicating on %s (rk=%s)%n", buildingName, Constants.REPLICATION_EXCHANGE,
+                scheme.replicationKey(buildingName, partition));
+    }
+
+    /**
+     * Queues a replication message without blocking the journal. If followers cannot keep
+     * up the record is dropped; they notice the gap and sync again.
+     *
+     * @param message the encoded message
+     */
+    private void offerStream(byte[] message) {
+        if (stream.offer(message)) {
+            streamFull = false;
+        } else if (!streamFull) {
+            streamFull = true;
+            System.err.printf("[Building %s] replication stream full, dropping records%n", buildingName);
+        }
+    }
+
+    /**
+     * Publishes a batch of replication messages, in order.
+     *
+     * @param batch the encoded messages
+     */
+    private void publishStream(List<byte[]> batch) {
+        String rk = scheme.replicationKey(buildingName, partition);
+        try {
+            for (byte[] message : batch) transport.publish(Constants.REPLICATION_EXCHANGE, rk, null, message);
+        } catch (IOException e) {
+            System.err.printf("[Building %s] failed to publish replication stream: %s%n", buildingName, e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a follower a snapshot of the reservations. Like {@link #snapshot()} it is cut at
+     * the journal's next LSN, taken first; the follower applies the stream from there on.
+     *
+     * @param replyTo the follower's stream queue
+     */
+    private void sendSnapshot(String replyTo) {
+        if (replyTo == null) return;
+        try {
+            long lsn = journal.nextLsn();
+            byte[] body = ReplicationStream.snapshot(streamId, lsn, reservations.values(), archive, requests);
+            transport.publish("", replyTo, null, body);
+            System.out.printf("[Building %s] sent snapshot at lsn %d (%d bytes) to follower %s%n", buildingName, lsn,
+                    body.length, replyTo);
+        } catch (IOException e) {
+            System.err.printf("[Building %s] failed to send snapshot to %s: %s%n", buildingName, replyTo,
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Stops teeing the journal and publishes what is left of the stream.
+     */
+    private void stopReplication() {
+        if (stream == null) return;
+        journal.tap(null);
+        stream.awaitEmpty(2_000);
+        stream.stop(2_000);
+    }
+
+    /**
+     * Subscribes to the primary's replication stream on a private queue.
+     *
+     * @throws IOException if the queue cannot be set up
+     */
+    private void follow() throws IOException {
+        RabbitMQConfig.declareReplicationExchange(transport);
+        streamQueue = transport.declareQueue(QueueSpec.serverNamed());
+        transport.bindQueue(streamQueue, Constants.REPLICATION_EXCHANGE, scheme.replicationKey(buildingName, partition));
+        streamConsumerTag = transport.consume(streamQueue, true, delivery -> {
+            try {
+                follower.receive(ReplicationStream.decode(delivery.body()));
+            } catch (IllegalArgumentException e) {
+                System.err.printf("[Building %s] bad replication message: %s%n", buildingName, e.getMessage());
+            }
+        });
+        followTask = scheduler.scheduleAtFixedRate(follower::check, 0, HOLD_TICK_MS, TimeUnit.MILLISECONDS);
+        periodic.add(followTask);
+        System.out.printf("[Building %s] following %s%n", buildingName, scheme.replicationKey(buildingName, partition));
+    }
+
+    /**
+     * The follower's view of this building: loads the primary's snapshots, applies its
+     * records, and takes over the inbox when the primary is gone.
+     */
+    private final class Standby implements ReplicationFollower.Replica {
+        private final Applier applier = new Applier(true);
+
+        @Override
+        public void load(ByteBuffer snapshot) throws IOException {
+            for (ReservationEntry entry : reservations.values()) unrestore(entry);
+            archive.clear();
+            requests.clear();
+            long loaded = loadSnapshot(snapshot);
+            System.out.printf("[Building %s] loaded primary snapshot: %d live + %d archived reservations%n",
+                    buildingName, loaded, archive.size());
+            if (journal != null) {
+                // Records before this point describe the dropped state; a fresh snapshot supersedes them
+                workers.execute(() -> {
+                    try {
+                        synchronized (BuildingService.this) {
+                            snapshotLsn = -1;
+                            snapshot();
+                        }
+                    } catch (IOException e) {
+                        System.err.printf("[Building %s] snapshot failed: %s%n", buildingName, e.getMessage());
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void apply(long lsn, byte type, ByteBuffer payload) throws IOException {
+            BuildingJournal.dispatch(lsn, type, payload, buildingName, applier);
+        }
+
+        @Override
+        public void requestSync() throws IOException {
+            AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().replyTo(streamQueue).build();
+            transport.publish("", scheme.syncQueue(buildingName, partition), props, ReplicationStream.sync());
+        }
+
+        @Override
+        public boolean promote() {
+            // A primary that is only cut off from this follower still holds the lock
+            if (!tryAcquireOwnership()) return false;
+            takeOver();
+            return true;
+        }
+    }
+
+    /**
+     * Turns this follower into the primary: pending holds expire here from now on, the
+     * building is announced and its inbox consumed, and (if enabled) this instance starts
+     * a replication stream of its own for the next follower.
+     */
+    private void takeOver() {
+        followTask.cancel(false);
+        String tag = streamConsumerTag;
+        streamConsumerTag = null;
+        workers.execute(() -> { // not on the timer, which holds the follower's lock
+            try {
+                transport.cancel(tag);
+            } catch (IOException e) {
+                System.err.printf("[Building %s] failed to leave the stream: %s%n", buildingName, e.getMessage());
+            }
+        });
+        try {
+            if (journal != null) journal.flush();
+            scheduleHolds();
+            retirePast();
+            startReplication();
+            announce();
+            startPeriodicAnnounce();
+            subscribeInbox();
+            System.out.printf("[Building %s] took over as primary with %d live reservations%n", buildingName,
+                    reservations.size());
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("[Building %s] takeover failed: %s%n", buildingName, e.getMessage());
+        }
+    }
+
     // reply & helpers
 
     /**
-     * Sends a reply message to a specific client's private queue.
+     * Queues a reply message to the requesting client; it is sent once the batch is committed.
      *
      * @param clientId the ID of the client to reply to
+     * @param request the AMQP properties of the request (replyTo, correlationId)
      * @param type the type of the reply message
      * @param payload the payload of the reply message
-     * @throws IOException if publishing fails
      */
-    private void reply(String clientId, MessageType type, BookingReply payload) throws IOException {
-        WireMessage out = new WireMessage(type, buildingName, payload);
-        String q = Constants.CLIENT_QUEUE_PREFIX + clientId;
-        channel.queueDeclare(q, false, false, true, null);
-        // Client reply queues are temporary, so we don't persist these messages
-        channel.basicPublish("", q, null, MessageSerializer.serialize(out));
+    private void reply(String clientId, AMQP.BasicProperties request, MessageType type, BookingReply payload) {
+        outbox.get().add(new Reply(clientId, request, new WireMessage(type, buildingName, payload)));
         System.out.printf("[Building %s] -> client %s : %s(%s)%n",
                 buildingName, clientId, type, payload.reservationNumber());
     }
 
     /**
-     * Sends an error message to a specific client's private queue.
+     * Queues an error message to the requesting client; it is sent once the batch is committed.
      *
      * @param clientId the ID of the client to reply to
+     * @param request the AMQP properties of the request (replyTo, correlationId)
      * @param message the error message to send
-     * @throws IOException if publishing fails
      */
-    private void replyError(String clientId, String message) throws IOException {
-        WireMessage err = new WireMessage(MessageType.ERROR, buildingName, message);
-        String q = Constants.CLIENT_QUEUE_PREFIX + clientId;
-        channel.queueDeclare(q, false, false, true, null);
-        channel.basicPublish("", q, null, MessageSerializer.serialize(err));
+    private void replyError(String clientId, AMQP.BasicProperties request, String message) {
+        outbox.get().add(new Reply(clientId, request, new WireMessage(MessageType.ERROR, buildingName, message)));
         System.out.printf("[Building %s] -> client %s : ERROR(%s)%n", buildingName, clientId, message);
     }
 
+    /**
+     * Publishes a reply to the request's replyTo queue, or to the client's private queue.
+     *
+     * @param clientId the ID of the client to reply to
+     * @param request the AMQP properties of the request
+     * @param out the reply message
+     * @throws IOException if publishing fails
+     */
+    private void publishReply(String clientId, AMQP.BasicProperties request, WireMessage out) throws IOException {
+        String q = MessageHeaders.replyQueue(request, clientId);
+        if (request == null || request.getReplyTo() == null) {
+            transport.declareQueue(QueueSpec.autoDelete(q));
+        }
+        // Client reply queues are temporary, so we don't persist these messages
+        transport.publish("", q, MessageHeaders.replyProperties(request, clientId), MessageSerializer.serialize(out));
+    }
+
     /**
      * Extracts the client ID from a message.
      * Assumes the sender field contains the original client ID.
@@ -403,34 +1569,49 @@ public class BuildingService {
     }
 
 
-    private void startPendingCleanup() {
-        scheduler = new Timer(true); // daemon thread
-        scheduler.scheduleAtFixedRate(new java.util.TimerTask() {
-            @Override
-            public void run() {
-                reservations.values().stream()
-                        .filter(r -> status.get(r.id) == ReservationStatus.PENDING &&
-                                r.createdAt.plusSeconds(300).isBefore(java.time.Instant.now()))
-                        .forEach(r -> autoCancelReservation(r.id));
+    /**
+     * Drives the hold expiry wheel. Each tick only visits the holds due in it,
+     * so freed capacity comes back within one tick of the deadline.
+     */
+    private void startHoldExpiry() {
+        periodic.add(scheduler.scheduleAtFixedRate(() -> {
+            holdExpiry.advance(System.currentTimeMillis());
+            try {
+                // Expiries answer no request, so one flush per tick is enough (a lost one expires again on replay)
+                if (journal != null) journal.flush();
+            } catch (IOException e) {
+                System.err.printf("[Building %s] failed to flush expiries: %s%n", buildingName, e.getMessage());
             }
-        }, 60_000, 60_000); // delay and period in milliseconds
-    }
-
-    private void autoCancelReservation(String reservationId) {
-        Reservation r = reservations.get(reservationId);
-        if (r == null) return;
-
-        status.put(reservationId, ReservationStatus.CANCELED);
-        bookedPerDay.compute(r.date, (d, used) -> used == null ? 0 : Math.max(0, used - r.rooms));
-
-        System.out.printf("[Building %s] AUTO-CANCELED %s (timeout)%n", buildingName, reservationId);
+        }, HOLD_TICK_MS, HOLD_TICK_MS, TimeUnit.MILLISECONDS));
+        periodic.add(scheduler.scheduleAtFixedRate(this::retirePast, RETENTION_SWEEP_MINUTES, RETENTION_SWEEP_MINUTES,
+                TimeUnit.MINUTES));
     }
 
     /**
-     * Internal exception for handling over-capacity scenarios efficiently
+     * Cancels a hold whose deadline passed, if it is still PENDING. Runs on the expiry
+     * wheel, so failures are logged here rather than thrown: the other holds due in the
+     * same tick still expire.
+     *
+     * @param entry the expired reservation
      */
-    private static final class OverCapacity extends RuntimeException {
-        static final OverCapacity INSTANCE = new OverCapacity();
-        private OverCapacity() { super(null, null, false, false); } // no stacktrace for speed
+    private void autoCancelReservation(ReservationEntry entry) {
+        String reservationId = entry.reservation.id;
+        try {
+            // Only a hold that is still pending expires; confirmed or canceled ones are left alone
+            if (!entry.transition(ReservationStatus.PENDING, ReservationStatus.CANCELED)) return;
+            Reservation r = entry.reservation;
+            release(r.date, r.startTime, r.hours, r.rooms);
+            try {
+                record(BuildingJournal.EXPIRE, reservationId);
+            } catch (IOException e) {
+                System.err.printf("[Building %s] failed to journal expiry of %s: %s%n", buildingName, reservationId,
+                        e.getMessage());
+            }
+            retire(entry);
+
+            System.out.printf("[Building %s] AUTO-CANCELED %s (timeout)%n", buildingName, reservationId);
+        } catch (RuntimeException e) {
+            System.err.printf("[Building %s] failed to expire %s: %s%n", buildingName, reservationId, e);
+        }
     }
 }
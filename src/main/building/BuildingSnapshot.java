@@ -0,0 +1,114 @@
+package main.building;
+
+import main.domain.Reservation;
+import main.domain.ReservationStatus;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.function.Consumer;
+
+/**
+ * Snapshot body of a building: its live reservations with their state, followed by
+ * the {@link ReservationArchive} and the {@link RequestCache}. Capacity is not stored;
+ * it is rebuilt from the live reservations that are not canceled.
+ * <p>
+ * Body layout:
+ * <pre>
+ *   int    format
+ *   per reservation:
+ *     byte 1, then id, rooms, epochDay, startMinute, hours, createdAt ms, hold deadline ms, state ordinal
+ *   byte   0 (end)
+ *   ...    archive (format 2+), see {@link ReservationArchive#writeTo}
+ *   ...    request replies (format 4+), see {@link RequestCache#writeTo}
+ * </pre>
+ * The reservation fields match the BOOK record of {@link BuildingJournal}.
+ * Format history: 1 - reservations only; 2 - archive appended; 3 - archive keyed by
+ * reservation id ({@link main.util.ReservationIds#key(String)}); 4 - request replies appended.
+ */
+final class BuildingSnapshot {
+
+    private static final int FORMAT = 4;
+    private static final ReservationStatus[] STATES = ReservationStatus.values();
+
+    // Private constructor to prevent instantiation
+    private BuildingSnapshot() {}
+
+    /**
+     * Writes reservations, the archive and the request replies. The entries may change while
+     * they are written; each is written in the state it has when reached. The archive is
+     * written after them, so a reservation archived meanwhile is in at least one of the two.
+     *
+     * @param out      the snapshot stream
+     * @param entries  the live reservations
+     * @param archive  the archived reservations
+     * @param requests the replies to recent requests
+     * @return the number of written live reservations
+     * @throws IOException if writing fails
+     */
+    static long write(DataOutputStream out, Iterable<ReservationEntry> entries, ReservationArchive archive,
+                      RequestCache requests) throws IOException {
+        out.writeInt(FORMAT);
+        long count = 0;
+        for (ReservationEntry entry : entries) {
+            Reservation r = entry.reservation;
+            byte[] id = r.id.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(1);
+            out.writeInt(id.length);
+            out.write(id);
+            out.writeInt(r.rooms);
+            out.writeLong(r.date.toEpochDay());
+            out.writeInt(r.startTime.getHour() * 60 + r.startTime.getMinute());
+            out.writeInt(r.hours);
+            out.writeLong(r.createdAt.toEpochMilli());
+            out.writeLong(entry.holdDeadline);
+            out.writeByte(entry.state().ordinal());
+            count++;
+        }
+        out.writeByte(0);
+        archive.writeTo(out);
+        requests.writeTo(out);
+        return count;
+    }
+
+    /**
+     * Reads a snapshot body.
+     *
+     * @param body     the body, positioned at its start
+     * @param building the building name (for reconstructing reservations)
+     * @param sink     receives the live entries in their recorded state
+     * @param archive  receives the archived reservations
+     * @param requests receives the replies to recent requests
+     * @return the number of read live reservations
+     * @throws IOException if the body has an unknown format
+     */
+    static long read(ByteBuffer body, String building, Consumer<ReservationEntry> sink, ReservationArchive archive,
+                     RequestCache requests) throws IOException {
+        int format = body.getInt();
+        if (format < 1 || format > FORMAT) throw new IOException("unsupported building snapshot format " + format);
+        long count = 0;
+        while (body.get() != 0) {
+            byte[] idBytes = new byte[body.getInt()];
+            body.get(idBytes);
+            String id = new String(idBytes, StandardCharsets.UTF_8);
+            int rooms = body.getInt();
+            LocalDate date = LocalDate.ofEpochDay(body.getLong());
+            int startMinute = body.getInt();
+            int hours = body.getInt();
+            Instant createdAt = Instant.ofEpochMilli(body.getLong());
+            long holdDeadline = body.getLong();
+            ReservationStatus state = STATES[body.get()];
+            Reservation r = new Reservation(id, building, rooms, date,
+                    LocalTime.of(startMinute / 60, startMinute % 60), hours, createdAt);
+            sink.accept(new ReservationEntry(r, holdDeadline, state));
+            count++;
+        }
+        if (format >= 2) archive.readFrom(body, format == 2);
+        if (format >= 4) requests.readFrom(body);
+        return count;
+    }
+}
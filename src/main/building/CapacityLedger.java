@@ -0,0 +1,182 @@
+package main.building;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ledger of rooms booked per time slot.
+ * <p>
+ * A day is divided into slots of {@code slotMinutes}; each day holds a {@link SlotTree}
+ * answering "max occupancy over [start, end)" and applying the range increment of a
+ * booking in O(log slots). Check and increment run under the lock of that day only,
+ * so bookings on different days never contend.
+ * <p>
+ * Days inside the booking horizon ({@code [firstDay, firstDay + horizonDays)}) are found
+ * by index in an array, created on first use; days outside the horizon fall back to a map.
+ * The peak occupancy of every day is published in a volatile field, so availability can
+ * be read without taking the lock.
+ */
+final class CapacityLedger {
+
+    // Dates slightly in the past are still accepted by the building, so the horizon starts a bit earlier
+    private static final int PAST_DAYS = 31;
+    static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final int capacity;
+    private final int slotMinutes;
+    private final int slotsPerDay;
+    private final long firstDay;
+    private final AtomicReferenceArray<Day> days;
+    private final Map<Long, Day> outsideHorizon = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a ledger whose horizon starts a month before today.
+     *
+     * @param capacity    rooms available per slot
+     * @param horizonDays number of days found by index
+     * @param slotMinutes slot length in minutes (must divide a day)
+     */
+    CapacityLedger(int capacity, int horizonDays, int slotMinutes) {
+        this(capacity, LocalDate.now().toEpochDay() - PAST_DAYS, horizonDays + PAST_DAYS, slotMinutes);
+    }
+
+    /**
+     * Creates a ledger with an explicit horizon.
+     *
+     * @param capacity    rooms available per slot
+     * @param firstDay    epoch day of the first indexed day
+     * @param horizonDays number of indexed days
+     * @param slotMinutes slot length in minutes (must divide a day)
+     */
+    CapacityLedger(int capacity, long firstDay, int horizonDays, int slotMinutes) {
+        if (slotMinutes <= 0 || MINUTES_PER_DAY % slotMinutes != 0) {
+            throw new IllegalArgumentException("slotMinutes must divide " + MINUTES_PER_DAY + ": " + slotMinutes);
+        }
+        this.capacity = capacity;
+        this.slotMinutes = slotMinutes;
+        this.slotsPerDay = MINUTES_PER_DAY / slotMinutes;
+        this.firstDay = firstDay;
+        this.days = new AtomicReferenceArray<>(Math.max(1, horizonDays));
+    }
+
+    /**
+     * Reserves rooms over a time range of a day if every slot in it has capacity left.
+     * The range is widened to whole slots.
+     *
+     * @param epochDay    the day, as {@link LocalDate#toEpochDay()}
+     * @param startMinute start of the booking, in minutes after midnight
+     * @param endMinute   end of the booking (exclusive), at most {@link #MINUTES_PER_DAY}
+     * @param rooms       the number of rooms to reserve (positive)
+     * @return true if the rooms were reserved, false if capacity would be exceeded
+     */
+    boolean tryReserve(long epochDay, int startMinute, int endMinute, int rooms) {
+        if (rooms > capacity) return false;
+        int from = startMinute / slotMinutes;
+        int to = (endMinute + slotMinutes - 1) / slotMinutes;
+        Day day = day(epochDay, true);
+        synchronized (day) {
+            if (day.slots.max(from, to) > capacity - rooms) return false;
+            day.slots.add(from, to, rooms);
+            day.peak = day.slots.peak();
+        }
+        return true;
+    }
+
+    /**
+     * Reserves rooms without checking capacity, e.g. when restoring recorded reservations
+     * (the capacity was checked when they were made).
+     *
+     * @param epochDay    the day, as {@link LocalDate#toEpochDay()}
+     * @param startMinute start of the booking, in minutes after midnight
+     * @param endMinute   end of the booking (exclusive)
+     * @param rooms       the number of rooms to reserve
+     */
+    void reserve(long epochDay, int startMinute, int endMinute, int rooms) {
+        int from = startMinute / slotMinutes;
+        int to = (endMinute + slotMinutes - 1) / slotMinutes;
+        Day day = day(epochDay, true);
+        synchronized (day) {
+            day.slots.add(from, to, rooms);
+            day.peak = day.slots.peak();
+        }
+    }
+
+    /**
+     * Releases rooms previously reserved with {@link #tryReserve(long, int, int, int)}.
+     *
+     * @param epochDay    the day, as {@link LocalDate#toEpochDay()}
+     * @param startMinute start of the booking, in minutes after midnight
+     * @param endMinute   end of the booking (exclusive)
+     * @param rooms       the number of rooms to release
+     */
+    void release(long epochDay, int startMinute, int endMinute, int rooms) {
+        Day day = day(epochDay, false);
+        if (day == null) return;
+        int from = startMinute / slotMinutes;
+        int to = (endMinute + slotMinutes - 1) / slotMinutes;
+        synchronized (day) {
+            day.slots.add(from, to, -rooms);
+            day.peak = day.slots.peak();
+        }
+    }
+
+    /**
+     * Gets the highest number of rooms booked in any slot of a day, without locking.
+     *
+     * @param epochDay the day, as {@link LocalDate#toEpochDay()}
+     * @return the peak booked room count
+     */
+    int peak(long epochDay) {
+        Day day = day(epochDay, false);
+        return day == null ? 0 : day.peak;
+    }
+
+    /**
+     * Gets the capacity per slot.
+     *
+     * @return rooms available per slot
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the slot length.
+     *
+     * @return minutes per slot
+     */
+    int slotMinutes() {
+        return slotMinutes;
+    }
+
+    private Day day(long epochDay, boolean create) {
+        long i = epochDay - firstDay;
+        if (i >= 0 && i < days.length()) {
+            int slot = (int) i;
+            Day day = days.get(slot);
+            if (day == null && create) {
+                Day fresh = new Day(slotsPerDay);
+                day = days.compareAndExchange(slot, null, fresh);
+                if (day == null) day = fresh;
+            }
+            return day;
+        }
+        return create
+                ? outsideHorizon.computeIfAbsent(epochDay, d -> new Day(slotsPerDay))
+                : outsideHorizon.get(epochDay);
+    }
+
+    /**
+     * Occupancy of one day: the slot tree (guarded by this object's monitor) and its published peak.
+     */
+    private static final class Day {
+        final SlotTree slots;
+        volatile int peak;
+
+        Day(int slotsPerDay) {
+            this.slots = new SlotTree(slotsPerDay);
+        }
+    }
+}
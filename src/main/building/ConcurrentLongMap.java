@@ -0,0 +1,240 @@
+package main.building;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Concurrent hash map from primitive {@code long} keys to objects, so lookups by
+ * reservation id neither box the key nor hash a string.
+ * <p>
+ * The key space is split over a fixed number of segments, each an open-addressing
+ * table with linear probing guarded by its own monitor. Key 0 is reserved as the
+ * empty-slot marker. Iteration copies one segment at a time and is weakly consistent:
+ * it sees every mapping that exists for its whole duration, and may or may not see
+ * mappings added or removed meanwhile.
+ *
+ * @param <V> the value type
+ */
+final class ConcurrentLongMap<V> {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private final Segment<V>[] segments;
+
+    /**
+     * Creates an empty map.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ConcurrentLongMap() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment<>();
+    }
+
+    private static long mix(long key) {
+        // Generated ids differ mostly in their low bits; spread them over segments and slots
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        return key ^ (key >>> 33);
+    }
+
+    private Segment<V> segment(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * Gets the value for a key.
+     *
+     * @param key a non-zero key
+     * @return the value, or null if absent
+     */
+    V get(long key) {
+        long h = mix(key);
+        return segment(h).get(key, h);
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous value.
+     *
+     * @param key   a non-zero key
+     * @param value the value
+     */
+    void put(long key, V value) {
+        long h = mix(key);
+        segment(h).put(key, h, value, false);
+    }
+
+    /**
+     * Maps a key to a value unless it is mapped already.
+     *
+     * @param key   a non-zero key
+     * @param value the value
+     * @return the existing value, or null if the value was added
+     */
+    V putIfAbsent(long key, V value) {
+        long h = mix(key);
+        return segment(h).put(key, h, value, true);
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key the key
+     * @return the removed value, or null if absent
+     */
+    V remove(long key) {
+        long h = mix(key);
+        return segment(h).remove(key, h, null);
+    }
+
+    /**
+     * Removes a key only while it maps to the given value.
+     *
+     * @param key   the key
+     * @param value the expected value
+     * @return true if removed
+     */
+    boolean remove(long key, V value) {
+        long h = mix(key);
+        return segment(h).remove(key, h, value) != null;
+    }
+
+    /**
+     * Gets the number of mappings.
+     *
+     * @return the size (a moment's view under concurrent updates)
+     */
+    int size() {
+        int n = 0;
+        for (Segment<V> s : segments) n += s.size();
+        return n;
+    }
+
+    /**
+     * Gets the values, for iteration.
+     *
+     * @return a weakly consistent view of the values
+     */
+    Iterable<V> values() {
+        return () -> new Iterator<>() {
+            private int segment;
+            private Object[] batch = new Object[0];
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == batch.length) {
+                    if (segment == SEGMENTS) return false;
+                    batch = segments[segment++].values();
+                    next = 0;
+                }
+                return true;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return (V) batch[next++];
+            }
+        };
+    }
+
+    /**
+     * One open-addressing table.
+     */
+    private static final class Segment<V> {
+        private long[] keys = new long[16];
+        private Object[] values = new Object[16];
+        private int size;
+
+        synchronized int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long key, long hash) {
+            int slot = find(key, hash);
+            return keys[slot] == key ? (V) values[slot] : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(long key, long hash, V value, boolean onlyIfAbsent) {
+            if (key == 0) throw new IllegalArgumentException("key 0 is reserved");
+            int slot = find(key, hash);
+            if (keys[slot] == key) {
+                V old = (V) values[slot];
+                if (!onlyIfAbsent) values[slot] = value;
+                return old;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 4 > keys.length * 3) resize(); // load factor 0.75
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long key, long hash, V expected) {
+            int slot = find(key, hash);
+            if (keys[slot] != key || key == 0) return null;
+            V old = (V) values[slot];
+            if (expected != null && old != expected) return null;
+            deleteSlot(slot);
+            size--;
+            return old;
+        }
+
+        synchronized Object[] values() {
+            Object[] out = new Object[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) out[n++] = values[i];
+            }
+            return out;
+        }
+
+        private int find(long key, long hash) {
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            while (keys[slot] != 0 && keys[slot] != key) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        /**
+         * Backward-shift deletion: moves later entries of the probe run into the gap,
+         * so lookups never need tombstones.
+         */
+        private void deleteSlot(int gap) {
+            int mask = keys.length - 1;
+            int slot = gap;
+            while (true) {
+                slot = (slot + 1) & mask;
+                long k = keys[slot];
+                if (k == 0) break;
+                int home = (int) mix(k) & mask;
+                // Move the entry if its home is not within (gap, slot], cyclically
+                if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                    keys[gap] = k;
+                    values[gap] = values[slot];
+                    gap = slot;
+                }
+            }
+            keys[gap] = 0;
+            values[gap] = null;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                long k = oldKeys[i];
+                if (k == 0) continue;
+                int slot = find(k, mix(k));
+                keys[slot] = k;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package main.building;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded multi-producer, single-consumer ring buffer.
+ * <p>
+ * Slots are preallocated; a producer claims a sequence number with one atomic increment,
+ * stores its item and then publishes the slot by writing the sequence into it, so no lock
+ * is taken on either side. The consumer reads slots in sequence order as long as they are
+ * published. An idle consumer parks and the next producer unparks it; a producer that
+ * finds the ring full waits for the consumer (callers size the ring so that normally
+ * never happens, e.g. from the consumer prefetch).
+ *
+ * @param <T> the item type
+ */
+final class MpscRing<T> {
+
+    private final Object[] items;
+    private final AtomicLongArray published; // sequence stored in each slot once its item is visible
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // next sequence to claim
+    private volatile long head;                       // next sequence to consume (consumer only writes)
+    private volatile Thread consumer;
+    private volatile boolean consumerWaiting;
+
+    /**
+     * Creates a ring.
+     *
+     * @param minCapacity the minimum number of slots (rounded up to a power of two)
+     */
+    MpscRing(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity) * 2 - 1);
+        items = new Object[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds an item, waiting while the ring is full.
+     *
+     * @param item the item (not null)
+     * @throws InterruptedException if interrupted while waiting for space
+     */
+    void put(T item) throws InterruptedException {
+        long seq = tail.getAndIncrement();
+        while (seq - head >= items.length) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            LockSupport.parkNanos(10_000);
+        }
+        int slot = (int) seq & mask;
+        items[slot] = item;
+        published.set(slot, seq); // volatile write publishes the item
+        if (consumerWaiting) LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Adds an item unless the ring is full. Producers that must not wait (e.g. while
+     * holding a lock) use this instead of {@link #put(Object)}.
+     *
+     * @param item the item (not null)
+     * @return false if the ring was full and the item was not added
+     */
+    boolean offer(T item) {
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head >= items.length) return false;
+        } while (!tail.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        items[slot] = item;
+        published.set(slot, seq);
+        if (consumerWaiting) LockSupport.unpark(consumer);
+        return true;
+    }
+
+    /**
+     * Takes the next item, waiting up to a timeout. Consumer thread only.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return the item, or null if none arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        T item = take();
+        if (item != null || timeout <= 0) return item;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        consumer = Thread.currentThread();
+        try {
+            while (true) {
+                consumerWaiting = true;
+                item = take(); // re-check after announcing, so a concurrent put cannot be missed
+                if (item != null) return item;
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return null;
+                LockSupport.parkNanos(this, left);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            consumerWaiting = false;
+        }
+    }
+
+    /**
+     * Moves the published items, up to a maximum, into a collection without waiting.
+     * Consumer thread only.
+     *
+     * @param sink receives the items in order
+     * @param max  the maximum number of items to move
+     * @return the number of moved items
+     */
+    int drainTo(Collection<? super T> sink, int max) {
+        int n = 0;
+        T item;
+        while (n < max && (item = take()) != null) {
+            sink.add(item);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Gets the number of claimed but not yet consumed slots.
+     *
+     * @return an estimate of the number of waiting items
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T take() {
+        long seq = head;
+        int slot = (int) seq & mask;
+        if (published.get(slot) != seq) return null;
+        T item = (T) items[slot];
+        items[slot] = null;
+        head = seq + 1; // frees the slot for producers
+        return item;
+    }
+}
@@ -0,0 +1,243 @@
+package main.building;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follower side of the {@link ReplicationStream}: keeps a standby copy of a building in
+ * step with its primary and decides when to take over.
+ * <p>
+ * Until it has a snapshot the follower buffers the events it receives; once the snapshot
+ * arrives it applies the buffered events from the snapshot's cut on, then every further
+ * event in LSN order. Events that arrive early wait in a reorder buffer; if the follower
+ * still lags behind the primary after {@link #GAP_NANOS} (a lost event, or a new primary)
+ * while the primary is alive, it drops its copy and syncs again.
+ * <p>
+ * When nothing has been heard from the primary for the failover timeout, the follower
+ * promotes its replica, which then consumes the building's inbox. The replica refuses
+ * while the primary still owns the building (it may only be cut off from the follower);
+ * the follower then keeps following and tries again. Records the primary wrote but never
+ * published are lost with it; the follower reports how many it knows of.
+ * A follower that is not in step (never synced, or syncing again) does not take over.
+ * <p>
+ * Messages are received on one consumer thread and {@link #check()} runs on a timer;
+ * both hold this object's monitor.
+ */
+final class ReplicationFollower {
+
+    // Lagging behind for this long while the primary is alive means an event is lost
+    static final long GAP_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long SYNC_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // The primary counts as alive if a message came within this time (heartbeats are every second)
+    private static final long ALIVE_NANOS = TimeUnit.MILLISECONDS.toNanos(ReplicationStream.HEARTBEAT_MS * 3 / 2);
+    private static final int MAX_PENDING = 1 << 20;
+
+    /**
+     * The standby building the follower drives.
+     */
+    interface Replica {
+        /**
+         * Drops the replica's state and loads a primary snapshot instead.
+         *
+         * @param snapshot the snapshot body
+         * @throws IOException if the snapshot is corrupt
+         */
+        void load(ByteBuffer snapshot) throws IOException;
+
+        /**
+         * Applies one journal record of the primary.
+         *
+         * @param lsn     the LSN of the record at the primary
+         * @param type    the record type
+         * @param payload the record payload
+         * @throws IOException if the record is corrupt or cannot be recorded locally
+         */
+        void apply(long lsn, byte type, ByteBuffer payload) throws IOException;
+
+        /**
+         * Asks the primary for a snapshot.
+         *
+         * @throws IOException if the request cannot be sent
+         */
+        void requestSync() throws IOException;
+
+        /**
+         * Takes over the building from the silent primary, if it can get ownership.
+         *
+         * @return true if the replica took over
+         */
+        boolean promote();
+    }
+
+    private final String name;
+    private final Replica replica;
+    private final long failoverNanos;
+    private final TreeMap<Long, ReplicationStream.Message> pending = new TreeMap<>(); // events by LSN
+    private long stream;        // the primary run the replica follows, 0 while not in step
+    private long nextLsn;       // the next event to apply
+    private long primaryLsn;    // the newest LSN the primary reported
+    private long lastHeard;     // when the last message from a primary arrived (nanoTime)
+    private long gapSince;      // since when the replica lags behind, 0 if it does not
+    private long syncRequested; // when the outstanding sync was requested, 0 if none
+    private boolean promoted;
+    private boolean refused; // a promotion was refused and not yet reported again
+
+    /**
+     * Creates a follower.
+     *
+     * @param name       the building (and partition) name, for logging
+     * @param replica    the standby building
+     * @param failoverMs how long the primary may be silent before the replica takes over
+     */
+    ReplicationFollower(String name, Replica replica, long failoverMs) {
+        this.name = name;
+        this.replica = replica;
+        this.failoverNanos = TimeUnit.MILLISECONDS.toNanos(failoverMs);
+        this.lastHeard = System.nanoTime();
+    }
+
+    /**
+     * Handles a message of the stream.
+     *
+     * @param m the message
+     */
+    synchronized void receive(ReplicationStream.Message m) {
+        if (promoted) return;
+        lastHeard = System.nanoTime();
+        switch (m.kind()) {
+            case ReplicationStream.SNAPSHOT -> synced(m);
+            case ReplicationStream.HEARTBEAT -> {
+                if (stream != 0 && m.stream() != stream) resync("a new primary took over");
+                else if (stream != 0) primaryLsn = Math.max(primaryLsn, m.lsn());
+            }
+            case ReplicationStream.EVENT -> {
+                if (stream != 0 && m.stream() != stream) resync("a new primary took over");
+                if (stream == 0 || m.lsn() >= nextLsn) buffer(m);
+                drain();
+            }
+            default -> { } // SYNC requests are for primaries
+        }
+    }
+
+    /**
+     * Runs the timers: requests a sync if none is answered, syncs again if an event is
+     * missing, and promotes the replica once the primary is silent for too long.
+     */
+    synchronized void check() {
+        if (promoted) return;
+        long now = System.nanoTime();
+        if (stream == 0) {
+            if (syncRequested == 0 || now - syncRequested > SYNC_RETRY_NANOS) requestSync(now);
+            return;
+        }
+        if (now - lastHeard > failoverNanos) {
+            if (!replica.promote()) {
+                if (!refused) {
+                    refused = true;
+                    System.out.printf("[Building %s] primary silent but still owns the building; standing by%n", name);
+                }
+                return;
+            }
+            promoted = true;
+            long missing = Math.max(0, primaryLsn - nextLsn + 1);
+            System.out.printf("[Building %s] primary silent for %d ms, took over at lsn %d%s%n", name,
+                    TimeUnit.NANOSECONDS.toMillis(now - lastHeard), nextLsn - 1,
+                    missing > 0 ? " (" + missing + " records of the primary lost)" : "");
+            return;
+        }
+        refused = false;
+        boolean behind = nextLsn <= primaryLsn || !pending.isEmpty();
+        if (!behind) {
+            gapSince = 0;
+        } else if (gapSince == 0) {
+            gapSince = now;
+        } else if (now - gapSince > GAP_NANOS && now - lastHeard < ALIVE_NANOS) {
+            resync("missing events from lsn " + nextLsn);
+        }
+    }
+
+    /**
+     * Tells whether the replica took over.
+     *
+     * @return true once promoted
+     */
+    synchronized boolean promoted() {
+        return promoted;
+    }
+
+    /**
+     * Gets the LSN (at the primary) up to which the replica is in step.
+     *
+     * @return the last applied LSN, or -1 while not in step
+     */
+    synchronized long appliedLsn() {
+        return stream != 0 ? nextLsn - 1 : -1;
+    }
+
+    private void synced(ReplicationStream.Message m) {
+        try {
+            replica.load(m.body());
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("[Building %s] failed to load primary snapshot: %s%n", name, e.getMessage());
+            stream = 0;
+            syncRequested = 0; // retried by the next check
+            return;
+        }
+        stream = m.stream();
+        nextLsn = m.lsn();
+        primaryLsn = m.lsn() - 1;
+        syncRequested = 0;
+        gapSince = 0;
+        pending.values().removeIf(e -> e.stream() != stream);
+        pending.headMap(nextLsn).clear();
+        System.out.printf("[Building %s] in step with primary at lsn %d (%d buffered events)%n", name,
+                nextLsn - 1, pending.size());
+        drain();
+    }
+
+    private void buffer(ReplicationStream.Message m) {
+        if (pending.size() >= MAX_PENDING) {
+            pending.clear(); // a snapshot covers them
+            if (stream != 0) resync("too far behind");
+        }
+        pending.put(m.lsn(), m);
+    }
+
+    private void drain() {
+        if (stream == 0) return;
+        Map.Entry<Long, ReplicationStream.Message> e;
+        while ((e = pending.firstEntry()) != null && e.getKey() <= nextLsn) {
+            pending.pollFirstEntry();
+            if (e.getKey() < nextLsn) continue; // already applied
+            ReplicationStream.Message m = e.getValue();
+            try {
+                replica.apply(m.lsn(), m.type(), m.body());
+            } catch (IOException | RuntimeException ex) {
+                System.err.printf("[Building %s] failed to apply lsn %d: %s%n", name, m.lsn(), ex.getMessage());
+                resync("apply failed");
+                return;
+            }
+            nextLsn++;
+        }
+    }
+
+    private void resync(String reason) {
+        System.out.printf("[Building %s] out of step with primary (%s), syncing again%n", name, reason);
+        stream = 0;
+        primaryLsn = 0;
+        gapSince = 0;
+        requestSync(System.nanoTime());
+    }
+
+    private void requestSync(long now) {
+        syncRequested = now;
+        try {
+            replica.requestSync();
+        } catch (IOException e) {
+            System.err.printf("[Building %s] failed to request a sync: %s%n", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package main.building;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Messages of the replication stream between a primary building and its followers.
+ * <p>
+ * The primary publishes every journal record it writes as an EVENT carrying the record's
+ * LSN, and a HEARTBEAT with its newest LSN every second. A follower starts by sending a
+ * SYNC request and receives a SNAPSHOT: the primary's reservations plus the LSN the
+ * snapshot was cut at, from which on it applies the events. Every message names the
+ * stream it belongs to (a random id per primary run), so a follower notices when a new
+ * primary took over the building and syncs again.
+ * <pre>
+ *   EVENT      kind, stream, lsn, record type, record payload
+ *   HEARTBEAT  kind, stream, newest lsn
+ *   SNAPSHOT   kind, stream, cut lsn, snapshot body ({@link BuildingSnapshot})
+ *   SYNC       kind
+ * </pre>
+ */
+final class ReplicationStream {
+
+    static final byte EVENT = 1;
+    static final byte HEARTBEAT = 2;
+    static final byte SNAPSHOT = 3;
+    static final byte SYNC = 4;
+
+    // How often a primary sends a heartbeat
+    static final long HEARTBEAT_MS = 1000;
+
+    private static final int HEADER_BYTES = 1 + 8 + 8;
+
+    private ReplicationStream() {}
+
+    /**
+     * A decoded stream message.
+     *
+     * @param kind   EVENT, HEARTBEAT, SNAPSHOT or SYNC
+     * @param stream the id of the primary run that sent it (0 for SYNC)
+     * @param lsn    the LSN of the event, the newest LSN, or the snapshot cut
+     * @param type   the journal record type of an EVENT (0 otherwise)
+     * @param body   the record payload or snapshot body, positioned at its start
+     */
+    record Message(byte kind, long stream, long lsn, byte type, ByteBuffer body) {}
+
+    /**
+     * Encodes a journal record.
+     *
+     * @param stream  the stream id
+     * @param lsn     the LSN of the record
+     * @param type    the record type
+     * @param payload the record payload
+     * @return the message body
+     */
+    static byte[] event(long stream, long lsn, byte type, byte[] payload) {
+        return header(HEADER_BYTES + 1 + payload.length, EVENT, stream, lsn).put(type).put(payload).array();
+    }
+
+    /**
+     * Encodes a heartbeat.
+     *
+     * @param stream the stream id
+     * @param lsn    the newest LSN written by the primary
+     * @return the message body
+     */
+    static byte[] heartbeat(long stream, long lsn) {
+        return header(HEADER_BYTES, HEARTBEAT, stream, lsn).array();
+    }
+
+    /**
+     * Encodes a sync request.
+     *
+     * @return the message body
+     */
+    static byte[] sync() {
+        return new byte[]{SYNC};
+    }
+
+    /**
+     * Encodes a snapshot of a building's reservations.
+     *
+     * @param stream   the stream id
+     * @param lsn      the cut: every record below it is reflected in the entries
+     * @param entries  the live reservations
+     * @param archive  the archived reservations
+     * @param requests the replies to recent requests
+     * @return the message body
+     * @throws IOException if writing the snapshot fails
+     */
+    static byte[] snapshot(long stream, long lsn, Iterable<ReservationEntry> entries, ReservationArchive archive,
+                           RequestCache requests) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(SNAPSHOT);
+        out.writeLong(stream);
+        out.writeLong(lsn);
+        BuildingSnapshot.write(out, entries, archive, requests);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a stream message.
+     *
+     * @param body the message body
+     * @return the message
+     * @throws IllegalArgumentException if the body is malformed
+     */
+    static Message decode(byte[] body) {
+        if (body.length == 0) throw new IllegalArgumentException("empty replication message");
+        ByteBuffer b = ByteBuffer.wrap(body);
+        byte kind = b.get();
+        if (kind == SYNC) return new Message(SYNC, 0, 0, (byte) 0, b);
+        if (kind < EVENT || kind > SNAPSHOT || body.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("malformed replication message, kind " + kind);
+        }
+        long stream = b.getLong();
+        long lsn = b.getLong();
+        byte type = kind == EVENT ? b.get() : 0;
+        return new Message(kind, stream, lsn, type, b.slice());
+    }
+
+    private static ByteBuffer header(int size, byte kind, long stream, long lsn) {
+        return ByteBuffer.allocate(size).put(kind).putLong(stream).putLong(lsn);
+    }
+}
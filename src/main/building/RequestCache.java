@@ -0,0 +1,194 @@
+package main.building;
+
+import main.domain.BookingReply;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replies to recent successful booking requests by their idempotency key, so a request that
+ * arrives again (redelivered after its reply was lost, or resent by a client after a timeout)
+ * is answered with the original hold instead of booking a second time. Refused requests are
+ * not remembered: resent once capacity is freed, they may book.
+ * <p>
+ * Bounded in time and size: an entry expires after the retention time, and beyond the
+ * maximum number of entries the oldest go first. Entries are queued in insertion order,
+ * so eviction only ever looks at the head of the queue. Keys are
+ * {@code <clientId>/<requestId>}, so request ids only need to be unique per client.
+ * Lanes look up and insert concurrently; requests with the same key share a lane (they
+ * have the same date), so a key is never inserted by two lanes at once.
+ * <p>
+ * Snapshot layout (see {@link BuildingSnapshot}):
+ * <pre>
+ *   per entry: byte 1, then key, success byte, reservation number, message, expiry ms
+ *   byte 0 (end)
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes.
+ */
+final class RequestCache {
+
+    private static final class Entry {
+        final String key;
+        final BookingReply reply;
+        final long expiresAt; // epoch ms
+
+        Entry(String key, BookingReply reply, long expiresAt) {
+            this.key = key;
+            this.reply = reply;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long retentionMs;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> byKey = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>(); // insertion order
+    private final AtomicInteger size = new AtomicInteger(); // keys in byKey
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param retentionMs how long a reply is remembered, 0 to remember none
+     * @param maxEntries  the maximum number of remembered replies
+     */
+    RequestCache(long retentionMs, int maxEntries) {
+        this.retentionMs = Math.max(0, retentionMs);
+        this.maxEntries = Math.max(0, maxEntries);
+    }
+
+    /**
+     * Gets the key of a request.
+     *
+     * @param clientId  the sender of the request
+     * @param requestId the request id it carries, or null
+     * @return the key, or null if the request has no id or the cache is disabled
+     */
+    String key(String clientId, String requestId) {
+        return requestId == null || retentionMs == 0 || maxEntries == 0 ? null : clientId + "/" + requestId;
+    }
+
+    /**
+     * Looks up the reply to an earlier request.
+     *
+     * @param key the request key
+     * @return the original reply, or null if the request is new (or its reply expired)
+     */
+    BookingReply get(String key) {
+        Entry e = byKey.get(key);
+        return e == null || e.expiresAt <= System.currentTimeMillis() ? null : e.reply;
+    }
+
+    /**
+     * Remembers the reply to a request answered now.
+     *
+     * @param key   the request key
+     * @param reply the reply sent
+     */
+    void put(String key, BookingReply reply) {
+        put(key, reply, System.currentTimeMillis() + retentionMs);
+    }
+
+    /**
+     * Remembers the reply to a request answered earlier, e.g. one restored from the journal.
+     *
+     * @param key        the request key
+     * @param reply      the reply sent
+     * @param answeredAt when it was sent (epoch ms)
+     */
+    void restore(String key, BookingReply reply, long answeredAt) {
+        put(key, reply, answeredAt + retentionMs);
+    }
+
+    private void put(String key, BookingReply reply, long expiresAt) {
+        long now = System.currentTimeMillis();
+        if (key == null || expiresAt <= now) return;
+        Entry e = new Entry(key, reply, expiresAt);
+        if (byKey.put(key, e) == null) size.incrementAndGet();
+        order.add(e);
+        evict(now);
+    }
+
+    private void evict(long now) {
+        Entry head;
+        while ((head = order.peek()) != null && (head.expiresAt <= now || size.get() > maxEntries)) {
+            // An entry replaced by a later put of its key is no longer in byKey, and not counted
+            if (order.remove(head) && byKey.remove(head.key, head)) size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of remembered replies, including expired ones not evicted yet.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Forgets every reply.
+     */
+    void clear() {
+        order.clear();
+        byKey.clear();
+        size.set(0);
+    }
+
+    /**
+     * Writes the replies that have not expired.
+     *
+     * @param out the snapshot stream
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        long now = System.currentTimeMillis();
+        for (Entry e : order) {
+            if (e.expiresAt <= now || byKey.get(e.key) != e) continue;
+            out.writeByte(1);
+            writeString(out, e.key);
+            out.writeByte(e.reply.success() ? 1 : 0);
+            writeString(out, e.reply.reservationNumber());
+            writeString(out, e.reply.message());
+            out.writeLong(e.expiresAt);
+        }
+        out.writeByte(0);
+    }
+
+    /**
+     * Adds the replies written by {@link #writeTo}.
+     *
+     * @param in the snapshot body, positioned at the replies
+     */
+    void readFrom(ByteBuffer in) {
+        while (in.get() != 0) {
+            String key = readString(in);
+            boolean success = in.get() != 0;
+            String reservationNumber = readString(in);
+            String message = readString(in);
+            put(key, new BookingReply(success, reservationNumber, message), in.getLong());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,192 @@
+package main.building;
+
+import main.domain.ReservationStatus;
+import main.util.ReservationIds;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Off-heap archive of reservations that no longer need their full state: canceled or
+ * expired ones, and confirmed ones whose date has passed. It only remembers the final
+ * state and the date, which is enough to answer repeated confirm/cancel requests
+ * idempotently, at 16 bytes per reservation outside the Java heap.
+ * <p>
+ * Open-addressing hash table with linear probing in a direct buffer. Slot layout:
+ * <pre>
+ *   long  key (0 = empty)
+ *   int   epoch day
+ *   byte  state ordinal
+ *   3 bytes padding
+ * </pre>
+ * Keys are the 64-bit reservation keys of {@link ReservationIds#key(String)}: exact for
+ * generated ids, a hash for legacy ones. All methods are synchronized: the batch thread
+ * and the hold expiry thread archive concurrently.
+ */
+final class ReservationArchive {
+
+    private static final int SLOT_BYTES = 16;
+    private static final ReservationStatus[] STATES = ReservationStatus.values();
+
+    private ByteBuffer table;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates an empty archive.
+     *
+     * @param initialCapacity the expected number of archived reservations
+     */
+    ReservationArchive(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(16, initialCapacity * 2 - 1)) << 1);
+    }
+
+    private void allocate(int slots) {
+        table = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+        mask = slots - 1;
+        size = 0;
+    }
+
+    /**
+     * Archives (or updates) a reservation.
+     *
+     * @param key      the reservation key
+     * @param epochDay the reservation date
+     * @param state    its final state
+     */
+    synchronized void put(long key, long epochDay, ReservationStatus state) {
+        put(key, (int) epochDay, (byte) state.ordinal());
+    }
+
+    private void put(long key, int epochDay, byte state) {
+        if ((size + 1) * 4L > (mask + 1) * 3L) grow(); // load factor 0.75
+        int slot = find(key);
+        int off = slot * SLOT_BYTES;
+        if (table.getLong(off) == 0) {
+            table.putLong(off, key);
+            size++;
+        }
+        table.putInt(off + 8, epochDay);
+        table.put(off + 12, state);
+    }
+
+    /**
+     * Looks up the final state of an archived reservation.
+     *
+     * @param key the reservation key
+     * @return the archived state, or null if the reservation is not archived
+     */
+    synchronized ReservationStatus lookup(long key) {
+        int off = find(key) * SLOT_BYTES;
+        return table.getLong(off) == 0 ? null : STATES[table.get(off + 12)];
+    }
+
+    /**
+     * Tells whether a reservation is archived.
+     *
+     * @param key the reservation key
+     * @return true if archived
+     */
+    boolean contains(long key) {
+        return lookup(key) != null;
+    }
+
+    /**
+     * Gets the number of archived reservations.
+     *
+     * @return the archive size
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Forgets every archived reservation (a replica about to load a full copy).
+     */
+    synchronized void clear() {
+        allocate(mask + 1);
+    }
+
+    /**
+     * Forgets reservations dated before a day, so the archive itself stays bounded.
+     *
+     * @param minEpochDay the first day to keep
+     * @return the number of forgotten reservations
+     */
+    synchronized int pruneBefore(long minEpochDay) {
+        ByteBuffer old = table;
+        int oldSlots = mask + 1;
+        int before = size;
+        allocate(oldSlots);
+        for (int i = 0; i < oldSlots; i++) {
+            int off = i * SLOT_BYTES;
+            long key = old.getLong(off);
+            if (key != 0 && old.getInt(off + 8) >= minEpochDay) put(key, old.getInt(off + 8), old.get(off + 12));
+        }
+        return before - size;
+    }
+
+    /**
+     * Writes the archive for a snapshot: the entry count, then key, epoch day and state per entry.
+     * The table is copied under the lock and written outside it.
+     *
+     * @param out the snapshot stream
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        ByteBuffer copy;
+        int count;
+        synchronized (this) {
+            copy = ByteBuffer.allocate(table.capacity()).put(table.duplicate().clear()).flip();
+            count = size;
+        }
+        out.writeInt(count);
+        for (int off = 0; off < copy.capacity(); off += SLOT_BYTES) {
+            long key = copy.getLong(off);
+            if (key == 0) continue;
+            out.writeLong(key);
+            out.writeInt(copy.getInt(off + 8));
+            out.writeByte(copy.get(off + 12));
+        }
+    }
+
+    /**
+     * Adds the entries written by {@link #writeTo(DataOutputStream)}.
+     *
+     * @param in         the snapshot body, positioned at the archive
+     * @param legacyKeys true for archives written before keys were reservation ids
+     *                   (their keys were plain id hashes, now tagged with the sign bit)
+     */
+    synchronized void readFrom(ByteBuffer in, boolean legacyKeys) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            long key = in.getLong();
+            put(legacyKeys ? key | Long.MIN_VALUE : key, in.getInt(), in.get());
+        }
+    }
+
+    private void grow() {
+        ByteBuffer old = table;
+        int oldSlots = mask + 1;
+        allocate(oldSlots * 2);
+        for (int i = 0; i < oldSlots; i++) {
+            int off = i * SLOT_BYTES;
+            long key = old.getLong(off);
+            if (key != 0) put(key, old.getInt(off + 8), old.get(off + 12));
+        }
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it would go.
+     */
+    private int find(long key) {
+        // Generated ids share their high bits for a while; a multiplicative hash spreads them
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (true) {
+            long k = table.getLong(slot * SLOT_BYTES);
+            if (k == key || k == 0) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package main.building;
+
+import main.domain.Reservation;
+import main.domain.ReservationStatus;
+import main.util.ReservationIds;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A reservation together with its lifecycle state, held as a single map entry.
+ * <p>
+ * Every transition is one compare-and-set on the state, and only the thread whose CAS
+ * moves a reservation to CANCELED releases its capacity. Confirm, cancel and hold
+ * expiry can therefore race freely without locks and rooms are freed exactly once.
+ */
+final class ReservationEntry {
+
+    private static final AtomicReferenceFieldUpdater<ReservationEntry, ReservationStatus> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(ReservationEntry.class, ReservationStatus.class, "state");
+
+    final Reservation reservation;
+    final long key; // ReservationIds.key of the reservation id
+    final long holdDeadline; // epoch millis after which a PENDING hold expires
+    private volatile ReservationStatus state = ReservationStatus.PENDING;
+
+    /**
+     * Creates a PENDING entry.
+     *
+     * @param reservation  the reservation whose capacity is already counted
+     * @param holdDeadline epoch millis after which the hold expires unless confirmed
+     */
+    ReservationEntry(Reservation reservation, long holdDeadline) {
+        this.reservation = reservation;
+        this.key = ReservationIds.key(reservation.id);
+        this.holdDeadline = holdDeadline;
+    }
+
+    /**
+     * Creates an entry in a given state, e.g. when loading a snapshot.
+     *
+     * @param reservation  the reservation
+     * @param holdDeadline epoch millis after which the hold expires unless confirmed
+     * @param state        the current state
+     */
+    ReservationEntry(Reservation reservation, long holdDeadline, ReservationStatus state) {
+        this.reservation = reservation;
+        this.key = ReservationIds.key(reservation.id);
+        this.holdDeadline = holdDeadline;
+        this.state = state;
+    }
+
+    /**
+     * Gets the current state.
+     *
+     * @return the lifecycle state
+     */
+    ReservationStatus state() {
+        return state;
+    }
+
+    /**
+     * Moves the reservation from one state to another.
+     *
+     * @param expected the state the reservation must be in
+     * @param next     the new state
+     * @return true if this call made the transition
+     */
+    boolean transition(ReservationStatus expected, ReservationStatus next) {
+        return STATE.compareAndSet(this, expected, next);
+    }
+
+    /**
+     * Cancels the reservation from whatever live state it is in.
+     *
+     * @return the state it was canceled from, or null if it was already canceled
+     *         (only a non-null result may release capacity)
+     */
+    ReservationStatus cancel() {
+        while (true) {
+            ReservationStatus s = state;
+            if (s == ReservationStatus.CANCELED) return null;
+            if (STATE.compareAndSet(this, s, ReservationStatus.CANCELED)) return s;
+        }
+    }
+}
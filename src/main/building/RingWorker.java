@@ -0,0 +1,148 @@
+package main.building;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Consumer of an {@link MpscRing} that runs on a shared executor instead of owning a thread.
+ * <p>
+ * Putting an item schedules a run unless one is scheduled already, so at most one executor
+ * thread consumes the ring at a time and items are handled in ring order. A run handles a
+ * bounded number of batches and then yields the thread, rescheduling itself if items are
+ * left; an idle worker holds no thread at all. This lets one pool serve the lanes of many
+ * buildings.
+ *
+ * @param <T> the item type
+ */
+final class RingWorker<T> implements Runnable {
+
+    private static final int BATCHES_PER_RUN = 16;
+
+    /**
+     * Handles one batch of items, in ring order.
+     *
+     * @param <T> the item type
+     */
+    @FunctionalInterface
+    interface BatchHandler<T> {
+        void handle(List<T> batch);
+    }
+
+    private final MpscRing<T> ring;
+    private final Executor executor;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BatchHandler<T> handler;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean stopped;
+
+    /**
+     * Creates a worker.
+     *
+     * @param ring        the ring to consume
+     * @param executor    runs the worker
+     * @param batchSize   the maximum number of items per batch
+     * @param lingerNanos how long to wait for more items once a batch has its first one
+     *                    (0 takes only what is already waiting)
+     * @param handler     handles the batches
+     */
+    RingWorker(MpscRing<T> ring, Executor executor, int batchSize, long lingerNanos, BatchHandler<T> handler) {
+        this.ring = ring;
+        this.executor = executor;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = lingerNanos;
+        this.handler = handler;
+    }
+
+    /**
+     * Adds an item and makes sure a run will handle it.
+     *
+     * @param item the item
+     * @throws InterruptedException if interrupted while the ring is full
+     */
+    void put(T item) throws InterruptedException {
+        ring.put(item);
+        schedule();
+    }
+
+    /**
+     * Adds an item without waiting and makes sure a run will handle it.
+     *
+     * @param item the item
+     * @return false if the ring was full and the item was dropped
+     */
+    boolean offer(T item) {
+        if (!ring.offer(item)) return false;
+        schedule();
+        return true;
+    }
+
+    private void schedule() {
+        if (stopped || !scheduled.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false); // executor shut down; items stay in the ring
+        }
+    }
+
+    @Override
+    public void run() {
+        List<T> batch = new ArrayList<>(batchSize);
+        try {
+            for (int i = 0; i < BATCHES_PER_RUN && !stopped; i++) {
+                T first = ring.poll(0, TimeUnit.NANOSECONDS);
+                if (first == null) break;
+                batch.add(first);
+                if (lingerNanos > 0) {
+                    long deadline = System.nanoTime() + lingerNanos;
+                    while (batch.size() < batchSize) {
+                        T next = ring.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                } else {
+                    ring.drainTo(batch, batchSize - 1);
+                }
+                handler.handle(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // executor shutting down
+        } finally {
+            scheduled.set(false);
+            // Items put while this run was finishing did not schedule one
+            if (ring.size() > 0) schedule();
+        }
+    }
+
+    /**
+     * Waits until every item put so far is handled (or the timeout passes).
+     *
+     * @param timeoutMs the maximum time to wait
+     */
+    void awaitEmpty(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while ((ring.size() > 0 || scheduled.get()) && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /**
+     * Stops the worker after the batch it is handling; items still in the ring are left there.
+     *
+     * @param timeoutMs the maximum time to wait for the current batch
+     */
+    void stop(long timeoutMs) {
+        stopped = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (scheduled.get() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+}
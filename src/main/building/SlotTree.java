@@ -0,0 +1,80 @@
+package main.building;
+
+/**
+ * Lazy segment tree over the time slots of one day, supporting range add and range max.
+ * <p>
+ * Each node stores the maximum occupancy of its range including its own pending add;
+ * adds are not pushed down, a query adds up the pending values on its path instead.
+ * Both operations are O(log slots). Not thread-safe: callers lock per day.
+ */
+final class SlotTree {
+
+    private final int slots;
+    private final int[] max;
+    private final int[] pending;
+
+    /**
+     * Creates an empty tree.
+     *
+     * @param slots the number of slots in a day
+     */
+    SlotTree(int slots) {
+        this.slots = slots;
+        int size = 1;
+        while (size < slots) size <<= 1;
+        this.max = new int[2 * size];
+        this.pending = new int[2 * size];
+    }
+
+    /**
+     * Gets the highest occupancy over the slots {@code [from, to)}.
+     *
+     * @param from first slot (inclusive)
+     * @param to   last slot (exclusive)
+     * @return the maximum occupancy in the range
+     */
+    int max(int from, int to) {
+        return max(1, 0, slots, from, to);
+    }
+
+    /**
+     * Gets the highest occupancy of the whole day.
+     *
+     * @return the maximum occupancy over all slots
+     */
+    int peak() {
+        return max[1];
+    }
+
+    /**
+     * Adds a value to every slot in {@code [from, to)}.
+     *
+     * @param from  first slot (inclusive)
+     * @param to    last slot (exclusive)
+     * @param delta the value to add (negative to release)
+     */
+    void add(int from, int to, int delta) {
+        add(1, 0, slots, from, to, delta);
+    }
+
+    private int max(int node, int lo, int hi, int from, int to) {
+        if (from <= lo && hi <= to) return max[node];
+        int mid = (lo + hi) >>> 1;
+        int best = Integer.MIN_VALUE;
+        if (from < mid) best = max(2 * node, lo, mid, from, to);
+        if (to > mid) best = Math.max(best, max(2 * node + 1, mid, hi, from, to));
+        return best + pending[node];
+    }
+
+    private void add(int node, int lo, int hi, int from, int to, int delta) {
+        if (from <= lo && hi <= to) {
+            max[node] += delta;
+            pending[node] += delta;
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (from < mid) add(2 * node, lo, mid, from, to, delta);
+        if (to > mid) add(2 * node + 1, mid, hi, from, to, delta);
+        max[node] = Math.max(max[2 * node], max[2 * node + 1]) + pending[node];
+    }
+}
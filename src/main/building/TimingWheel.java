@@ -0,0 +1,111 @@
+package main.building;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel for expiring many timeouts in O(1) each.
+ * <p>
+ * The wheel has {@code size} buckets, each covering one tick. A timeout lands in the
+ * bucket of its deadline, with the number of full turns still to wait. {@link #advance(long)}
+ * visits only the buckets of the ticks that passed, so the cost per tick does not depend
+ * on how many holds exist, and a timeout fires at most one tick late.
+ * <p>
+ * {@link #schedule} may be called from any thread; new timeouts are handed over through
+ * a concurrent queue, and the buckets are only touched by the thread calling {@code advance}.
+ *
+ * @param <T> the item that expires
+ */
+final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final ArrayDeque<Entry<T>>[] buckets;
+    private final int mask;
+    private final Queue<Entry<T>> incoming = new ConcurrentLinkedQueue<>();
+    private final Consumer<T> onExpire;
+    private long currentTick; // last processed tick (ticks since startMillis)
+    private final long startMillis;
+
+    /**
+     * Creates a wheel starting now.
+     *
+     * @param tickMillis length of one tick in milliseconds
+     * @param size       number of buckets (rounded up to a power of two)
+     * @param onExpire   called on the advancing thread for every expired item; must handle
+     *                   its own failures, as an exception would stop the advance midway
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(long tickMillis, int size, Consumer<T> onExpire) {
+        this.tickMillis = Math.max(1, tickMillis);
+        int n = 1;
+        while (n < size) n <<= 1;
+        this.buckets = new ArrayDeque[n];
+        for (int i = 0; i < n; i++) buckets[i] = new ArrayDeque<>();
+        this.mask = n - 1;
+        this.onExpire = onExpire;
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Schedules an item to expire after a delay.
+     *
+     * @param item        the item handed to the expiry callback
+     * @param delayMillis the delay in milliseconds
+     */
+    void schedule(T item, long delayMillis) {
+        long deadline = System.currentTimeMillis() + Math.max(0, delayMillis);
+        incoming.add(new Entry<>(item, deadline));
+    }
+
+    /**
+     * Expires every timeout whose deadline lies before the current tick.
+     * Must only be called from one thread at a time.
+     *
+     * @param nowMillis the current time in milliseconds
+     */
+    void advance(long nowMillis) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        transferIncoming();
+        while (currentTick < targetTick) {
+            currentTick++;
+            expireBucket(buckets[(int) (currentTick & mask)]);
+        }
+    }
+
+    private void transferIncoming() {
+        Entry<T> e;
+        while ((e = incoming.poll()) != null) {
+            // ceil, so an item never fires before its deadline; past deadlines go to the next tick
+            long tick = Math.max(currentTick + 1, (e.deadline - startMillis + tickMillis - 1) / tickMillis);
+            e.rounds = (tick - currentTick - 1) / buckets.length;
+            buckets[(int) (tick & mask)].add(e);
+        }
+    }
+
+    private void expireBucket(ArrayDeque<Entry<T>> bucket) {
+        Iterator<Entry<T>> it = bucket.iterator();
+        while (it.hasNext()) {
+            Entry<T> e = it.next();
+            if (e.rounds > 0) {
+                e.rounds--;
+                continue;
+            }
+            it.remove();
+            onExpire.accept(e.item);
+        }
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        final long deadline;
+        long rounds;
+
+        Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
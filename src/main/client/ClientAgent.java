@@ -1,18 +1,27 @@
 package main.client;
 
-import com.rabbitmq.client.*;
+import com.rabbitmq.client.AMQP;
 import main.config.AppConfig;
 import main.config.Constants;
+import main.domain.Availability;
+import main.domain.BookingReply;
 import main.domain.BookingRequest;
 import main.domain.MessageType;
 import main.domain.WireMessage;
+import main.transport.DeliveryHandler;
+import main.transport.Transport;
+import main.transport.Transports;
+import main.util.MessageHeaders;
 import main.util.MessageSerializer;
 import main.util.RabbitMQConfig;
 
 import java.io.IOException;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -20,14 +29,23 @@ import java.util.concurrent.TimeoutException;
 /**
  * Client agent that handles communication with the rental system.
  * Sends booking requests and listens for responses from agents and buildings.
+ * <p>
+ * The asynchronous methods ({@code *Async}) tag every request with a correlationId and
+ * replyTo, so any number of requests can be outstanding at once; their replies complete
+ * the returned futures. Replies to the older fire-and-forget methods are buffered and
+ * read with {@link #waitForReply(long)}.
  */
 public class ClientAgent {
 
     private final String clientId;
-    private Connection connection;
-    private Channel channel;
+    private final boolean ownsTransport; // true if the transport is opened and closed by this client
+    private Transport transport;
     private String replyQueue;
+    private String replyConsumerTag;
     private final BlockingQueue<WireMessage> replyBuffer = new LinkedBlockingQueue<>();
+    private final PendingReplies pending = new PendingReplies();
+    private final RequestIds requestIds = new RequestIds();
+    private volatile Duration requestTimeout = Duration.ofMillis(AppConfig.getClientRequestTimeoutMs());
 
     /**
      * Creates a new client agent with the specified identifier.
@@ -35,22 +53,36 @@ public class ClientAgent {
      * @param clientId the unique identifier for this client
      */
     public ClientAgent(String clientId) {
+        this(clientId, null);
+    }
+
+    /**
+     * Creates a new client agent that communicates over the given transport.
+     *
+     * @param clientId the unique identifier for this client
+     * @param transport the transport to use, or null to open the configured one on start
+     *                  (a given transport is not closed by {@link #stop()})
+     */
+    public ClientAgent(String clientId, Transport transport) {
         this.clientId = clientId;
+        this.transport = transport;
+        this.ownsTransport = transport == null;
     }
 
     /**
-     * Initializes the client by connecting to RabbitMQ and setting up
+     * Initializes the client by connecting to the transport and setting up
      * the private reply queue for receiving responses.
      *
-     * @throws IOException if RabbitMQ connection fails
+     * @throws IOException if the connection fails
      * @throws TimeoutException if connection times out
      */
     public void start() throws IOException, TimeoutException {
-        connection = RabbitMQConfig.createConnection(AppConfig.getRabbitHost(), AppConfig.getRabbitUser(), AppConfig.getRabbitPass());
-        channel = connection.createChannel();
+        if (ownsTransport) transport = Transports.create();
 
         // create reply queue for this client using utility method
-        replyQueue = RabbitMQConfig.declareClientReplyQueue(channel, clientId);
+        replyQueue = RabbitMQConfig.declareClientReplyQueue(transport, clientId);
+        // the shared agents inbox, declared once rather than before every send
+        RabbitMQConfig.declareAgentInbox(transport);
 
         // listen for replies
         listenForReplies();
@@ -78,7 +110,22 @@ public class ClientAgent {
      * @throws IOException if the request fails to send
      */
     public void bookRoom(String building, int rooms, LocalDate date, int hours) throws IOException {
-        BookingRequest request = new BookingRequest(building, rooms, date, hours);
+        bookRoom(building, rooms, date, null, hours);
+    }
+
+    /**
+     * Sends a room booking request for the specified building, date and start time.
+     *
+     * @param building the name of the building to book in
+     * @param rooms the number of rooms to book
+     * @param date the date for the booking
+     * @param start the start time, or null for the start of the day
+     * @param hours the duration of the booking in hours
+     * @throws IOException if the request fails to send
+     */
+    public void bookRoom(String building, int rooms, LocalDate date, LocalTime start, int hours) throws IOException {
+        BookingRequest request = new BookingRequest(building, rooms, date, start, hours)
+                .withRequestId(requestIds.next());
         WireMessage msg = new WireMessage(MessageType.BOOK_ROOM, clientId, request);
         sendToAgents(msg);
     }
@@ -109,6 +156,162 @@ public class ClientAgent {
         sendToAgents(msg);
     }
 
+    // asynchronous API
+
+    /**
+     * Sets the timeout used by the async methods that take no explicit timeout.
+     *
+     * @param timeout the default request timeout
+     */
+    public void setRequestTimeout(Duration timeout) {
+        this.requestTimeout = java.util.Objects.requireNonNull(timeout);
+    }
+
+    /**
+     * Requests the list of available buildings.
+     *
+     * @return a future completed with the reply (the building list is in its message)
+     */
+    public CompletableFuture<BookingReply> listBuildingsAsync() {
+        return listBuildingsAsync(requestTimeout);
+    }
+
+    /**
+     * Requests the list of available buildings.
+     *
+     * @param timeout how long to wait for the reply
+     * @return a future completed with the reply (the building list is in its message)
+     */
+    public CompletableFuture<BookingReply> listBuildingsAsync(Duration timeout) {
+        return request(new WireMessage(MessageType.REQUEST_BUILDINGS, clientId, null), timeout);
+    }
+
+    /**
+     * Requests a room booking.
+     *
+     * @param building the name of the building to book in
+     * @param rooms the number of rooms to book
+     * @param date the date for the booking
+     * @param hours the duration of the booking in hours
+     * @return a future completed with the reply (holding the reservation number on success)
+     */
+    public CompletableFuture<BookingReply> bookRoomAsync(String building, int rooms, LocalDate date, int hours) {
+        return bookRoomAsync(building, rooms, date, null, hours, requestTimeout);
+    }
+
+    /**
+     * Requests a room booking starting at a given time.
+     *
+     * @param building the name of the building to book in
+     * @param rooms the number of rooms to book
+     * @param date the date for the booking
+     * @param start the start time, or null for the start of the day
+     * @param hours the duration of the booking in hours
+     * @param timeout how long to wait for the reply
+     * @return a future completed with the reply (holding the reservation number on success)
+     */
+    public CompletableFuture<BookingReply> bookRoomAsync(String building, int rooms, LocalDate date, LocalTime start,
+                                                         int hours, Duration timeout) {
+        return bookRoomAsync(new BookingRequest(building, rooms, date, start, hours)
+                .withRequestId(requestIds.next()), timeout);
+    }
+
+    /**
+     * Requests a room booking described by a prepared request,
+     * e.g. one carrying its own hold timeout ({@link BookingRequest#withHoldSeconds(Integer)}).
+     * The request is sent as given: with a request id ({@link BookingRequest#withRequestId(String)})
+     * it may be sent again after a timeout without booking twice.
+     *
+     * @param request the booking request
+     * @param timeout how long to wait for the reply
+     * @return a future completed with the reply (holding the reservation number on success)
+     */
+    public CompletableFuture<BookingReply> bookRoomAsync(BookingRequest request, Duration timeout) {
+        return request(new WireMessage(MessageType.BOOK_ROOM, clientId, request), timeout);
+    }
+
+    /**
+     * Asks how many rooms are free on each day of a date range, without booking.
+     * For a partitioned building the agent asks every partition the range covers and replies
+     * with the merged counts; if a partition does not answer within 5 s, the reply is an error.
+     *
+     * @param building the name of the building
+     * @param from the first day
+     * @param to the last day (inclusive)
+     * @return a future completed with the reply; read its message with {@link Availability#parse(String)}
+     */
+    public CompletableFuture<BookingReply> queryAvailabilityAsync(String building, LocalDate from, LocalDate to) {
+        BookingRequest req = new BookingRequest(building, from, to);
+        return request(new WireMessage(MessageType.QUERY_AVAILABILITY, clientId, req), requestTimeout);
+    }
+
+    /**
+     * Confirms a previously made reservation.
+     *
+     * @param building the building where the reservation was made
+     * @param reservationNumber the unique identifier of the reservation
+     * @return a future completed with the reply
+     */
+    public CompletableFuture<BookingReply> confirmAsync(String building, String reservationNumber) {
+        return confirmAsync(building, reservationNumber, requestTimeout);
+    }
+
+    /**
+     * Confirms a previously made reservation.
+     *
+     * @param building the building where the reservation was made
+     * @param reservationNumber the unique identifier of the reservation
+     * @param timeout how long to wait for the reply
+     * @return a future completed with the reply
+     */
+    public CompletableFuture<BookingReply> confirmAsync(String building, String reservationNumber, Duration timeout) {
+        BookingRequest req = new BookingRequest(building, reservationNumber);
+        return request(new WireMessage(MessageType.CONFIRM_RESERVATION, clientId, req), timeout);
+    }
+
+    /**
+     * Cancels an existing reservation.
+     *
+     * @param building the building where the reservation was made
+     * @param reservationNumber the unique identifier of the reservation
+     * @return a future completed with the reply
+     */
+    public CompletableFuture<BookingReply> cancelAsync(String building, String reservationNumber) {
+        return cancelAsync(building, reservationNumber, requestTimeout);
+    }
+
+    /**
+     * Cancels an existing reservation.
+     *
+     * @param building the building where the reservation was made
+     * @param reservationNumber the unique identifier of the reservation
+     * @param timeout how long to wait for the reply
+     * @return a future completed with the reply
+     */
+    public CompletableFuture<BookingReply> cancelAsync(String building, String reservationNumber, Duration timeout) {
+        BookingRequest req = new BookingRequest(building, reservationNumber);
+        return request(new WireMessage(MessageType.CANCEL_RESERVATION, clientId, req), timeout);
+    }
+
+    /**
+     * Sends a request tagged with a fresh correlationId and registers its future.
+     * Send failures complete the future exceptionally instead of throwing.
+     *
+     * @param msg the request to send
+     * @param timeout how long to wait for the reply
+     * @return the future of the reply
+     */
+    private CompletableFuture<BookingReply> request(WireMessage msg, Duration timeout) {
+        CompletableFuture<BookingReply> future = new CompletableFuture<>();
+        String correlationId = pending.register(timeout, future);
+        try {
+            publishToAgents(msg, MessageHeaders.properties(msg, true, correlationId, replyQueue));
+        } catch (IOException | RuntimeException e) {
+            pending.fail(correlationId, e);
+        }
+        return future;
+    }
+
     /**
      * Sends a message to the shared agents inbox queue.
      *
@@ -116,11 +319,20 @@ public class ClientAgent {
      * @throws IOException if the message fails to send
      */
     private void sendToAgents(WireMessage msg) throws IOException {
+        // Make message persistent for fault tolerance; routing headers let agents forward without decoding
+        publishToAgents(msg, MessageHeaders.properties(msg, true));
+    }
+
+    /**
+     * Publishes a message to the shared agents inbox queue with the given properties.
+     *
+     * @param msg the message to send
+     * @param props the AMQP properties (routing headers and, for async requests, reply metadata)
+     * @throws IOException if the message fails to send
+     */
+    private void publishToAgents(WireMessage msg, AMQP.BasicProperties props) throws IOException {
         byte[] body = MessageSerializer.serialize(msg);
-        // Ensure agent inbox exists (idempotent)
-        RabbitMQConfig.declareAgentInbox(channel);
-        // Make message persistent for fault tolerance
-        channel.basicPublish("", Constants.AGENT_INBOX_QUEUE, MessageProperties.PERSISTENT_BASIC, body);
+        transport.publish("", Constants.AGENT_INBOX_QUEUE, props, body);
         System.out.printf("[Client %s] -> Sent %s%n", clientId, msg.type());
     }
 
@@ -131,33 +343,39 @@ public class ClientAgent {
      * @throws IOException if the consumer setup fails
      */
     private void listenForReplies() throws IOException {
-        DeliverCallback callback = (consumerTag, delivery) -> {
+        DeliveryHandler callback = delivery -> {
             try {
-                WireMessage msg = MessageSerializer.deserialize(delivery.getBody());
+                WireMessage msg = MessageSerializer.deserialize(delivery.body(), delivery.properties().getContentType());
                 System.out.printf("[Client %s] <- [%s] %s%n", clientId, msg.type(), msg.payload());
-                replyBuffer.offer(msg);
+                // Correlated replies complete their future; everything else is buffered
+                if (!pending.complete(delivery.properties().getCorrelationId(), msg)) {
+                    replyBuffer.offer(msg);
+                }
                 // Acknowledge successful processing
-                channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+                delivery.ack();
             } catch (Exception e) {
                 System.err.printf("[Client %s] Error processing message: %s%n", clientId, e.getMessage());
                 // Reject and requeue the message for retry
-                channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, true);
+                delivery.nack(true);
             }
         };
         // Set autoAck to false for manual acknowledgment
-        channel.basicConsume(replyQueue, false, callback, consumerTag -> {
-        });
+        replyConsumerTag = transport.consume(replyQueue, false, callback);
     }
 
     /**
-     * Closes the RabbitMQ connection and cleans up resources.
+     * Closes the connection and cleans up resources.
      *
      * @throws IOException if closing connections fails
      * @throws TimeoutException if closing times out
      */
     public void stop() throws IOException, TimeoutException {
-        if (channel != null) channel.close();
-        if (connection != null) connection.close();
+        pending.failAll(new IOException("Client " + clientId + " stopped"));
+        if (ownsTransport && transport != null) {
+            transport.close();
+        } else if (replyConsumerTag != null) {
+            transport.cancel(replyConsumerTag); // shared transport stays open
+        }
         System.out.printf("[Client %s] Disconnected.%n", clientId);
     }
 
@@ -0,0 +1,307 @@
+package main.client;
+
+import com.rabbitmq.client.AMQP;
+import main.config.AppConfig;
+import main.config.Constants;
+import main.domain.Availability;
+import main.domain.BookingReply;
+import main.domain.BookingRequest;
+import main.domain.MessageType;
+import main.domain.WireMessage;
+import main.transport.DeliveryHandler;
+import main.transport.Transport;
+import main.transport.Transports;
+import main.util.MessageHeaders;
+import main.util.MessageSerializer;
+import main.util.RabbitMQConfig;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Gateway that hosts many logical clients on a single transport connection and a
+ * single reply queue ({@code cr.client.<gatewayId>}).
+ * <p>
+ * Outgoing requests carry the logical client id as sender, so agents and buildings
+ * treat them like requests of an ordinary {@link ClientAgent}; the replyTo property
+ * points at the gateway queue. Replies are demultiplexed in memory: by correlationId
+ * to the future of the request, otherwise by the {@code cr-client} header to the
+ * listener registered for that logical client.
+ */
+public class ClientGateway {
+
+    private final String gatewayId;
+    private final boolean ownsTransport; // true if the transport is opened and closed by this gateway
+    private Transport transport;
+    private String replyQueue;
+    private String replyConsumerTag;
+    private final PendingReplies pending = new PendingReplies();
+    private final RequestIds requestIds = new RequestIds(); // unique per gateway, so per logical client too
+    private final Map<String, Consumer<WireMessage>> listeners = new ConcurrentHashMap<>();
+    private volatile Duration requestTimeout = Duration.ofMillis(AppConfig.getClientRequestTimeoutMs());
+    private final boolean verbose = false; // per-request logs are too noisy for thousands of clients
+
+    /**
+     * Creates a new gateway with the specified identifier.
+     *
+     * @param gatewayId the unique identifier of this gateway (names its reply queue)
+     */
+    public ClientGateway(String gatewayId) {
+        this(gatewayId, null);
+    }
+
+    /**
+     * Creates a new gateway that communicates over the given transport.
+     *
+     * @param gatewayId the unique identifier of this gateway (names its reply queue)
+     * @param transport the transport to use, or null to open the configured one on start
+     *                  (a given transport is not closed by {@link #stop()})
+     */
+    public ClientGateway(String gatewayId, Transport transport) {
+        this.gatewayId = Objects.requireNonNull(gatewayId);
+        this.transport = transport;
+        this.ownsTransport = transport == null;
+    }
+
+    /**
+     * Connects to the transport, declares the shared reply queue and starts consuming it.
+     *
+     * @throws IOException if the connection fails
+     * @throws TimeoutException if connection times out
+     */
+    public void start() throws IOException, TimeoutException {
+        if (ownsTransport) transport = Transports.create();
+
+        replyQueue = RabbitMQConfig.declareClientReplyQueue(transport, gatewayId);
+        RabbitMQConfig.declareAgentInbox(transport);
+        replyConsumerTag = transport.consume(replyQueue, false, replyHandler());
+
+        System.out.printf("[Gateway %s] Ready. Listening on %s%n", gatewayId, replyQueue);
+    }
+
+    /**
+     * Fails all outstanding requests and closes the connection (or cancels the consumer
+     * if the transport is shared).
+     *
+     * @throws IOException if closing connections fails
+     * @throws TimeoutException if closing times out
+     */
+    public void stop() throws IOException, TimeoutException {
+        pending.failAll(new IOException("Gateway " + gatewayId + " stopped"));
+        if (ownsTransport && transport != null) {
+            transport.close();
+        } else if (replyConsumerTag != null) {
+            transport.cancel(replyConsumerTag); // shared transport stays open
+        }
+        System.out.printf("[Gateway %s] Disconnected.%n", gatewayId);
+    }
+
+    /**
+     * Sets the timeout used by the request methods that take no explicit timeout.
+     *
+     * @param timeout the default request timeout
+     */
+    public void setRequestTimeout(Duration timeout) {
+        this.requestTimeout = Objects.requireNonNull(timeout);
+    }
+
+    /**
+     * Registers a listener for replies to a logical client that do not belong to an
+     * outstanding request (e.g. late replies after a timeout).
+     *
+     * @param clientId the logical client id
+     * @param listener receives the decoded replies, on the consumer thread
+     */
+    public void register(String clientId, Consumer<WireMessage> listener) {
+        listeners.put(Objects.requireNonNull(clientId), Objects.requireNonNull(listener));
+    }
+
+    /**
+     * Removes the listener of a logical client.
+     *
+     * @param clientId the logical client id
+     */
+    public void unregister(String clientId) {
+        listeners.remove(clientId);
+    }
+
+    /**
+     * Gets the number of requests still waiting for a reply.
+     *
+     * @return the count of outstanding requests over all logical clients
+     */
+    public int outstanding() {
+        return pending.size();
+    }
+
+    // requests
+
+    /**
+     * Requests the list of available buildings on behalf of a logical client.
+     *
+     * @param clientId the logical client id
+     * @return a future completed with the reply (the building list is in its message)
+     */
+    public CompletableFuture<BookingReply> listBuildingsAsync(String clientId) {
+        return request(new WireMessage(MessageType.REQUEST_BUILDINGS, clientId, null), requestTimeout);
+    }
+
+    /**
+     * Requests a room booking on behalf of a logical client.
+     *
+     * @param clientId the logical client id
+     * @param building the name of the building to book in
+     * @param rooms the number of rooms to book
+     * @param date the date for the booking
+     * @param hours the duration of the booking in hours
+     * @return a future completed with the reply (holding the reservation number on success)
+     */
+    public CompletableFuture<BookingReply> bookRoomAsync(String clientId, String building, int rooms,
+                                                         LocalDate date, int hours) {
+        return bookRoomAsync(clientId, building, rooms, date, null, hours, requestTimeout);
+    }
+
+    /**
+     * Requests a room booking on behalf of a logical client.
+     *
+     * @param clientId the logical client id
+     * @param building the name of the building to book in
+     * @param rooms the number of rooms to book
+     * @param date the date for the booking
+     * @param start the start time, or null for the start of the day
+     * @param hours the duration of the booking in hours
+     * @param timeout how long to wait for the reply
+     * @return a future completed with the reply (holding the reservation number on success)
+     */
+    public CompletableFuture<BookingReply> bookRoomAsync(String clientId, String building, int rooms,
+                                                         LocalDate date, LocalTime start, int hours,
+                                                         Duration timeout) {
+        return bookRoomAsync(clientId, new BookingRequest(building, rooms, date, start, hours)
+                .withRequestId(requestIds.next()), timeout);
+    }
+
+    /**
+     * Requests a room booking described by a prepared request on behalf of a logical client.
+     * The request is sent as given: with a request id ({@link BookingRequest#withRequestId(String)})
+     * it may be sent again after a timeout without booking twice.
+     *
+     * @param clientId the logical client id
+     * @param request the booking request
+     * @param timeout how long to wait for the reply
+     * @return a future completed with the reply (holding the reservation number on success)
+     */
+    public CompletableFuture<BookingReply> bookRoomAsync(String clientId, BookingRequest request, Duration timeout) {
+        return request(new WireMessage(MessageType.BOOK_ROOM, clientId, request), timeout);
+    }
+
+    /**
+     * Asks how many rooms are free on each day of a date range on behalf of a logical client.
+     *
+     * @param clientId the logical client id
+     * @param building the name of the building
+     * @param from the first day
+     * @param to the last day (inclusive)
+     * @return a future completed with the reply; read its message with {@link Availability#parse(String)}
+     */
+    public CompletableFuture<BookingReply> queryAvailabilityAsync(String clientId, String building, LocalDate from,
+                                                                  LocalDate to) {
+        BookingRequest req = new BookingRequest(building, from, to);
+        return request(new WireMessage(MessageType.QUERY_AVAILABILITY, clientId, req), requestTimeout);
+    }
+
+    /**
+     * Confirms a reservation on behalf of a logical client.
+     *
+     * @param clientId the logical client id
+     * @param building the building where the reservation was made
+     * @param reservationNumber the unique identifier of the reservation
+     * @return a future completed with the reply
+     */
+    public CompletableFuture<BookingReply> confirmAsync(String clientId, String building, String reservationNumber) {
+        BookingRequest req = new BookingRequest(building, reservationNumber);
+        return request(new WireMessage(MessageType.CONFIRM_RESERVATION, clientId, req), requestTimeout);
+    }
+
+    /**
+     * Cancels a reservation on behalf of a logical client.
+     *
+     * @param clientId the logical client id
+     * @param building the building where the reservation was made
+     * @param reservationNumber the unique identifier of the reservation
+     * @return a future completed with the reply
+     */
+    public CompletableFuture<BookingReply> cancelAsync(String clientId, String building, String reservationNumber) {
+        BookingRequest req = new BookingRequest(building, reservationNumber);
+        return request(new WireMessage(MessageType.CANCEL_RESERVATION, clientId, req), requestTimeout);
+    }
+
+    /**
+     * Sends a request for a logical client, replying to the gateway queue.
+     * Send failures complete the future exceptionally instead of throwing.
+     *
+     * @param msg the request (its sender is the logical client id)
+     * @param timeout how long to wait for the reply
+     * @return the future of the reply
+     */
+    private CompletableFuture<BookingReply> request(WireMessage msg, Duration timeout) {
+        CompletableFuture<BookingReply> future = new CompletableFuture<>();
+        String correlationId = pending.register(timeout, future);
+        try {
+            AMQP.BasicProperties props = MessageHeaders.properties(msg, true, correlationId, replyQueue);
+            transport.publish("", Constants.AGENT_INBOX_QUEUE, props, MessageSerializer.serialize(msg));
+            if (verbose) {
+                System.out.printf("[Gateway %s] -> Sent %s for %s%n", gatewayId, msg.type(), msg.sender());
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.fail(correlationId, e);
+        }
+        return future;
+    }
+
+    // replies
+
+    /**
+     * Builds the consumer of the shared reply queue.
+     *
+     * @return the handler that demultiplexes replies
+     */
+    private DeliveryHandler replyHandler() {
+        return delivery -> {
+            try {
+                AMQP.BasicProperties props = delivery.properties();
+                WireMessage msg = MessageSerializer.deserialize(delivery.body(), props.getContentType());
+                if (!pending.complete(props.getCorrelationId(), msg)) {
+                    dispatchToListener(MessageHeaders.client(props), msg);
+                }
+                delivery.ack();
+            } catch (Exception e) {
+                System.err.printf("[Gateway %s] Error processing reply: %s%n", gatewayId, e.getMessage());
+                // A reply that cannot be decoded will not become decodable by retrying
+                delivery.nack(false);
+            }
+        };
+    }
+
+    /**
+     * Hands an uncorrelated reply to the listener of its logical client.
+     *
+     * @param clientId the logical client id from the reply headers (may be null)
+     * @param msg the decoded reply
+     */
+    private void dispatchToListener(String clientId, WireMessage msg) {
+        Consumer<WireMessage> listener = clientId == null ? null : listeners.get(clientId);
+        if (listener != null) {
+            listener.accept(msg);
+        } else if (verbose) {
+            System.out.printf("[Gateway %s] dropped reply for %s: %s%n", gatewayId, clientId, msg.type());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package main.client;
+
+import main.domain.BookingReply;
+import main.domain.MessageType;
+import main.domain.WireMessage;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outstanding requests of a client, keyed by correlationId.
+ * Each request owns a future that is completed by the matching reply, or
+ * exceptionally with a {@link java.util.concurrent.TimeoutException} when its timeout expires.
+ */
+final class PendingReplies {
+
+    private final Map<String, CompletableFuture<BookingReply>> pending = new ConcurrentHashMap<>();
+    // Unique across runs, so late replies to a previous run of the same client never match
+    private final RequestIds correlationIds = new RequestIds();
+
+    /**
+     * Registers a new outstanding request.
+     *
+     * @param timeout how long to wait for the reply
+     * @param future  the future to complete with the reply
+     * @return the correlationId to send with the request
+     */
+    String register(Duration timeout, CompletableFuture<BookingReply> future) {
+        String id = correlationIds.next();
+        pending.put(id, future);
+        future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((r, e) -> pending.remove(id));
+        return id;
+    }
+
+    /**
+     * Drops a request whose send failed.
+     *
+     * @param correlationId the id returned by {@link #register}
+     * @param cause the send failure
+     */
+    void fail(String correlationId, Throwable cause) {
+        CompletableFuture<BookingReply> f = pending.remove(correlationId);
+        if (f != null) f.completeExceptionally(cause);
+    }
+
+    /**
+     * Completes the request matching a received reply.
+     * ERROR replies complete the future with an unsuccessful {@link BookingReply}.
+     *
+     * @param correlationId the correlationId of the reply (may be null)
+     * @param msg the decoded reply
+     * @return true if the reply belonged to an outstanding request
+     */
+    boolean complete(String correlationId, WireMessage msg) {
+        if (correlationId == null) return false;
+        CompletableFuture<BookingReply> f = pending.remove(correlationId);
+        if (f == null) return false;
+        f.complete(toReply(msg));
+        return true;
+    }
+
+    /**
+     * Fails every outstanding request, e.g. when the client stops.
+     *
+     * @param cause the reason
+     */
+    void failAll(Throwable cause) {
+        for (String id : pending.keySet()) fail(id, cause);
+    }
+
+    /**
+     * Gets the number of outstanding requests.
+     *
+     * @return the count of requests still waiting for a reply
+     */
+    int size() {
+        return pending.size();
+    }
+
+    private static BookingReply toReply(WireMessage msg) {
+        if (msg.payload() instanceof BookingReply r) return r;
+        String text = msg.payload() == null ? null : msg.payload().toString();
+        return new BookingReply(msg.type() != MessageType.ERROR, null, text);
+    }
+}
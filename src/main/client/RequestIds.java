@@ -0,0 +1,26 @@
+package main.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ids for the requests a client sends: request ids (idempotency keys) for the booking
+ * requests it builds itself, and correlationIds for matching replies ({@link PendingReplies}).
+ * <p>
+ * An id is a random prefix chosen per instance followed by a counter, so ids stay unique
+ * across restarts of a client with the same client id without a random number per request.
+ */
+final class RequestIds {
+
+    private final String prefix = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36) + "-";
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Gets a fresh request id.
+     *
+     * @return an id not returned before by this instance
+     */
+    String next() {
+        return prefix + Long.toString(sequence.incrementAndGet(), 36);
+    }
+}
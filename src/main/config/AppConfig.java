@@ -1,5 +1,8 @@
 package main.config;
 
+import main.storage.DurabilityPolicy;
+import main.util.WireFormat;
+
 import java.io.InputStream;
 import java.util.Properties;
 
@@ -35,13 +38,26 @@ public final class AppConfig {
         }
     }
 
+    /**
+     * Looks up a setting, letting a JVM system property (-Dkey=value) override
+     * the value from the properties file so single processes can be tuned.
+     *
+     * @param key the property key
+     * @param def the default value if the key is not configured
+     * @return the configured value or the default
+     */
+    private static String property(String key, String def) {
+        String v = System.getProperty(key);
+        return v != null ? v : PROPS.getProperty(key, def);
+    }
+
     /**
      * Gets the RabbitMQ host address from configuration.
      *
      * @return the RabbitMQ host, defaults to "localhost" if not configured
      */
     public static String getRabbitHost() {
-        return PROPS.getProperty("rabbitmq.host", "localhost");
+        return property("rabbitmq.host", "localhost");
     }
 
     /**
@@ -50,7 +66,7 @@ public final class AppConfig {
      * @return the RabbitMQ username, defaults to "guest" if not configured
      */
     public static String getRabbitUser() {
-        return PROPS.getProperty("rabbitmq.user", "guest");
+        return property("rabbitmq.user", "guest");
     }
 
     /**
@@ -59,7 +75,17 @@ public final class AppConfig {
      * @return the RabbitMQ password, defaults to "guest" if not configured
      */
     public static String getRabbitPass() {
-        return PROPS.getProperty("rabbitmq.pass", "guest");
+        return property("rabbitmq.pass", "guest");
+    }
+
+    /**
+     * Gets the heartbeat interval requested for RabbitMQ connections. The broker closes a
+     * connection after two missed heartbeats, which releases the building it owned.
+     *
+     * @return the heartbeat in seconds, defaults to 10 if not configured
+     */
+    public static int getRabbitHeartbeatSeconds() {
+        return Integer.parseInt(property("rabbitmq.heartbeatSeconds", "10"));
     }
 
     /**
@@ -68,7 +94,7 @@ public final class AppConfig {
      * @return the default building name, defaults to "BuildingA" if not configured
      */
     public static String getDefaultBuildingName() {
-        return PROPS.getProperty("building.name", "BuildingA");
+        return property("building.name", "BuildingA");
     }
 
     /**
@@ -77,6 +103,280 @@ public final class AppConfig {
      * @return the default building capacity, defaults to 5 if not configured
      */
     public static int getDefaultBuildingCapacity() {
-        return Integer.parseInt(PROPS.getProperty("building.capacity", "5"));
+        return Integer.parseInt(property("building.capacity", "5"));
+    }
+
+    /**
+     * Gets the number of days ahead for which a building keeps capacity in a dense array.
+     * Bookings further ahead still work, through a slower map.
+     *
+     * @return the booking horizon in days, defaults to 730 if not configured
+     */
+    public static int getBuildingHorizonDays() {
+        return Integer.parseInt(property("building.horizonDays", "730"));
+    }
+
+    /**
+     * Gets the directory buildings keep their journal in ({@code <dir>/<building>/journal}).
+     *
+     * @return the data directory, or an empty string (default) to keep state in memory only
+     */
+    public static String getBuildingDataDir() {
+        return property("building.dataDir", "").trim();
+    }
+
+    /**
+     * Gets the size of each journal segment file.
+     *
+     * @return the segment size in bytes, defaults to 64 MiB if not configured
+     */
+    public static int getJournalSegmentBytes() {
+        return Integer.parseInt(property("building.journalSegmentBytes", String.valueOf(64 << 20)));
+    }
+
+    /**
+     * Gets how long a building remembers the final state of canceled and past reservations,
+     * counted from their date, to answer repeated confirm/cancel requests.
+     *
+     * @return the retention in days, defaults to 90 if not configured
+     */
+    public static int getArchiveRetentionDays() {
+        return Integer.parseInt(property("building.archiveRetentionDays", "90"));
+    }
+
+    /**
+     * Gets how often a building snapshots its state so that older journal segments can be dropped.
+     *
+     * @return the snapshot interval in seconds (0 = only on stop), defaults to 300 if not configured
+     */
+    public static int getSnapshotIntervalSeconds() {
+        return Integer.parseInt(property("building.snapshotIntervalSeconds", "300"));
+    }
+
+    /**
+     * Gets when buildings flush their journal relative to acknowledging requests.
+     *
+     * @return the durability policy, defaults to PER_BATCH if not configured
+     */
+    public static DurabilityPolicy getBuildingDurability() {
+        return DurabilityPolicy.parse(property("building.durability", "per_batch"));
+    }
+
+    /**
+     * Gets the maximum number of inbox deliveries a building applies per journal flush.
+     *
+     * @return the batch size, defaults to 128 if not configured
+     */
+    public static int getBuildingBatchSize() {
+        return Integer.parseInt(property("building.batchSize", "128"));
+    }
+
+    /**
+     * Gets how long a building collects deliveries before flushing under the INTERVAL policy.
+     *
+     * @return the flush interval in milliseconds, defaults to 5 if not configured
+     */
+    public static int getBuildingFlushIntervalMs() {
+        return Integer.parseInt(property("building.flushIntervalMs", "5"));
+    }
+
+    /**
+     * Gets how many inbox consumers a building runs. Their threads only decode requests;
+     * a single writer thread applies them, so more consumers add decoding parallelism.
+     *
+     * @return the number of consumers, defaults to 1 if not configured
+     */
+    public static int getBuildingConsumers() {
+        return Integer.parseInt(property("building.consumers", "1"));
+    }
+
+    /**
+     * Gets how many unacknowledged deliveries a building's inbox consumer may hold.
+     *
+     * @return the prefetch count, defaults to 256 if not configured
+     */
+    public static int getBuildingPrefetch() {
+        return Integer.parseInt(property("building.prefetch", "256"));
+    }
+
+    /**
+     * Gets how many lanes apply a building's requests in parallel (keyed by date or reservation id).
+     *
+     * @return the lane count, defaults to 1 (a single writer) if not configured
+     */
+    public static int getBuildingLanes() {
+        return Integer.parseInt(property("building.lanes", "1"));
+    }
+
+    /**
+     * Gets the number of consecutive days that fall into the same partition of a
+     * partitioned building (the blocks are dealt round-robin over the partitions).
+     *
+     * @return the block length in days, defaults to 1 if not configured
+     */
+    public static int getBuildingPartitionDays() {
+        return Integer.parseInt(property("building.partitionDays", "1"));
+    }
+
+    /**
+     * Gets the buildings a building host serves, as {@code name[:capacity[:k/n]]} entries
+     * separated by commas (a missing capacity means the default building capacity;
+     * {@code k/n} serves partition k of n).
+     *
+     * @return the building list, defaults to the default building if not configured
+     */
+    public static String getHostBuildings() {
+        return property("building.host.buildings", getDefaultBuildingName());
+    }
+
+    /**
+     * Gets the number of worker threads a building host shares between the lanes and
+     * snapshots of all its buildings. Replies are sent from threads of their own.
+     *
+     * @return the worker count, defaults to the number of available processors
+     */
+    public static int getHostWorkers() {
+        return Integer.parseInt(property("building.host.workers",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Gets the number of threads a building host shares between the periodic tasks
+     * (announcements, hold expiry, retention) of all its buildings.
+     *
+     * @return the scheduler thread count, defaults to 2 if not configured
+     */
+    public static int getHostSchedulerThreads() {
+        return Integer.parseInt(property("building.host.schedulerThreads", "2"));
+    }
+
+    /**
+     * Gets the role a building process starts in.
+     *
+     * @return "primary" (default) to serve the building, or "follower" for a hot standby that
+     *         replicates a primary and takes over its inbox when the primary goes silent
+     */
+    public static String getBuildingRole() {
+        return property("building.role", "primary").trim().toLowerCase(java.util.Locale.ROOT);
+    }
+
+    /**
+     * Tells whether a primary building publishes its journal records for followers.
+     * Needs a data directory, since the stream is cut from the journal.
+     *
+     * @return true if replicating, defaults to false if not configured
+     */
+    public static boolean getBuildingReplication() {
+        return Boolean.parseBoolean(property("building.replication", "false"));
+    }
+
+    /**
+     * Gets how long a follower waits without hearing from its primary before taking over.
+     *
+     * @return the failover timeout in milliseconds, defaults to 3000 if not configured
+     */
+    public static long getBuildingFailoverMs() {
+        return Long.parseLong(property("building.failoverMs", "3000"));
+    }
+
+    /**
+     * Gets how often a building that another instance owns tries to take it over.
+     *
+     * @return the retry interval in milliseconds, defaults to 1000 if not configured
+     */
+    public static long getBuildingOwnershipRetryMs() {
+        return Long.parseLong(property("building.ownershipRetryMs", "1000"));
+    }
+
+    /**
+     * Tells whether the building data directory is shared storage, which every instance of a
+     * building reads and writes (e.g. a network volume). Only then may an instance that is not
+     * a follower stand by for a building another instance owns: it loads the owner's state
+     * from there when it takes over.
+     *
+     * @return true if the data directory is shared, defaults to false if not configured
+     */
+    public static boolean getBuildingSharedStorage() {
+        return Boolean.parseBoolean(property("building.sharedStorage", "false"));
+    }
+
+    /**
+     * Gets how long a building keeps a provisional (PENDING) hold before canceling it.
+     * Individual booking requests may ask for a different timeout.
+     *
+     * @return the hold timeout in seconds, defaults to 300 if not configured
+     */
+    public static int getHoldTimeoutSeconds() {
+        return Integer.parseInt(property("building.holdTimeoutSeconds", "300"));
+    }
+
+    /**
+     * Gets how long a building remembers the hold it granted a booking request with a request
+     * id, answering a resent request with it instead of booking again.
+     *
+     * @return the retention in seconds, defaults to 600 if not configured (0 disables)
+     */
+    public static int getRequestRetentionSeconds() {
+        return Integer.parseInt(property("building.requestRetentionSeconds", "600"));
+    }
+
+    /**
+     * Gets how many replies to booking requests a building remembers at most.
+     *
+     * @return the maximum number of replies, defaults to 100000 if not configured
+     */
+    public static int getRequestCacheEntries() {
+        return Integer.parseInt(property("building.requestCacheEntries", "100000"));
+    }
+
+    /**
+     * Gets the length of the time slots buildings track capacity in.
+     * Bookings are widened to whole slots.
+     *
+     * @return minutes per slot, defaults to 60 if not configured (must divide 1440)
+     */
+    public static int getBuildingSlotMinutes() {
+        return Integer.parseInt(property("building.slotMinutes", "60"));
+    }
+
+    /**
+     * Gets the messaging transport used by the actors of this process.
+     *
+     * @return "rabbitmq" (default) for a RabbitMQ broker, or "memory" for the in-JVM broker
+     */
+    public static String getTransport() {
+        return property("transport", "rabbitmq").trim().toLowerCase(java.util.Locale.ROOT);
+    }
+
+    /**
+     * Gets the number of RabbitMQ channels used for publishing per connection.
+     * Each publishing thread is pinned to one of them, so this should be at least
+     * the number of threads that publish concurrently.
+     *
+     * @return the publisher channel count, defaults to twice the number of cores
+     */
+    public static int getPublisherChannels() {
+        return Integer.parseInt(property("rabbitmq.publisherChannels",
+                String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Gets the default timeout of asynchronous client requests.
+     *
+     * @return the timeout in milliseconds, defaults to 5000 if not configured
+     */
+    public static long getClientRequestTimeoutMs() {
+        return Long.parseLong(property("client.requestTimeoutMs", "5000"));
+    }
+
+    /**
+     * Gets the wire format this process uses for outgoing messages.
+     * Incoming messages are always decoded according to their contentType,
+     * so switch consumers first and producers last when rolling out a new format.
+     *
+     * @return the outgoing wire format, defaults to JAVA if not configured
+     */
+    public static WireFormat getWireFormat() {
+        return WireFormat.parse(property("wire.format", "java"));
     }
 }
\ No newline at end of file
@@ -18,9 +18,21 @@ public final class Constants {
     // Exchanges
     public static final String BUILDINGS_FANOUT_EXCHANGE = "cr.buildings.fanout"; // buildings announce themselves
     public static final String BUILDING_DIRECT_EXCHANGE  = "cr.building.direct";  // agent -> specific building
+    public static final String REPLICATION_EXCHANGE = "cr.building.replication"; // primary -> standby buildings
 
     // Routing keys
-    public static final String RK_BUILDING_PREFIX = "building."; // e.g. building.BuildingA
+    public static final String RK_BUILDING_PREFIX = "building."; // e.g. building.BuildingA, building.BuildingA.p3
+    public static final String RK_REPLICA_PREFIX  = "replica.";  // e.g. replica.BuildingA, replica.BuildingA.p3
+
+    // Message headers (routing metadata so agents can forward without decoding the body)
+    public static final String HDR_TYPE     = "cr-type";     // MessageType name
+    public static final String HDR_SENDER   = "cr-sender";   // original client id
+    public static final String HDR_BUILDING = "cr-building"; // target building, if any
+    public static final String HDR_CLIENT   = "cr-client";   // logical client a reply belongs to (shared reply queues)
+    public static final String HDR_DATE     = "cr-date";     // booking date (epoch day), picks the partition
+    public static final String HDR_RESERVATION = "cr-reservation"; // reservation id of confirm/cancel
+    public static final String HDR_PARTITIONS  = "cr-partitions";  // announced: partitions of the building
+    public static final String HDR_PARTITION_DAYS = "cr-partition-days"; // announced: consecutive days per partition
 
     // Derived name helpers
     public static String clientReplyQueue(String clientId) {
@@ -32,4 +44,28 @@ public final class Constants {
     public static String buildingRoutingKey(String buildingName) {
         return RK_BUILDING_PREFIX + buildingName;
     }
+    public static String buildingInboxQueue(String buildingName, int partition) {
+        return "cr.building." + buildingName + ".p" + partition + ".inbox";
+    }
+    public static String buildingRoutingKey(String buildingName, int partition) {
+        return RK_BUILDING_PREFIX + buildingName + ".p" + partition;
+    }
+    public static String buildingOwnerQueue(String buildingName) {
+        return "cr.building." + buildingName + ".owner";
+    }
+    public static String buildingOwnerQueue(String buildingName, int partition) {
+        return "cr.building." + buildingName + ".p" + partition + ".owner";
+    }
+    public static String buildingSyncQueue(String buildingName) {
+        return "cr.building." + buildingName + ".sync";
+    }
+    public static String replicationRoutingKey(String buildingName) {
+        return RK_REPLICA_PREFIX + buildingName;
+    }
+    public static String buildingSyncQueue(String buildingName, int partition) {
+        return "cr.building." + buildingName + ".p" + partition + ".sync";
+    }
+    public static String replicationRoutingKey(String buildingName, int partition) {
+        return RK_REPLICA_PREFIX + buildingName + ".p" + partition;
+    }
 }
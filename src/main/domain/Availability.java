@@ -0,0 +1,89 @@
+package main.domain;
+
+import java.time.LocalDate;
+
+/**
+ * Compact text form of an availability reply: the first day of the queried range followed
+ * by the free rooms of each day, e.g. {@code 2025-10-17 3,0,5}. It travels as the message
+ * of a {@link BookingReply} to a {@link MessageType#QUERY_AVAILABILITY} request.
+ * <p>
+ * A day's count is the number of rooms free in every time slot of the day, i.e. the rooms
+ * that can still be booked for the whole day. A partition of a partitioned building only
+ * knows its own days and reports -1 for the others; the agent asks every partition a range
+ * covers and {@link #merge merges} their replies.
+ */
+public final class Availability {
+
+    /** The count reported for a day served by another partition. */
+    public static final int UNKNOWN = -1;
+
+    /** The most days one query may cover. */
+    public static final int MAX_DAYS = 366;
+
+    // Private constructor to prevent instantiation
+    private Availability() {}
+
+    /**
+     * Formats the free rooms of consecutive days.
+     *
+     * @param from      the first day
+     * @param freeRooms the free rooms per day, starting at {@code from}
+     * @return the reply message
+     */
+    public static String format(LocalDate from, int[] freeRooms) {
+        StringBuilder sb = new StringBuilder(11 + freeRooms.length * 3).append(from).append(' ');
+        for (int i = 0; i < freeRooms.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(freeRooms[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses the free rooms from a reply message.
+     *
+     * @param message the reply message
+     * @return the free rooms per day, starting at the first queried day
+     * @throws IllegalArgumentException if the message is not an availability reply
+     */
+    public static int[] parse(String message) {
+        int space = message == null ? -1 : message.indexOf(' ');
+        if (space < 0) throw new IllegalArgumentException("not an availability reply: " + message);
+        String[] counts = message.substring(space + 1).split(",");
+        int[] free = new int[counts.length];
+        try {
+            for (int i = 0; i < counts.length; i++) free[i] = Integer.parseInt(counts[i]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not an availability reply: " + message, e);
+        }
+        return free;
+    }
+
+    /**
+     * Merges the free rooms reported by the partitions of a building for the same range:
+     * each day keeps the count of the partition that serves it.
+     *
+     * @param into  the counts merged so far, updated in place
+     * @param other the counts of another partition
+     * @throws IllegalArgumentException if the ranges differ in length
+     */
+    public static void merge(int[] into, int[] other) {
+        if (into.length != other.length) {
+            throw new IllegalArgumentException("ranges differ: " + into.length + " vs " + other.length + " days");
+        }
+        for (int i = 0; i < into.length; i++) into[i] = Math.max(into[i], other[i]);
+    }
+
+    /**
+     * Parses the first day from a reply message.
+     *
+     * @param message the reply message
+     * @return the first queried day
+     * @throws IllegalArgumentException if the message is not an availability reply
+     */
+    public static LocalDate from(String message) {
+        int space = message == null ? -1 : message.indexOf(' ');
+        if (space < 0) throw new IllegalArgumentException("not an availability reply: " + message);
+        return LocalDate.parse(message.substring(0, space));
+    }
+}
@@ -3,11 +3,16 @@ package main.domain;
 import java.io.Serial;
 import java.io.Serializable;
 import java.time.LocalDate;
+import java.time.LocalTime;
 
 /**
  * Data transfer object for all booking-related operations.
  * Supports both room booking requests and reservation management operations
  * using different constructor signatures for each use case.
+ * <p>
+ * A booking request may carry a client-chosen request id (idempotency key). The building
+ * answers a request whose id it has seen recently with the original reply instead of
+ * booking again, so a request can be resent safely after a timeout.
  */
 public class BookingRequest implements Serializable {
     @Serial
@@ -16,8 +21,12 @@ public class BookingRequest implements Serializable {
     private final String building;
     private final Integer rooms;
     private final LocalDate date;
+    private final LocalTime startTime;
     private final Integer hours;
     private final String reservationNumber;
+    private final Integer holdSeconds;
+    private final String requestId;
+    private final LocalDate endDate;
 
     /**
      * Constructor for room booking requests.
@@ -29,11 +38,41 @@ public class BookingRequest implements Serializable {
      * @param hours the duration of the booking in hours
      */
     public BookingRequest(String building, int rooms, LocalDate date, int hours) {
+        this(building, rooms, date, null, hours);
+    }
+
+    /**
+     * Constructor for room booking requests starting at a given time.
+     * Used for BOOK_ROOM message type.
+     *
+     * @param building the building name where booking is requested
+     * @param rooms the number of rooms to book
+     * @param date the date of the booking
+     * @param startTime the start of the booking, or null for the start of the day
+     * @param hours the duration of the booking in hours
+     */
+    public BookingRequest(String building, int rooms, LocalDate date, LocalTime startTime, int hours) {
         this.building = building;
         this.rooms = rooms;
         this.date = date;
+        this.startTime = startTime;
         this.hours = hours;
         this.reservationNumber = null;
+        this.holdSeconds = null;
+        this.requestId = null;
+        this.endDate = null;
+    }
+
+    /**
+     * Constructor for availability queries.
+     * Used for QUERY_AVAILABILITY message type.
+     *
+     * @param building the building name to query
+     * @param from the first day of the range
+     * @param to the last day of the range (inclusive)
+     */
+    public BookingRequest(String building, LocalDate from, LocalDate to) {
+        this(building, null, from, null, null, null, null, null, to);
     }
 
     /**
@@ -47,8 +86,71 @@ public class BookingRequest implements Serializable {
         this.building = building;
         this.rooms = null;
         this.date = null;
+        this.startTime = null;
         this.hours = null;
         this.reservationNumber = reservationNumber;
+        this.holdSeconds = null;
+        this.requestId = null;
+        this.endDate = null;
+    }
+
+    private BookingRequest(String building, Integer rooms, LocalDate date, LocalTime startTime, Integer hours,
+                           String reservationNumber, Integer holdSeconds, String requestId, LocalDate endDate) {
+        this.building = building;
+        this.rooms = rooms;
+        this.date = date;
+        this.startTime = startTime;
+        this.hours = hours;
+        this.reservationNumber = reservationNumber;
+        this.holdSeconds = holdSeconds;
+        this.requestId = requestId;
+        this.endDate = endDate;
+    }
+
+    /**
+     * Recreates a request from its individual fields.
+     * Used by wire codecs that decode every field independently.
+     *
+     * @param building the building name
+     * @param rooms the number of rooms, or null
+     * @param date the booking date, or null
+     * @param startTime the booking start time, or null
+     * @param hours the booking duration in hours, or null
+     * @param reservationNumber the reservation identifier, or null
+     * @param holdSeconds the requested hold timeout in seconds, or null
+     * @param requestId the client's request id, or null
+     * @param endDate the last day of a queried range, or null
+     * @return the reconstructed request
+     */
+    public static BookingRequest of(String building, Integer rooms, LocalDate date, LocalTime startTime,
+                                    Integer hours, String reservationNumber, Integer holdSeconds, String requestId,
+                                    LocalDate endDate) {
+        return new BookingRequest(building, rooms, date, startTime, hours, reservationNumber, holdSeconds, requestId,
+                endDate);
+    }
+
+    /**
+     * Returns a copy of this booking request that asks the building to keep the
+     * provisional hold for the given time instead of its default.
+     *
+     * @param seconds the hold timeout in seconds, or null for the building default
+     * @return the modified request
+     */
+    public BookingRequest withHoldSeconds(Integer seconds) {
+        return new BookingRequest(building, rooms, date, startTime, hours, reservationNumber, seconds, requestId,
+                endDate);
+    }
+
+    /**
+     * Returns a copy of this booking request carrying the given request id. Resending the
+     * same request (with the same id) then books at most once.
+     *
+     * @param requestId an id unique among the client's requests, or null for none
+     * @return the modified request
+     */
+    public BookingRequest withRequestId(String requestId) {
+        return new BookingRequest(building, rooms, date, startTime, hours, reservationNumber, holdSeconds, requestId,
+                endDate);
     }
 
     /**
@@ -78,6 +180,26 @@ public class BookingRequest implements Serializable {
         return date;
     }
 
+    /**
+     * Gets the last day of a queried range. For availability queries, {@link #date()} is
+     * the first day.
+     *
+     * @return the last day (inclusive), or null for other operations
+     */
+    public LocalDate endDate() {
+        return endDate;
+    }
+
+    /**
+     * Gets the start time of the booking.
+     * Requests from older clients carry none; buildings then book from the start of the day.
+     *
+     * @return the start time, or null if not given
+     */
+    public LocalTime startTime() {
+        return startTime;
+    }
+
     /**
      * Gets the booking duration.
      *
@@ -96,6 +218,25 @@ public class BookingRequest implements Serializable {
         return reservationNumber;
     }
 
+    /**
+     * Gets the requested hold timeout.
+     *
+     * @return the hold timeout in seconds, or null for the building default
+     */
+    public Integer holdSeconds() {
+        return holdSeconds;
+    }
+
+    /**
+     * Gets the client's request id (idempotency key).
+     * Requests from older clients carry none; buildings then cannot recognize a resent one.
+     *
+     * @return the request id, or null if not given
+     */
+    public String requestId() {
+        return requestId;
+    }
+
     /**
      * Returns a string representation of the booking request.
      * Format varies based on whether it's a booking or management operation.
@@ -107,9 +248,11 @@ public class BookingRequest implements Serializable {
         if (reservationNumber != null) {
             return "BookingRequest{building='%s', reservationNumber='%s'}"
                     .formatted(building, reservationNumber);
+        } else if (endDate != null) {
+            return "BookingRequest{building='%s', from=%s, to=%s}".formatted(building, date, endDate);
         } else {
-            return "BookingRequest{building='%s', rooms=%d, date=%s, hours=%d}"
-                    .formatted(building, rooms, date, hours);
+            return "BookingRequest{building='%s', rooms=%d, date=%s, start=%s, hours=%d, requestId=%s}"
+                    .formatted(building, rooms, date, startTime, hours, requestId);
         }
     }
 }
\ No newline at end of file
@@ -39,5 +39,11 @@ public enum MessageType {
      * Error response sent from any component to the client.
      * Payload typically contains an error message string or error DTO.
      */
-    ERROR
+    ERROR,
+
+    /**
+     * Client asks how many rooms are free on each day of a date range, without booking.
+     * Flow: client → agent → building; the reply lists the free rooms per day (see {@link Availability}).
+     */
+    QUERY_AVAILABILITY
 }
\ No newline at end of file
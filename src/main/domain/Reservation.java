@@ -1,25 +1,31 @@
 package main.domain;
 
+import main.util.ReservationIds;
+
 import java.io.Serial;
 import java.io.Serializable;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.Objects;
-import java.util.UUID;
 
 /**
  * Represents a room reservation in the booking system.
  * Each reservation is uniquely identified and contains details
- * about the building, room count, date, and duration.
+ * about the building, room count, date, start time and duration.
  */
 public class Reservation implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    // Ids for reservations created without one (buildings pass ids from their own shard)
+    private static final ReservationIds IDS = new ReservationIds(0);
+
     public final String id;
     public final String building;
     public final int rooms;
     public final LocalDate date;
+    public final LocalTime startTime;
     public final int hours;
     public final Instant createdAt;
 
@@ -33,12 +39,44 @@ public class Reservation implements Serializable {
      * @throws NullPointerException if building or date is null
      */
     public Reservation(String building, int rooms, LocalDate date, int hours) {
-        this.id = UUID.randomUUID().toString();
+        this(building, rooms, date, LocalTime.MIDNIGHT, hours);
+    }
+
+    /**
+     * Creates a new reservation starting at a given time, with automatically generated unique ID.
+     *
+     * @param building the building name where reservation is made
+     * @param rooms the number of rooms to reserve
+     * @param date the date of the reservation
+     * @param startTime the start time of the reservation
+     * @param hours the duration in hours
+     * @throws NullPointerException if building, date or startTime is null
+     */
+    public Reservation(String building, int rooms, LocalDate date, LocalTime startTime, int hours) {
+        this(IDS.nextString(), building, rooms, date, startTime, hours, Instant.now());
+    }
+
+    /**
+     * Recreates a reservation with all its fields, e.g. when a building restores its state from disk.
+     *
+     * @param id the unique reservation identifier
+     * @param building the building name where reservation is made
+     * @param rooms the number of rooms to reserve
+     * @param date the date of the reservation
+     * @param startTime the start time of the reservation
+     * @param hours the duration in hours
+     * @param createdAt when the reservation was created
+     * @throws NullPointerException if id, building, date, startTime or createdAt is null
+     */
+    public Reservation(String id, String building, int rooms, LocalDate date, LocalTime startTime, int hours,
+                       Instant createdAt) {
+        this.id = Objects.requireNonNull(id);
         this.building = Objects.requireNonNull(building);
         this.rooms = rooms;
         this.date = Objects.requireNonNull(date);
+        this.startTime = Objects.requireNonNull(startTime);
         this.hours = hours;
-        this.createdAt = Instant.now();
+        this.createdAt = Objects.requireNonNull(createdAt);
     }
 
     /**
@@ -48,7 +86,7 @@ public class Reservation implements Serializable {
      */
     @Override
     public String toString() {
-        return "Reservation{id='%s', building='%s', rooms=%d, date=%s, hours=%d}"
-                .formatted(id, building, rooms, date, hours);
+        return "Reservation{id='%s', building='%s', rooms=%d, date=%s, start=%s, hours=%d}"
+                .formatted(id, building, rooms, date, startTime, hours);
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package main.storage;
+
+/**
+ * When a building forces its journal to disk, relative to acknowledging requests.
+ * A request is only acknowledged (and answered) after the records it produced are
+ * durable, so the policy trades reply latency against throughput.
+ */
+public enum DurabilityPolicy {
+    /**
+     * Flush and acknowledge after every message. Lowest latency per request,
+     * but throughput is bounded by the number of disk flushes per second.
+     */
+    PER_MESSAGE,
+
+    /**
+     * Apply whatever deliveries are waiting (up to the batch size), flush once and
+     * acknowledge them together. Adds no waiting when the inbox is idle.
+     */
+    PER_BATCH,
+
+    /**
+     * Like {@link #PER_BATCH}, but keep collecting deliveries until the flush
+     * interval has passed since the first one, so each flush covers more requests.
+     */
+    INTERVAL;
+
+    /**
+     * Parses a policy name from configuration ("per_message", "per_batch" or "interval").
+     *
+     * @param name the configured name
+     * @return the matching policy
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static DurabilityPolicy parse(String name) {
+        return valueOf(name.trim().toUpperCase(java.util.Locale.ROOT));
+    }
+}
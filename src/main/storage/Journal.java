@@ -0,0 +1,290 @@
+package main.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead journal stored in memory-mapped segment files.
+ * <p>
+ * Every record gets a log sequence number (LSN), increasing by one per record.
+ * Segments are named after the LSN of their first record ({@code <firstLsn>.seg})
+ * and have a fixed size; a record that does not fit starts the next segment.
+ * <p>
+ * Record layout (big endian):
+ * <pre>
+ *   int    length (payload length + 1; 0 marks the end of the segment)
+ *   int    CRC32C over lsn, type and payload
+ *   long   lsn
+ *   byte   type
+ *   byte[] payload
+ * </pre>
+ * Appending copies the record into the mapped segment, so it is a sequential memory
+ * write; {@link #flush()} forces the written range to disk. On open, the tail of the
+ * last segment is validated and a torn record left by a crash is discarded.
+ * Once a snapshot covers a prefix of the journal, {@link #truncateBefore(long)} drops
+ * the segments holding it; the journal then starts at the first remaining segment.
+ */
+public final class Journal implements AutoCloseable {
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 1;
+    private static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private long nextLsn;
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Handler for records read by {@link #replay(long, RecordHandler)}.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * Processes one record.
+         *
+         * @param lsn     the sequence number of the record
+         * @param type    the record type
+         * @param payload the payload (read-only, positioned at its start)
+         * @throws IOException if processing fails
+         */
+        void accept(long lsn, byte type, ByteBuffer payload) throws IOException;
+    }
+
+    private Journal(Path dir, int segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Opens (or creates) a journal in a directory.
+     *
+     * @param dir          the directory holding the segment files
+     * @param segmentBytes the size of each segment file
+     * @return the opened journal, positioned after its last valid record
+     * @throws IOException if the directory or a segment cannot be opened
+     */
+    public static Journal open(Path dir, int segmentBytes) throws IOException {
+        Files.createDirectories(dir);
+        Journal j = new Journal(dir, segmentBytes);
+        j.load();
+        return j;
+    }
+
+    private void load() throws IOException {
+        List<Long> firstLsns = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                firstLsns.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+            }
+        }
+        firstLsns.sort(null);
+        for (long first : firstLsns) {
+            segments.add(Segment.map(segmentPath(first), first, segmentBytes));
+        }
+        if (segments.isEmpty()) {
+            nextLsn = 1;
+            active = Segment.map(segmentPath(nextLsn), nextLsn, segmentBytes);
+            segments.add(active);
+            return;
+        }
+        active = segments.get(segments.size() - 1);
+        // Find the end of the last segment; anything after the last valid record is a torn write
+        long lsn = active.firstLsn;
+        ByteBuffer buf = active.buf;
+        int pos = 0;
+        while (true) {
+            int next = validRecordEnd(buf, pos, lsn);
+            if (next < 0) break;
+            pos = next;
+            lsn++;
+        }
+        if (pos + 4 <= buf.capacity() && buf.getInt(pos) != 0) {
+            for (int i = pos; i < buf.capacity(); i++) buf.put(i, (byte) 0);
+            active.buf.force();
+        }
+        active.position = pos;
+        active.flushed = pos;
+        nextLsn = lsn;
+    }
+
+    /**
+     * Checks the record at a position.
+     *
+     * @return the position after the record, or -1 if there is no valid record with that lsn
+     */
+    private int validRecordEnd(ByteBuffer buf, int pos, long expectedLsn) {
+        if (pos + HEADER_BYTES > buf.capacity()) return -1;
+        int length = buf.getInt(pos);
+        if (length <= 0 || pos + HEADER_BYTES - 1 + length > buf.capacity()) return -1;
+        if (buf.getLong(pos + 8) != expectedLsn) return -1;
+        crc.reset();
+        crc.update(buf.slice(pos + 8, 8 + length));
+        if ((int) crc.getValue() != buf.getInt(pos + 4)) return -1;
+        return pos + HEADER_BYTES - 1 + length;
+    }
+
+    private Path segmentPath(long firstLsn) {
+        return dir.resolve(String.format("%020d%s", firstLsn, SUFFIX));
+    }
+
+    /**
+     * Appends a record. The record is in the page cache when this returns;
+     * call {@link #flush()} to make it durable.
+     *
+     * @param type    the record type
+     * @param payload the record payload
+     * @return the LSN of the record
+     * @throws IOException if a new segment cannot be created
+     */
+    public synchronized long append(byte type, byte[] payload) throws IOException {
+        int size = HEADER_BYTES + payload.length;
+        if (size > segmentBytes) throw new IOException("journal record too large: " + payload.length + " bytes");
+        if (active.position + size > segmentBytes) roll();
+
+        long lsn = nextLsn++;
+        ByteBuffer buf = active.buf;
+        int pos = active.position;
+        buf.putLong(pos + 8, lsn);
+        buf.put(pos + 16, type);
+        buf.put(pos + HEADER_BYTES, payload);
+        crc.reset();
+        crc.update(buf.slice(pos + 8, 9 + payload.length));
+        buf.putInt(pos + 4, (int) crc.getValue());
+        buf.putInt(pos, payload.length + 1); // length last: a record is only visible once complete
+        active.position = pos + size;
+        return lsn;
+    }
+
+    /**
+     * Forces everything appended so far to disk.
+     *
+     * @throws IOException if the data cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        Segment s = active;
+        if (s.position > s.flushed) {
+            s.buf.force(s.flushed, s.position - s.flushed);
+            s.flushed = s.position;
+        }
+    }
+
+    /**
+     * Gets the LSN the next appended record will get.
+     *
+     * @return the next LSN
+     */
+    public synchronized long nextLsn() {
+        return nextLsn;
+    }
+
+    /**
+     * Reads all records with an LSN of at least {@code fromLsn}, in order.
+     *
+     * @param fromLsn the first LSN to deliver
+     * @param handler receives the records
+     * @throws IOException if a segment is corrupt or the handler fails
+     */
+    public void replay(long fromLsn, RecordHandler handler) throws IOException {
+        List<Segment> snapshot;
+        long end;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+            end = nextLsn;
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            Segment s = snapshot.get(i);
+            long nextFirst = i + 1 < snapshot.size() ? snapshot.get(i + 1).firstLsn : end;
+            if (nextFirst <= fromLsn) continue;
+            ByteBuffer buf = s.buf.duplicate();
+            int pos = 0;
+            for (long lsn = s.firstLsn; lsn < nextFirst; lsn++) {
+                int next;
+                synchronized (this) {
+                    next = validRecordEnd(buf, pos, lsn);
+                }
+                if (next < 0) throw new IOException("corrupt journal record " + lsn + " in " + s.path);
+                if (lsn >= fromLsn) {
+                    int length = buf.getInt(pos) - 1;
+                    handler.accept(lsn, buf.get(pos + 16), buf.slice(pos + HEADER_BYTES, length).asReadOnlyBuffer());
+                }
+                pos = next;
+            }
+        }
+    }
+
+    /**
+     * Deletes the segments that only hold records below an LSN, e.g. once a snapshot
+     * covers them. The active segment is always kept, as is the segment containing
+     * {@code lsn}. Must not run concurrently with {@link #replay(long, RecordHandler)}.
+     *
+     * @param lsn the first LSN that must stay readable
+     * @return the number of deleted segments
+     * @throws IOException if a segment file cannot be deleted
+     */
+    public synchronized int truncateBefore(long lsn) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(1).firstLsn <= lsn) {
+            Segment s = segments.remove(0);
+            s.channel.close();
+            Files.deleteIfExists(s.path);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Flushes and closes the journal.
+     *
+     * @throws IOException if the final flush fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (Segment s : segments) s.channel.close();
+        segments.clear();
+    }
+
+    private void roll() throws IOException {
+        // The rest of the old segment stays zero, which marks its end
+        flush();
+        active = Segment.map(segmentPath(nextLsn), nextLsn, segmentBytes);
+        segments.add(active);
+    }
+
+    /**
+     * One mapped segment file.
+     */
+    private static final class Segment {
+        final Path path;
+        final long firstLsn;
+        final FileChannel channel;
+        final MappedByteBuffer buf;
+        int position;
+        int flushed;
+
+        private Segment(Path path, long firstLsn, FileChannel channel, MappedByteBuffer buf) {
+            this.path = path;
+            this.firstLsn = firstLsn;
+            this.channel = channel;
+            this.buf = buf;
+        }
+
+        static Segment map(Path path, long firstLsn, int bytes) throws IOException {
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(path, firstLsn, ch, ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+        }
+    }
+}
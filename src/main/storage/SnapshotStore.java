@@ -0,0 +1,153 @@
+package main.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point-in-time images of some state, each tagged with the {@link Journal} LSN from
+ * which the journal has to be replayed on top of it.
+ * <p>
+ * File layout ({@code <lsn>.snap}, big endian):
+ * <pre>
+ *   long   MAGIC
+ *   long   lsn
+ *   byte[] body (written by the caller)
+ *   int    CRC32C over everything before it
+ * </pre>
+ * A snapshot is written to a temporary file, forced to disk and then renamed, so a
+ * crash never leaves a half-written snapshot under its final name. Only the newest
+ * snapshot is kept. Loading maps the file read-only instead of copying it.
+ */
+public final class SnapshotStore {
+
+    private static final long MAGIC = 0x43522d534e415031L; // "CR-SNAP1"
+    private static final String SUFFIX = ".snap";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path dir;
+
+    /**
+     * Writes the body of a snapshot.
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        /**
+         * Writes the state.
+         *
+         * @param out the stream to write to (buffered; flushed by the store)
+         * @throws IOException if writing fails
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * A loaded snapshot.
+     *
+     * @param lsn  the first journal LSN not covered by the snapshot
+     * @param body the body as written, read-only and positioned at its start
+     */
+    public record Snapshot(long lsn, ByteBuffer body) {}
+
+    private SnapshotStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Opens (or creates) a snapshot directory, removing temporary files of interrupted writes.
+     *
+     * @param dir the directory holding the snapshot files
+     * @return the opened store
+     * @throws IOException if the directory cannot be created or read
+     */
+    public static SnapshotStore open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + TMP_SUFFIX)) {
+            for (Path p : ds) Files.deleteIfExists(p);
+        }
+        return new SnapshotStore(dir);
+    }
+
+    /**
+     * Writes a new snapshot and deletes the older ones.
+     *
+     * @param lsn    the first journal LSN not reflected in the state being written
+     * @param writer writes the state
+     * @return the size of the snapshot file in bytes
+     * @throws IOException if the snapshot cannot be written
+     */
+    public long write(long lsn, BodyWriter writer) throws IOException {
+        Path target = snapshotPath(lsn);
+        Path tmp = dir.resolve(target.getFileName() + TMP_SUFFIX);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32C crc = new CRC32C();
+            // Not closed itself: closing the stream would close the channel before it is forced
+            CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(ch), crc);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+            out.writeLong(MAGIC);
+            out.writeLong(lsn);
+            writer.write(out);
+            out.flush();
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        long size = Files.size(target);
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                if (!p.equals(target)) Files.deleteIfExists(p);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Maps the newest snapshot.
+     *
+     * @return the snapshot, or null if none was written yet
+     * @throws IOException if the snapshot cannot be read or fails its checksum
+     */
+    public Snapshot latest() throws IOException {
+        Path newest = null;
+        long newestLsn = -1;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                long lsn = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                if (lsn > newestLsn) {
+                    newestLsn = lsn;
+                    newest = p;
+                }
+            }
+        }
+        if (newest == null) return null;
+
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(newest, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // stays valid after close
+        }
+        int end = buf.capacity() - 4;
+        if (end < 16 || buf.getLong(0) != MAGIC) throw new IOException("not a snapshot: " + newest);
+        CRC32C crc = new CRC32C();
+        crc.update(buf.slice(0, end));
+        if ((int) crc.getValue() != buf.getInt(end)) throw new IOException("corrupt snapshot: " + newest);
+        return new Snapshot(buf.getLong(8), buf.slice(16, end - 16).asReadOnlyBuffer());
+    }
+
+    private Path snapshotPath(long lsn) {
+        return dir.resolve(String.format("%020d%s", lsn, SUFFIX));
+    }
+}
@@ -1,11 +1,18 @@
 package main.tests;
 
 import main.agent.RentalAgent;
+import main.building.BuildingHost;
 import main.building.BuildingService;
 import main.client.ClientAgent;
+import main.client.ClientGateway;
+import main.config.AppConfig;
 import main.domain.*;
+import main.util.PartitionScheme;
+import main.util.ReservationIds;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.concurrent.*;
 
 /**
@@ -15,6 +22,8 @@ import java.util.concurrent.*;
  */
 public class TestMain {
 
+    private static BuildingService building;
+
     /**
      * Main test runner that executes all test cases and reports overall results.
      *
@@ -24,11 +33,16 @@ public class TestMain {
     public static void main(String[] args) throws Exception {
         System.out.println("=== ConferenceRent Test Harness ===");
 
+        // Journal into a fresh directory, so every run starts empty and restart can be tested
+        if (System.getProperty("building.dataDir") == null) {
+            System.setProperty("building.dataDir", java.nio.file.Files.createTempDirectory("cr-test").toString());
+        }
+
         // Start core system components
         RentalAgent agent = new RentalAgent("AgentTest");
         agent.start();
 
-        BuildingService building = new BuildingService("BuildingA", 1);
+        building = new BuildingService("BuildingA", 1);
         building.start();
 
         // Allow time for components to initialize and discover each other
@@ -36,9 +50,26 @@ public class TestMain {
 
         // Execute test suite
         boolean ok = true;
+        ok &= testReservationIds();
         ok &= testListBuildings();
         ok &= testBookConfirmCancel();
         ok &= testConcurrencyCapacity();
+        ok &= testAsyncPipelining();
+        ok &= testGatewayMultiplexing();
+        ok &= testHourSlots();
+        ok &= testHoldExpiry();
+        ok &= testRestartReplaysJournal();
+        ok &= testSnapshotThenReplay();
+        ok &= testResentRequestBooksOnce();
+        ok &= testAvailabilityQuery();
+        ok &= testArchivedLookups();
+        ok &= testKeyedOrdering();
+        ok &= testBuildingHost();
+        ok &= testDatePartitions();
+        ok &= testStandbyTakeover();
+        ok &= testExclusiveOwnership();
+        ok &= testLookupsAfterRemovals();
+        ok &= testJournalFailureFences();
 
         System.out.println("\n=== RESULT: " + (ok ? "ALL TESTS PASS " : "SOME TESTS FAILED ") + " ===");
 
@@ -187,6 +218,807 @@ public class TestMain {
         return pass;
     }
 
+    /**
+     * Tests the correlation-based async API by pipelining many bookings from one client.
+     * Each booking targets its own date (capacity is 1 room/day), so all must succeed,
+     * and every reply must reach the future of its own request.
+     *
+     * @return true if every booking and cancellation completes successfully, false otherwise
+     * @throws Exception if client operations fail
+     */
+    private static boolean testAsyncPipelining() throws Exception {
+        final int n = 50;
+        System.out.println("\n[Test] Async pipelining (" + n + " outstanding bookings from one client)");
+        ClientAgent client = new ClientAgent("AsyncClient");
+        client.start();
+
+        // Use dates after the other tests to avoid conflicts
+        LocalDate first = LocalDate.now().plusDays(10);
+        java.util.List<CompletableFuture<BookingReply>> books = new java.util.ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            books.add(client.bookRoomAsync("BuildingA", 1, first.plusDays(i), 1));
+        }
+        CompletableFuture.allOf(books.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        java.util.List<CompletableFuture<BookingReply>> cancels = new java.util.ArrayList<>();
+        int booked = 0;
+        for (CompletableFuture<BookingReply> f : books) {
+            BookingReply r = f.join();
+            if (r.success() && r.reservationNumber() != null) {
+                booked++;
+                cancels.add(client.cancelAsync("BuildingA", r.reservationNumber()));
+            }
+        }
+        CompletableFuture.allOf(cancels.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        long canceled = cancels.stream().filter(f -> f.join().success()).count();
+
+        client.stop();
+
+        boolean pass = booked == n && canceled == n;
+        System.out.printf("Observed: booked=%d, canceled=%d -> %s%n", booked, canceled, pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests the client gateway: many logical clients share one connection and reply queue.
+     * Every logical client books its own date, and each reply must reach its own future.
+     *
+     * @return true if every logical client gets a successful booking, false otherwise
+     * @throws Exception if gateway operations fail
+     */
+    private static boolean testGatewayMultiplexing() throws Exception {
+        final int clients = 200;
+        System.out.println("\n[Test] Gateway multiplexing (" + clients + " logical clients, one reply queue)");
+        ClientGateway gateway = new ClientGateway("TestGateway");
+        gateway.start();
+
+        LocalDate first = LocalDate.now().plusDays(100);
+        java.util.List<CompletableFuture<BookingReply>> books = new java.util.ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            books.add(gateway.bookRoomAsync("User" + i, "BuildingA", 1, first.plusDays(i), 1));
+        }
+        CompletableFuture.allOf(books.toArray(new CompletableFuture<?>[0])).get(20, TimeUnit.SECONDS);
+
+        java.util.List<CompletableFuture<BookingReply>> cancels = new java.util.ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            BookingReply r = books.get(i).join();
+            if (r.success()) cancels.add(gateway.cancelAsync("User" + i, "BuildingA", r.reservationNumber()));
+        }
+        CompletableFuture.allOf(cancels.toArray(new CompletableFuture<?>[0])).get(20, TimeUnit.SECONDS);
+
+        gateway.stop();
+
+        boolean pass = cancels.size() == clients && cancels.stream().allMatch(f -> f.join().success());
+        System.out.printf("Observed: booked=%d/%d -> %s%n", cancels.size(), clients, pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests the hour-slot capacity model with a capacity of 1 room.
+     * Back-to-back bookings on the same date must both succeed,
+     * while a booking overlapping one of them must be rejected.
+     *
+     * @return true if only the overlapping booking is rejected, false otherwise
+     * @throws Exception if client operations fail
+     */
+    private static boolean testHourSlots() throws Exception {
+        System.out.println("\n[Test] Hour slots (cap=1) — 09:00+1h and 10:00+1h succeed, 09:00+2h fails");
+        ClientAgent client = new ClientAgent("SlotClient");
+        client.start();
+
+        LocalDate date = LocalDate.now().plusDays(5);
+        BookingReply morning = client.bookRoomAsync("BuildingA", 1, date, java.time.LocalTime.of(9, 0), 1,
+                java.time.Duration.ofSeconds(3)).get();
+        BookingReply next = client.bookRoomAsync("BuildingA", 1, date, java.time.LocalTime.of(10, 0), 1,
+                java.time.Duration.ofSeconds(3)).get();
+        BookingReply overlap = client.bookRoomAsync("BuildingA", 1, date, java.time.LocalTime.of(9, 0), 2,
+                java.time.Duration.ofSeconds(3)).get();
+
+        for (BookingReply r : new BookingReply[]{morning, next}) {
+            if (r.success()) client.cancelAsync("BuildingA", r.reservationNumber()).get();
+        }
+        client.stop();
+
+        boolean pass = morning.success() && next.success() && !overlap.success();
+        System.out.printf("Observed: 09-10=%s, 10-11=%s, 09-11=%s -> %s%n",
+                morning.success(), next.success(), overlap.success(), pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests the expiry of provisional holds with a per-request hold timeout of 1 second.
+     * After the hold expires its capacity must be free again and confirming it must fail.
+     *
+     * @return true if the hold expires and frees its capacity, false otherwise
+     * @throws Exception if client operations fail
+     */
+    private static boolean testHoldExpiry() throws Exception {
+        System.out.println("\n[Test] Hold expiry (hold=1s) — capacity is freed, confirm fails");
+        ClientAgent client = new ClientAgent("HoldClient");
+        client.start();
+
+        LocalDate date = LocalDate.now().plusDays(6);
+        java.time.Duration timeout = java.time.Duration.ofSeconds(3);
+        BookingReply hold = client.bookRoomAsync(new BookingRequest("BuildingA", 1, date, 1).withHoldSeconds(1),
+                timeout).get();
+        Thread.sleep(1600);
+        BookingReply confirm = hold.success()
+                ? client.confirmAsync("BuildingA", hold.reservationNumber(), timeout).get() : null;
+        BookingReply rebook = client.bookRoomAsync("BuildingA", 1, date, 1).get();
+        if (rebook.success()) client.cancelAsync("BuildingA", rebook.reservationNumber()).get();
+        client.stop();
+
+        boolean pass = hold.success() && confirm != null && !confirm.success() && rebook.success();
+        System.out.printf("Observed: hold=%s, confirmAfterExpiry=%s, rebook=%s -> %s%n", hold.success(),
+                confirm != null && confirm.success(), rebook.success(), pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests that a restarted building restores its reservations from the journal:
+     * a reservation confirmed before the restart can be canceled after it,
+     * and its date is fully booked until then.
+     *
+     * @return true if the reservation survives the restart, false otherwise
+     * @throws Exception if client or building operations fail
+     */
+    private static boolean testRestartReplaysJournal() throws Exception {
+        System.out.println("\n[Test] Restart replays journal — confirmed reservation survives");
+        ClientAgent client = new ClientAgent("RestartClient");
+        client.start();
+
+        LocalDate date = LocalDate.now().plusDays(7);
+        BookingReply booked = client.bookRoomAsync("BuildingA", 1, date, 8).get();
+        BookingReply confirmed = booked.success()
+                ? client.confirmAsync("BuildingA", booked.reservationNumber()).get() : booked;
+
+        building.stop();
+        building = new BuildingService("BuildingA", 1);
+        building.start();
+
+        BookingReply full = client.bookRoomAsync("BuildingA", 1, date, 8).get();
+        BookingReply canceled = booked.success()
+                ? client.cancelAsync("BuildingA", booked.reservationNumber()).get() : booked;
+        client.stop();
+
+        boolean pass = booked.success() && confirmed.success() && !full.success()
+                && canceled.success() && "Canceled".equals(canceled.message());
+        System.out.printf("Observed: booked=%s, confirmed=%s, rebookAfterRestart=%s, cancel=%s -> %s%n",
+                booked.success(), confirmed.success(), full.success(), canceled.message(), pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests restoring from a fuzzy snapshot plus the journal tail after it. Snapshots are
+     * taken every second while lanes keep applying bookings and cancellations, and the
+     * segments before each cut are dropped. A copy of the data directory taken between
+     * snapshots (as after a crash) is then restored: every reservation must be in its last
+     * state, and the free rooms of each day must match the holds still live, so a cancel
+     * both in the snapshot and replayed after the cut was released only once.
+     *
+     * @return true if the restored state matches the replies, false otherwise
+     * @throws Exception if client, building or file operations fail
+     */
+    private static boolean testSnapshotThenReplay() throws Exception {
+        System.out.println("\n[Test] Fuzzy snapshot, truncated journal and replay");
+        String dataDir = System.getProperty("building.dataDir");
+        System.setProperty("building.snapshotIntervalSeconds", "1");
+        System.setProperty("building.journalSegmentBytes", "4096");
+        BuildingService fuzzy = new BuildingService("Fuzzy", 50);
+        fuzzy.start();
+        Thread.sleep(300); // let the agent see the announcement
+
+        ClientAgent client = new ClientAgent("FuzzyClient");
+        client.start();
+        LocalDate day = LocalDate.now().plusDays(14);
+        String a = client.bookRoomAsync("Fuzzy", 1, day, 2).get(5, TimeUnit.SECONDS).reservationNumber();
+        String b = client.bookRoomAsync("Fuzzy", 1, day, 2).get(5, TimeUnit.SECONDS).reservationNumber();
+        String c = client.bookRoomAsync("Fuzzy", 1, day, 2).get(5, TimeUnit.SECONDS).reservationNumber();
+        String d = client.bookRoomAsync("Fuzzy", 1, day, 2).get(5, TimeUnit.SECONDS).reservationNumber();
+        client.confirmAsync("Fuzzy", a).get(5, TimeUnit.SECONDS);
+        client.cancelAsync("Fuzzy", b).get(5, TimeUnit.SECONDS);
+
+        // Book and cancel on the following days while snapshots are cut
+        int[] live = new int[4];
+        long until = System.currentTimeMillis() + 2_500;
+        while (System.currentTimeMillis() < until) bookAndCancel(client, day.plusDays(1), live);
+
+        // After the last snapshot cut: records only in the journal tail
+        client.cancelAsync("Fuzzy", d).get(5, TimeUnit.SECONDS);
+        client.confirmAsync("Fuzzy", c).get(5, TimeUnit.SECONDS);
+        String e = client.bookRoomAsync("Fuzzy", 1, day, 2).get(5, TimeUnit.SECONDS).reservationNumber();
+        bookAndCancel(client, day.plusDays(1), live);
+        // The snapshot directory again after the journal: a snapshot cut meanwhile may have
+        // dropped segments the first one needs, but then the newer one is there
+        java.nio.file.Path source = java.nio.file.Path.of(dataDir, "Fuzzy");
+        java.nio.file.Path copy = java.nio.file.Path.of(dataDir + "-crash");
+        copyTree(source.resolve("snapshot"), copy.resolve("Fuzzy/snapshot"));
+        copyTree(source.resolve("journal"), copy.resolve("Fuzzy/journal"));
+        copyTree(source.resolve("snapshot"), copy.resolve("Fuzzy/snapshot"));
+        fuzzy.stop();
+        boolean truncated = !java.nio.file.Files.exists(copy.resolve("Fuzzy/journal/00000000000000000001.seg"));
+
+        System.setProperty("building.dataDir", copy.toString());
+        BuildingService restored = new BuildingService("Fuzzy", 50);
+        System.setProperty("building.dataDir", dataDir);
+        System.clearProperty("building.journalSegmentBytes");
+        System.clearProperty("building.snapshotIntervalSeconds");
+        restored.start();
+
+        String states = String.join(",",
+                client.confirmAsync("Fuzzy", a).get(5, TimeUnit.SECONDS).message(),
+                client.cancelAsync("Fuzzy", b).get(5, TimeUnit.SECONDS).message(),
+                client.confirmAsync("Fuzzy", c).get(5, TimeUnit.SECONDS).message(),
+                client.cancelAsync("Fuzzy", d).get(5, TimeUnit.SECONDS).message(),
+                client.confirmAsync("Fuzzy", e).get(5, TimeUnit.SECONDS).message());
+        BookingReply query = client.queryAvailabilityAsync("Fuzzy", day, day.plusDays(4)).get(5, TimeUnit.SECONDS);
+        String free = query.success() ? java.util.Arrays.toString(Availability.parse(query.message())) : query.message();
+        String expected = java.util.Arrays.toString(new int[]{47, 50 - live[0], 50 - live[1], 50 - live[2], 50 - live[3]});
+        client.stop();
+        restored.stop();
+
+        boolean pass = truncated && expected.equals(free)
+                && "Already confirmed,Already canceled,Already confirmed,Already canceled,Confirmed".equals(states);
+        System.out.printf("Observed: truncated=%s, states=%s, free=%s (expected %s) -> %s%n", truncated, states, free,
+                expected, pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Books a wave of holds over four consecutive days and cancels every other one,
+     * pipelined, counting the holds left per day.
+     *
+     * @param client the client to book with
+     * @param first  the first of the four days
+     * @param live   the live holds per day, updated
+     * @throws Exception if a request fails or times out
+     */
+    private static void bookAndCancel(ClientAgent client, LocalDate first, int[] live) throws Exception {
+        java.util.List<CompletableFuture<BookingReply>> books = new java.util.ArrayList<>();
+        for (int i = 0; i < 24; i++) books.add(client.bookRoomAsync("Fuzzy", 1, first.plusDays(i % 4), 1));
+        java.util.List<CompletableFuture<BookingReply>> cancels = new java.util.ArrayList<>();
+        for (int i = 0; i < books.size(); i++) {
+            BookingReply r = books.get(i).get(5, TimeUnit.SECONDS);
+            if (!r.success()) continue;
+            live[i % 4]++;
+            if ((i / 4) % 2 == 0 && live[i % 4] > 4) {
+                cancels.add(client.cancelAsync("Fuzzy", r.reservationNumber()));
+                live[i % 4]--;
+            }
+        }
+        for (CompletableFuture<BookingReply> f : cancels) f.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Copies a directory tree, e.g. a building's data directory as a crash would leave it.
+     * Files deleted while copying (dropped segments, replaced snapshots) are skipped.
+     *
+     * @param from the directory to copy
+     * @param to   the target, created
+     * @throws java.io.IOException if copying fails
+     */
+    private static void copyTree(java.nio.file.Path from, java.nio.file.Path to) throws java.io.IOException {
+        java.nio.file.Files.createDirectories(to.getParent());
+        try (java.util.stream.Stream<java.nio.file.Path> paths = java.nio.file.Files.walk(from)) {
+            for (java.nio.file.Path p : (Iterable<java.nio.file.Path>) paths::iterator) {
+                try {
+                    java.nio.file.Files.copy(p, to.resolve(from.relativize(p).toString()),
+                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                } catch (java.nio.file.NoSuchFileException | java.nio.file.DirectoryNotEmptyException gone) {
+                    // deleted meanwhile, or a directory copied before
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests idempotent booking: a request resent with the same request id is answered with
+     * the original reply, also after a restart, instead of taking a second hold. A refused
+     * request is not remembered: resent once a room is free again, it books.
+     *
+     * @return true if the request booked once, false otherwise
+     * @throws Exception if client or building operations fail
+     */
+    private static boolean testResentRequestBooksOnce() throws Exception {
+        System.out.println("\n[Test] Resent booking request — same reply, one hold");
+        ClientAgent client = new ClientAgent("RetryClient");
+        client.start();
+
+        LocalDate date = LocalDate.now().plusDays(13);
+        BookingRequest request = new BookingRequest("BuildingA", 1, date, null, 2).withRequestId("retry-1");
+        Duration timeout = Duration.ofSeconds(5);
+        java.util.List<CompletableFuture<BookingReply>> sends = new java.util.ArrayList<>();
+        for (int i = 0; i < 3; i++) sends.add(client.bookRoomAsync(request, timeout));
+        java.util.Set<String> ids = new java.util.HashSet<>();
+        boolean allBooked = true;
+        for (CompletableFuture<BookingReply> f : sends) {
+            BookingReply r = f.get(5, TimeUnit.SECONDS);
+            allBooked &= r.success();
+            ids.add(r.reservationNumber());
+        }
+
+        building.stop();
+        building = new BuildingService("BuildingA", 1);
+        building.start();
+
+        BookingReply afterRestart = client.bookRoomAsync(request, timeout).get(5, TimeUnit.SECONDS);
+        BookingReply other = client.bookRoomAsync(request.withRequestId("retry-2"), timeout).get(5, TimeUnit.SECONDS);
+        if (allBooked) client.cancelAsync("BuildingA", ids.iterator().next()).get(5, TimeUnit.SECONDS);
+        BookingReply otherAgain = client.bookRoomAsync(request.withRequestId("retry-2"), timeout).get(5, TimeUnit.SECONDS);
+        if (otherAgain.success()) client.cancelAsync("BuildingA", otherAgain.reservationNumber()).get(5, TimeUnit.SECONDS);
+        client.stop();
+
+        boolean pass = allBooked && ids.size() == 1 && afterRestart.success()
+                && ids.contains(afterRestart.reservationNumber()) && !other.success() && otherAgain.success();
+        System.out.printf("Observed: replies=%d, reservations=%d, sameAfterRestart=%s, otherRequest=%s, "
+                        + "otherResent=%s -> %s%n",
+                sends.size(), ids.size(), ids.contains(afterRestart.reservationNumber()), other.success(),
+                otherAgain.success(), pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests availability queries: free rooms per day follow a booking and its cancellation,
+     * and an invalid range is refused.
+     *
+     * @return true if every query reported the expected free rooms, false otherwise
+     * @throws Exception if client operations fail
+     */
+    private static boolean testAvailabilityQuery() throws Exception {
+        System.out.println("\n[Test] Availability query — free rooms per day without booking");
+        ClientAgent client = new ClientAgent("AvailabilityClient");
+        client.start();
+
+        LocalDate from = LocalDate.now().plusDays(70);
+        BookingReply booked = client.bookRoomAsync("BuildingA", 1, from.plusDays(1), LocalTime.of(9, 0), 2,
+                Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+        BookingReply whileBooked = client.queryAvailabilityAsync("BuildingA", from, from.plusDays(2)).get(5, TimeUnit.SECONDS);
+        if (booked.success()) client.cancelAsync("BuildingA", booked.reservationNumber()).get(5, TimeUnit.SECONDS);
+        BookingReply afterCancel = client.queryAvailabilityAsync("BuildingA", from, from.plusDays(2)).get(5, TimeUnit.SECONDS);
+        BookingReply backwards = client.queryAvailabilityAsync("BuildingA", from, from.minusDays(1)).get(5, TimeUnit.SECONDS);
+        client.stop();
+
+        String during = whileBooked.success() ? java.util.Arrays.toString(Availability.parse(whileBooked.message())) : "n/a";
+        String after = afterCancel.success() ? java.util.Arrays.toString(Availability.parse(afterCancel.message())) : "n/a";
+        boolean pass = booked.success() && "[1, 0, 1]".equals(during) && "[1, 1, 1]".equals(after)
+                && !backwards.success();
+        System.out.printf("Observed: booked=%s, free=%s, afterCancel=%s, invalidRange=%s -> %s%n",
+                booked.success(), during, after, backwards.success(), pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests that canceled reservations leave the live map but still answer repeated
+     * requests, also after a restart: a second cancel is idempotent and confirm fails.
+     *
+     * @return true if the archived reservation answers correctly, false otherwise
+     * @throws Exception if client or building operations fail
+     */
+    private static boolean testArchivedLookups() throws Exception {
+        System.out.println("\n[Test] Archived reservations — repeated cancel/confirm after restart");
+        ClientAgent client = new ClientAgent("ArchiveClient");
+        client.start();
+
+        LocalDate date = LocalDate.now().plusDays(8);
+        BookingReply booked = client.bookRoomAsync("BuildingA", 1, date, 2).get();
+        BookingReply canceled = booked.success()
+                ? client.cancelAsync("BuildingA", booked.reservationNumber()).get() : booked;
+
+        building.stop();
+        building = new BuildingService("BuildingA", 1);
+        building.start();
+
+        BookingReply again = booked.success()
+                ? client.cancelAsync("BuildingA", booked.reservationNumber()).get() : booked;
+        BookingReply confirm = booked.success()
+                ? client.confirmAsync("BuildingA", booked.reservationNumber()).get() : booked;
+        client.stop();
+
+        boolean pass = booked.success() && canceled.success() && again.success()
+                && "Already canceled".equals(again.message()) && !confirm.success();
+        System.out.printf("Observed: booked=%s, canceled=%s, cancelAgain=%s, confirm=%s -> %s%n",
+                booked.success(), canceled.message(), again.message(), confirm.success(), pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests per-key ordering: a confirm and a cancel of the same reservation are sent back to
+     * back without waiting, for many reservations at once. With several lanes they run in
+     * parallel across reservations, but each confirm must still be applied before its cancel
+     * (given a single inbox consumer, which receives them in the order they were sent).
+     *
+     * @return true if every confirm and then every cancel succeeds, false otherwise
+     * @throws Exception if client operations fail
+     */
+    private static boolean testKeyedOrdering() throws Exception {
+        final int n = 40;
+        System.out.println("\n[Test] Keyed ordering (" + n + " pipelined confirm+cancel pairs)");
+        if (AppConfig.getBuildingConsumers() > 1) {
+            // Several consumers receive the pair in either order; only one keeps arrival order
+            System.out.println("Observed: skipped with building.consumers > 1 -> PASS");
+            return true;
+        }
+        ClientAgent client = new ClientAgent("OrderClient");
+        client.start();
+
+        LocalDate first = LocalDate.now().plusDays(200);
+        java.util.List<CompletableFuture<BookingReply>> books = new java.util.ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            books.add(client.bookRoomAsync("BuildingA", 1, first.plusDays(i), 1));
+        }
+        CompletableFuture.allOf(books.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        java.util.List<CompletableFuture<BookingReply>> confirms = new java.util.ArrayList<>();
+        java.util.List<CompletableFuture<BookingReply>> cancels = new java.util.ArrayList<>();
+        for (CompletableFuture<BookingReply> f : books) {
+            BookingReply r = f.join();
+            if (!r.success()) continue;
+            confirms.add(client.confirmAsync("BuildingA", r.reservationNumber()));
+            cancels.add(client.cancelAsync("BuildingA", r.reservationNumber()));
+        }
+        CompletableFuture.allOf(cancels.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        long confirmed = confirms.stream().filter(f -> "Confirmed".equals(f.join().message())).count();
+        long canceled = cancels.stream().filter(f -> "Canceled".equals(f.join().message())).count();
+        client.stop();
+
+        boolean pass = confirmed == n && canceled == n;
+        System.out.printf("Observed: confirmed=%d, canceled=%d -> %s%n", confirmed, canceled, pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests a building host serving two buildings from one transport and thread pool.
+     * Each building must answer on its own and keep its own capacity.
+     *
+     * @return true if both buildings book independently, false otherwise
+     * @throws Exception if host or client operations fail
+     */
+    private static boolean testBuildingHost() throws Exception {
+        System.out.println("\n[Test] Building host (two buildings, shared connection and threads)");
+        BuildingHost host = new BuildingHost();
+        int started = host.start(BuildingHost.parseBuildings("HostB1:1,HostB2:2", 1));
+        Thread.sleep(300); // let the agent see the announcements
+
+        ClientAgent client = new ClientAgent("HostClient");
+        client.start();
+        LocalDate date = LocalDate.now().plusDays(3);
+        BookingReply b1 = client.bookRoomAsync("HostB1", 1, date, 1).get(5, TimeUnit.SECONDS);
+        BookingReply b2 = client.bookRoomAsync("HostB2", 2, date, 1).get(5, TimeUnit.SECONDS);
+        BookingReply full = client.bookRoomAsync("HostB1", 1, date, 1).get(5, TimeUnit.SECONDS);
+        client.stop();
+        host.stop();
+
+        boolean pass = started == 2 && b1.success() && b2.success() && !full.success();
+        System.out.printf("Observed: started=%d, b1=%s, b2=%s, b1Full=%s -> %s%n",
+                started, b1.success(), b2.success(), !full.success(), pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests a building split into two date partitions served by separate instances.
+     * Bookings on consecutive days land in different partitions; confirm and cancel must
+     * find their partition from the reservation number alone, and an availability query over
+     * both partitions is answered for all its days.
+     *
+     * @return true if every booking, confirm and cancel succeeds, false otherwise
+     * @throws Exception if host or client operations fail
+     */
+    private static boolean testDatePartitions() throws Exception {
+        System.out.println("\n[Test] Date partitions (one building, two instances)");
+        BuildingHost host = new BuildingHost();
+        int started = host.start(BuildingHost.parseBuildings("Hot:1:0/2,Hot:1:1/2", 1));
+        Thread.sleep(300); // let the agent see the announcements
+
+        ClientAgent client = new ClientAgent("PartitionClient");
+        client.start();
+        LocalDate first = LocalDate.now().plusDays(3);
+        int ok = 0;
+        for (int i = 0; i < 4; i++) {
+            BookingReply b = client.bookRoomAsync("Hot", 1, first.plusDays(i), 1).get(5, TimeUnit.SECONDS);
+            if (!b.success()) continue;
+            BookingReply c = client.confirmAsync("Hot", b.reservationNumber()).get(5, TimeUnit.SECONDS);
+            BookingReply x = client.cancelAsync("Hot", b.reservationNumber()).get(5, TimeUnit.SECONDS);
+            if (c.success() && "Canceled".equals(x.message())) ok++;
+        }
+        // A range over both partitions is answered for every day, not only the first one's
+        BookingReply held = client.bookRoomAsync("Hot", 1, first.plusDays(1), 1).get(5, TimeUnit.SECONDS);
+        BookingReply query = client.queryAvailabilityAsync("Hot", first, first.plusDays(3)).get(5, TimeUnit.SECONDS);
+        String free = query.success() ? java.util.Arrays.toString(Availability.parse(query.message())) : query.message();
+        if (held.success()) client.cancelAsync("Hot", held.reservationNumber()).get(5, TimeUnit.SECONDS);
+        client.stop();
+        host.stop();
+
+        boolean pass = started == 2 && ok == 4 && held.success() && "[1, 0, 1, 1]".equals(free);
+        System.out.printf("Observed: started=%d, bookConfirmCancel=%d/4, freeOverPartitions=%s -> %s%n", started, ok,
+                free, pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests hot-standby replication: a follower keeps a copy of a primary's reservations
+     * and capacity, and answers for them once the primary is gone.
+     *
+     * @return true if the follower took over with the primary's state, false otherwise
+     * @throws Exception if client operations fail
+     */
+    private static boolean testStandbyTakeover() throws Exception {
+        System.out.println("\n[Test] Hot standby takes over a stopped primary");
+        String dataDir = System.getProperty("building.dataDir");
+        System.setProperty("building.replication", "true");
+        BuildingService primary = new BuildingService("Replicated", 2);
+        // The follower would run elsewhere; here it only needs its own data directory
+        System.setProperty("building.role", "follower");
+        System.setProperty("building.failoverMs", "1500");
+        System.setProperty("building.dataDir", dataDir + "/standby");
+        BuildingService standby = new BuildingService("Replicated", 2);
+        System.setProperty("building.dataDir", dataDir);
+        System.clearProperty("building.role");
+        System.clearProperty("building.failoverMs");
+        System.clearProperty("building.replication");
+
+        primary.start();
+        standby.start();
+        Thread.sleep(500); // announcement and first sync
+
+        ClientAgent client = new ClientAgent("StandbyClient");
+        client.start();
+        LocalDate day = LocalDate.now().plusDays(7);
+        BookingReply first = client.bookRoomAsync("Replicated", 1, day, 2).get(5, TimeUnit.SECONDS);
+        BookingReply second = client.bookRoomAsync("Replicated", 1, day.plusDays(1), 2).get(5, TimeUnit.SECONDS);
+        BookingReply confirmed = client.confirmAsync("Replicated", first.reservationNumber()).get(5, TimeUnit.SECONDS);
+        Thread.sleep(300);
+        boolean standingBy = standby.isStandby();
+
+        primary.stop();
+        Thread.sleep(2500); // failover timeout plus a check tick
+
+        // The follower knows the pending hold, the confirmed booking and the booked capacity
+        BookingReply c2 = client.confirmAsync("Replicated", second.reservationNumber()).get(5, TimeUnit.SECONDS);
+        BookingReply x1 = client.cancelAsync("Replicated", first.reservationNumber()).get(5, TimeUnit.SECONDS);
+        BookingReply full = client.bookRoomAsync("Replicated", 2, day.plusDays(1), 2).get(5, TimeUnit.SECONDS);
+        client.stop();
+        boolean tookOver = !standby.isStandby();
+        standby.stop();
+
+        boolean pass = first.success() && second.success() && confirmed.success() && standingBy && tookOver
+                && c2.success() && "Confirmed".equals(c2.message()) && "Canceled".equals(x1.message())
+                && !full.success();
+        System.out.printf("Observed: standingBy=%s, tookOver=%s, confirm=%s, cancel=%s, overbook=%s -> %s%n",
+                standingBy, tookOver, c2.message(), x1.message(), full.success(), pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests exclusive ownership: of two instances started for the same building only one
+     * serves it, so its capacity cannot be booked twice; the other takes over once the
+     * owner stops, with the owner's reservations (both share the data directory). A third
+     * instance that does not declare shared storage refuses to stand by.
+     *
+     * @return true if exactly one instance served at a time, false otherwise
+     * @throws Exception if client operations fail
+     */
+    private static boolean testExclusiveOwnership() throws Exception {
+        System.out.println("\n[Test] Exclusive ownership of a building");
+        System.setProperty("building.ownershipRetryMs", "200");
+        BuildingService a = new BuildingService("Exclusive", 1);
+        BuildingService cold = new BuildingService("Exclusive", 1);
+        System.setProperty("building.sharedStorage", "true");
+        BuildingService b = new BuildingService("Exclusive", 1);
+        System.clearProperty("building.sharedStorage");
+        System.clearProperty("building.ownershipRetryMs");
+
+        a.start();
+        boolean refused = false;
+        try {
+            cold.start(); // neither a follower nor on shared storage
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        b.start();
+        Thread.sleep(500);
+        boolean oneOwner = refused && !a.isStandby() && b.isStandby();
+
+        ClientAgent client = new ClientAgent("OwnershipClient");
+        client.start();
+        LocalDate day = LocalDate.now().plusDays(9);
+        java.util.List<CompletableFuture<BookingReply>> pending = new java.util.ArrayList<>();
+        for (int i = 0; i < 6; i++) pending.add(client.bookRoomAsync("Exclusive", 1, day, 2));
+        int booked = 0;
+        String resId = null;
+        for (CompletableFuture<BookingReply> f : pending) {
+            BookingReply r = f.get(5, TimeUnit.SECONDS);
+            if (r.success()) {
+                booked++;
+                resId = r.reservationNumber();
+            }
+        }
+
+        a.stop();
+        Thread.sleep(1000); // a few ownership retries
+        boolean tookOver = !b.isStandby();
+        BookingReply confirm = resId == null ? null : client.confirmAsync("Exclusive", resId).get(5, TimeUnit.SECONDS);
+        BookingReply again = client.bookRoomAsync("Exclusive", 1, day, 2).get(5, TimeUnit.SECONDS);
+        client.stop();
+        b.stop();
+
+        boolean pass = oneOwner && booked == 1 && tookOver && confirm != null && "Confirmed".equals(confirm.message())
+                && !again.success();
+        System.out.printf("Observed: oneOwner=%s, booked=%d of 6, tookOver=%s, confirm=%s, rebook=%s -> %s%n",
+                oneOwner, booked, tookOver, confirm == null ? "null" : confirm.message(), again.success(),
+                pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests reservation ids without a broker: the bit layout, the Crockford string form
+     * (round trip, lower case, the O/I/L aliases, and rejecting values beyond 64 bits),
+     * strictly increasing ids past a millisecond's 4096 sequence numbers and after an
+     * observed id from a clock ahead of this one, and partition routing by id.
+     *
+     * @return true if every check holds, false otherwise
+     */
+    private static boolean testReservationIds() {
+        System.out.println("\n[Test] Reservation ids — layout, format and ordering");
+        ReservationIds gen = new ReservationIds(5);
+        long before = System.currentTimeMillis() - ReservationIds.EPOCH_MILLIS;
+        long id = gen.next();
+        long after = System.currentTimeMillis() - ReservationIds.EPOCH_MILLIS;
+        long ts = ReservationIds.timestampOf(id);
+        boolean layout = id > 0 && ReservationIds.shardOf(id) == 5 && ts >= before && ts <= after;
+
+        String s = ReservationIds.format(id);
+        String aliased = s.toLowerCase().replace('0', 'o').replace('1', 'l');
+        boolean format = s.length() == ReservationIds.LENGTH
+                && ReservationIds.parse(s) == id
+                && ReservationIds.parse(aliased) == id
+                && ReservationIds.parse(s.replace('1', 'I')) == id
+                && ReservationIds.format(Long.MAX_VALUE).charAt(0) == '7'
+                && ReservationIds.parse("8000000000000") == -1 // 65th bit set
+                && ReservationIds.parse("U000000000000") == -1 // not in the alphabet
+                && ReservationIds.parse(s.substring(1)) == -1
+                && ReservationIds.key(s) == id
+                && ReservationIds.key(java.util.UUID.randomUUID().toString()) < 0;
+
+        boolean increasing = true;
+        long prev = id;
+        for (int i = 0; i < 20_000; i++) { // several milliseconds' worth of sequence numbers
+            long next = gen.next();
+            increasing &= next > prev && ReservationIds.shardOf(next) == 5;
+            prev = next;
+        }
+        // An id from a clock an hour ahead, e.g. restored from disk after the clock was set back
+        long ahead = (ReservationIds.timestampOf(prev) + 3_600_000L)
+                << (ReservationIds.SHARD_BITS + ReservationIds.SEQUENCE_BITS)
+                | 5L << ReservationIds.SEQUENCE_BITS | 7;
+        gen.observe(ahead);
+        boolean observed = gen.next() > ahead;
+
+        PartitionScheme scheme = new PartitionScheme(3, 1);
+        boolean routed = true;
+        for (int p = 0; p < 3; p++) {
+            String rid = new ReservationIds(scheme.shard("Routed", p)).nextString();
+            routed &= scheme.ofReservation("Routed", rid) == p
+                    && scheme.ofReservation("Routed", rid.toLowerCase()) == p;
+        }
+
+        boolean pass = layout && format && increasing && observed && routed;
+        System.out.printf("Observed: layout=%s, format=%s, increasing=%s, afterObserve=%s, routed=%s -> %s%n",
+                layout, format, increasing, observed, routed, pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests reservation lookups after many removals: every third of a few hundred holds is
+     * canceled, which deletes it from the building's open-addressing id map, and each
+     * remaining hold must still be found by its id to be confirmed.
+     *
+     * @return true if every remaining hold was confirmed, false otherwise
+     * @throws Exception if client or building operations fail
+     */
+    private static boolean testLookupsAfterRemovals() throws Exception {
+        System.out.println("\n[Test] Reservation lookups after removals");
+        BuildingService many = new BuildingService("Many", 600);
+        many.start();
+        Thread.sleep(300); // let the agent see the announcement
+
+        ClientAgent client = new ClientAgent("ManyClient");
+        client.start();
+        LocalDate day = LocalDate.now().plusDays(12);
+        java.util.List<CompletableFuture<BookingReply>> books = new java.util.ArrayList<>();
+        for (int i = 0; i < 600; i++) books.add(client.bookRoomAsync("Many", 1, day, 1));
+        java.util.List<String> ids = new java.util.ArrayList<>();
+        for (CompletableFuture<BookingReply> f : books) {
+            BookingReply r = f.get(10, TimeUnit.SECONDS);
+            if (r.success()) ids.add(r.reservationNumber());
+        }
+
+        java.util.List<CompletableFuture<BookingReply>> cancels = new java.util.ArrayList<>();
+        for (int i = 0; i < ids.size(); i += 3) cancels.add(client.cancelAsync("Many", ids.get(i)));
+        int canceled = 0;
+        for (CompletableFuture<BookingReply> f : cancels) {
+            if ("Canceled".equals(f.get(10, TimeUnit.SECONDS).message())) canceled++;
+        }
+        java.util.List<CompletableFuture<BookingReply>> confirms = new java.util.ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 3 != 0) confirms.add(client.confirmAsync("Many", ids.get(i)));
+        }
+        int confirmed = 0;
+        for (CompletableFuture<BookingReply> f : confirms) {
+            if ("Confirmed".equals(f.get(10, TimeUnit.SECONDS).message())) confirmed++;
+        }
+        client.stop();
+        many.stop();
+
+        boolean pass = ids.size() == 600 && canceled == 200 && confirmed == 400;
+        System.out.printf("Observed: booked=%d, canceled=%d, confirmed=%d of 400 -> %s%n", ids.size(), canceled,
+                confirmed, pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
+    /**
+     * Tests that a failed journal append fences the building: the journal directory is moved
+     * away, so the next segment cannot be created, and cancels run until one of them needs
+     * it. That cancel must not be answered (it was not recorded), and once the directory is
+     * back a restarted instance applies it exactly once, so the day's free rooms match the
+     * cancels.
+     *
+     * @return true if the failed cancel was neither answered nor lost, false otherwise
+     * @throws Exception if client, building or file operations fail
+     */
+    private static boolean testJournalFailureFences() throws Exception {
+        System.out.println("\n[Test] Failed journal append fences the building");
+        System.setProperty("building.journalSegmentBytes", "4096");
+        BuildingService faulty = new BuildingService("Faulty", 100);
+        faulty.start();
+        Thread.sleep(300); // let the agent see the announcement
+
+        ClientAgent client = new ClientAgent("FaultClient");
+        client.start();
+        LocalDate day = LocalDate.now().plusDays(11);
+        java.util.List<CompletableFuture<BookingReply>> books = new java.util.ArrayList<>();
+        for (int i = 0; i < 100; i++) books.add(client.bookRoomAsync("Faulty", 1, day, 1));
+        java.util.List<String> ids = new java.util.ArrayList<>();
+        for (CompletableFuture<BookingReply> f : books) {
+            BookingReply r = f.get(10, TimeUnit.SECONDS);
+            if (r.success()) ids.add(r.reservationNumber());
+        }
+
+        java.nio.file.Path journal = java.nio.file.Path.of(System.getProperty("building.dataDir"), "Faulty", "journal");
+        java.nio.file.Path moved = journal.resolveSibling("journal-moved");
+        java.nio.file.Files.move(journal, moved);
+        int canceled = 0;
+        String failedId = null;
+        String failedReply = null;
+        for (String id : ids) {
+            BookingReply r = client.cancelAsync("Faulty", id, Duration.ofSeconds(2)).handle((v, e) -> v).get();
+            if (r != null && "Canceled".equals(r.message())) {
+                canceled++;
+                continue;
+            }
+            failedId = id;
+            failedReply = r == null ? "none" : r.message();
+            break;
+        }
+        boolean fenced = faulty.isStandby();
+        faulty.stop();
+        java.nio.file.Files.move(moved, journal);
+
+        BuildingService restarted = new BuildingService("Faulty", 100);
+        System.clearProperty("building.journalSegmentBytes");
+        restarted.start();
+        BookingReply again = failedId == null ? null : client.cancelAsync("Faulty", failedId).get(5, TimeUnit.SECONDS);
+        BookingReply query = client.queryAvailabilityAsync("Faulty", day, day).get(5, TimeUnit.SECONDS);
+        int free = query.success() ? Availability.parse(query.message())[0] : -1;
+        client.stop();
+        restarted.stop();
+
+        boolean pass = ids.size() == 100 && failedId != null && "none".equals(failedReply) && fenced
+                && again.success() && free == canceled + 1;
+        System.out.printf("Observed: canceled=%d, failedReply=%s, fenced=%s, cancelAfterRestart=%s, free=%d -> %s%n",
+                canceled, failedReply, fenced, again == null ? "null" : again.message(), free, pass ? "PASS" : "FAIL");
+        return pass;
+    }
+
     /**
      * Helper method to safely extract payload string from a message.
      *
@@ -0,0 +1,65 @@
+package main.transport;
+
+import com.rabbitmq.client.AMQP;
+
+import java.io.IOException;
+
+/**
+ * A message handed to a consumer, together with the means to acknowledge it.
+ */
+public interface Delivery {
+
+    /**
+     * Gets the message properties.
+     *
+     * @return the AMQP properties (never null)
+     */
+    AMQP.BasicProperties properties();
+
+    /**
+     * Gets the message body.
+     *
+     * @return the raw bytes as published
+     */
+    byte[] body();
+
+    /**
+     * Gets the routing key the message was published with.
+     *
+     * @return the routing key
+     */
+    String routingKey();
+
+    /**
+     * Tells whether this message was delivered before and requeued.
+     *
+     * @return true for redeliveries
+     */
+    boolean redelivered();
+
+    /**
+     * Acknowledges the message; it will not be delivered again.
+     *
+     * @throws IOException if the acknowledgement fails
+     */
+    default void ack() throws IOException {
+        ack(false);
+    }
+
+    /**
+     * Acknowledges the message, and with {@code multiple} also every earlier unacknowledged
+     * delivery of the same consumer, so a batch is settled with a single acknowledgement.
+     *
+     * @param multiple true to acknowledge all deliveries of the consumer up to this one
+     * @throws IOException if the acknowledgement fails
+     */
+    void ack(boolean multiple) throws IOException;
+
+    /**
+     * Rejects the message.
+     *
+     * @param requeue true to put the message back on the queue for redelivery
+     * @throws IOException if the rejection fails
+     */
+    void nack(boolean requeue) throws IOException;
+}
@@ -0,0 +1,18 @@
+package main.transport;
+
+import java.io.IOException;
+
+/**
+ * Callback invoked for every message delivered to a consumer.
+ */
+@FunctionalInterface
+public interface DeliveryHandler {
+
+    /**
+     * Handles one delivery.
+     *
+     * @param delivery the received message
+     * @throws IOException if handling fails
+     */
+    void handle(Delivery delivery) throws IOException;
+}
@@ -0,0 +1,381 @@
+package main.transport;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-JVM message broker emulating the AMQP semantics the system relies on:
+ *  - fanout exchanges (cr.buildings.fanout): every bound queue gets a copy,
+ *  - direct exchanges (cr.building.direct): queues bound with the exact routing key,
+ *  - the default exchange: publishing to "" addresses a queue by name,
+ *  - shared queues (cr.agents.inbox): consumers receive messages round-robin,
+ *  - manual ack/nack with requeue, and requeue of unacknowledged messages when a
+ *    consumer is cancelled or its connection closes,
+ *  - per-consumer prefetch limits and multiple acknowledgements (ack up to a tag),
+ *  - exclusive queues (declared, consumed and deleted only by their connection),
+ *    auto-delete and server-named queues.
+ * <p>
+ * Each consumer has its own dispatch thread, so deliveries of one consumer are
+ * handled sequentially and in order, like on a RabbitMQ channel.
+ * Clients connect through {@link InMemoryTransport}.
+ */
+public final class InMemoryBroker {
+
+    private static final InMemoryBroker SHARED = new InMemoryBroker();
+    private static final AMQP.BasicProperties EMPTY_PROPS = new AMQP.BasicProperties();
+
+    private final Map<String, Exchange> exchanges = new ConcurrentHashMap<>();
+    private final Map<String, Queue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong queueSeq = new AtomicLong();
+    private final AtomicLong consumerSeq = new AtomicLong();
+
+    /**
+     * Gets the process-wide broker used by {@link Transports} for the "memory" transport.
+     *
+     * @return the shared broker
+     */
+    public static InMemoryBroker shared() {
+        return SHARED;
+    }
+
+    // topology
+
+    void declareExchange(String name, BuiltinExchangeType type) throws IOException {
+        if (type != BuiltinExchangeType.FANOUT && type != BuiltinExchangeType.DIRECT) {
+            throw new IOException("unsupported exchange type: " + type);
+        }
+        Exchange ex = exchanges.computeIfAbsent(name, n -> new Exchange(type));
+        if (ex.type != type) {
+            throw new IOException("PRECONDITION_FAILED - inequivalent arg 'type' for exchange '" + name + "'");
+        }
+    }
+
+    String declareQueue(QueueSpec spec, InMemoryTransport owner) throws IOException {
+        String name = spec.name() != null ? spec.name() : "amq.gen-" + queueSeq.incrementAndGet();
+        Queue q = queues.computeIfAbsent(name, n -> new Queue(n, spec, spec.exclusive() ? owner : null));
+        if (q.spec.durable() != spec.durable()) {
+            throw new IOException("PRECONDITION_FAILED - inequivalent arg 'durable' for queue '" + name + "'");
+        }
+        if (q.owner != null && q.owner != owner) {
+            throw new IOException("RESOURCE_LOCKED - cannot obtain exclusive access to queue '" + name + "'");
+        }
+        return name;
+    }
+
+    void bindQueue(String queue, String exchange, String routingKey) throws IOException {
+        Queue q = requireQueue(queue);
+        Exchange ex = exchanges.get(exchange);
+        if (ex == null) throw new IOException("NOT_FOUND - no exchange '" + exchange + "'");
+        ex.bind(routingKey, q);
+    }
+
+    void deleteQueue(String name, InMemoryTransport owner) throws IOException {
+        Queue q = queues.get(name);
+        if (q == null) return;
+        if (q.owner != null && q.owner != owner) {
+            throw new IOException("RESOURCE_LOCKED - cannot obtain exclusive access to queue '" + name + "'");
+        }
+        deleteQueue(q);
+    }
+
+    private Queue requireQueue(String queue) throws IOException {
+        Queue q = queues.get(queue);
+        if (q == null) throw new IOException("NOT_FOUND - no queue '" + queue + "'");
+        return q;
+    }
+
+    private void deleteQueue(Queue q) {
+        if (queues.remove(q.name, q)) {
+            for (Exchange ex : exchanges.values()) ex.unbind(q);
+        }
+    }
+
+    /**
+     * Deletes the exclusive queues owned by a closing connection.
+     */
+    void releaseExclusive(InMemoryTransport owner) {
+        for (Queue q : queues.values()) {
+            if (q.owner == owner) deleteQueue(q);
+        }
+    }
+
+    // messaging
+
+    void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) throws IOException {
+        Message m = new Message(routingKey, props != null ? props : EMPTY_PROPS, body, false);
+        if (exchange.isEmpty()) {
+            Queue q = queues.get(routingKey);
+            if (q != null) q.enqueue(m);
+            return;
+        }
+        Exchange ex = exchanges.get(exchange);
+        if (ex == null) throw new IOException("NOT_FOUND - no exchange '" + exchange + "'");
+        ex.route(m);
+    }
+
+    Consumer consume(String queue, boolean autoAck, int prefetch, DeliveryHandler handler, InMemoryTransport owner)
+            throws IOException {
+        Queue q = requireQueue(queue);
+        if (q.owner != null && q.owner != owner) {
+            throw new IOException("RESOURCE_LOCKED - cannot obtain exclusive access to locked queue '" + queue + "'");
+        }
+        Consumer c = new Consumer("mem.ctag-" + consumerSeq.incrementAndGet(), q, autoAck, prefetch, handler);
+        q.addConsumer(c);
+        return c;
+    }
+
+    /**
+     * A message as stored in a queue.
+     */
+    private record Message(String routingKey, AMQP.BasicProperties props, byte[] body, boolean redelivered) {
+        Message redelivery() {
+            return redelivered ? this : new Message(routingKey, props, body, true);
+        }
+    }
+
+    /**
+     * Fanout or direct exchange with its bindings.
+     */
+    private static final class Exchange {
+        final BuiltinExchangeType type;
+        final Set<Queue> fanout = new CopyOnWriteArraySet<>();
+        final Map<String, Set<Queue>> direct = new ConcurrentHashMap<>();
+
+        Exchange(BuiltinExchangeType type) {
+            this.type = type;
+        }
+
+        void bind(String routingKey, Queue q) {
+            if (type == BuiltinExchangeType.FANOUT) {
+                fanout.add(q);
+            } else {
+                direct.computeIfAbsent(routingKey, k -> new CopyOnWriteArraySet<>()).add(q);
+            }
+        }
+
+        void unbind(Queue q) {
+            fanout.remove(q);
+            for (Set<Queue> bound : direct.values()) bound.remove(q);
+        }
+
+        void route(Message m) {
+            Set<Queue> targets = type == BuiltinExchangeType.FANOUT ? fanout : direct.get(m.routingKey);
+            if (targets == null) return;
+            for (Queue q : targets) q.enqueue(m);
+        }
+    }
+
+    /**
+     * A queue with its ready messages and consumers. All state is guarded by the queue's monitor.
+     */
+    private final class Queue {
+        final String name;
+        final QueueSpec spec;
+        final InMemoryTransport owner;
+        private final ArrayDeque<Message> ready = new ArrayDeque<>();
+        private final List<Consumer> consumers = new ArrayList<>();
+        private int nextConsumer;
+
+        Queue(String name, QueueSpec spec, InMemoryTransport owner) {
+            this.name = name;
+            this.spec = spec;
+            this.owner = owner;
+        }
+
+        synchronized void enqueue(Message m) {
+            ready.addLast(m);
+            dispatch();
+        }
+
+        synchronized void requeue(Message m) {
+            ready.addFirst(m.redelivery());
+            dispatch();
+        }
+
+        synchronized void addConsumer(Consumer c) {
+            consumers.add(c);
+            dispatch();
+        }
+
+        /**
+         * Cancels a consumer under the queue's monitor, so no delivery can be handed to it
+         * afterwards.
+         *
+         * @return false if it was cancelled already
+         */
+        synchronized boolean removeConsumer(Consumer c) {
+            if (c.cancelled) return false;
+            c.cancelled = true;
+            consumers.remove(c);
+            if (nextConsumer >= consumers.size()) nextConsumer = 0;
+            // Unacknowledged messages go back to the front of the queue, in order
+            List<Message> unacked = new ArrayList<>(c.unacked.values());
+            c.unacked.clear();
+            for (int i = unacked.size() - 1; i >= 0; i--) ready.addFirst(unacked.get(i).redelivery());
+            if (consumers.isEmpty() && spec.autoDelete()) {
+                deleteQueue(this);
+            } else {
+                dispatch();
+            }
+            return true;
+        }
+
+        synchronized void settled(Consumer c, long tag, boolean requeue) {
+            Message m = c.unacked.remove(tag);
+            if (m != null && requeue) ready.addFirst(m.redelivery());
+            dispatch();
+        }
+
+        synchronized void settledUpTo(Consumer c, long tag) {
+            // Tags are ascending in insertion order, so the prefix up to tag is acknowledged
+            Iterator<Long> it = c.unacked.keySet().iterator();
+            while (it.hasNext() && it.next() <= tag) it.remove();
+            dispatch();
+        }
+
+        /**
+         * Hands ready messages to consumers round-robin, skipping consumers without prefetch room.
+         */
+        private void dispatch() {
+            while (!ready.isEmpty() && !consumers.isEmpty()) {
+                Consumer target = null;
+                for (int i = 0; i < consumers.size(); i++) {
+                    Consumer c = consumers.get((nextConsumer + i) % consumers.size());
+                    if (c.hasCapacity()) {
+                        target = c;
+                        nextConsumer = (nextConsumer + i + 1) % consumers.size();
+                        break;
+                    }
+                }
+                if (target == null) return;
+                target.deliver(ready.pollFirst());
+            }
+        }
+    }
+
+    /**
+     * A consumer with its own dispatch thread and unacknowledged messages.
+     */
+    final class Consumer {
+        final String tag;
+        private final Queue queue;
+        private final boolean autoAck;
+        private final int prefetch; // 0 = unlimited
+        private final DeliveryHandler handler;
+        private final ExecutorService dispatcher;
+        // Guarded by the queue's monitor; insertion order equals delivery tag order
+        private final Map<Long, Message> unacked = new LinkedHashMap<>();
+        private long nextTag;
+        private volatile boolean cancelled; // set under the queue's monitor
+
+        Consumer(String tag, Queue queue, boolean autoAck, int prefetch, DeliveryHandler handler) {
+            this.tag = tag;
+            this.queue = queue;
+            this.autoAck = autoAck;
+            this.prefetch = prefetch;
+            this.handler = handler;
+            this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "mem-consumer-" + queue.name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        // Called with the queue's monitor held
+        boolean hasCapacity() {
+            return !cancelled && (prefetch <= 0 || unacked.size() < prefetch);
+        }
+
+        // Called with the queue's monitor held
+        void deliver(Message m) {
+            long deliveryTag = ++nextTag;
+            if (!autoAck) unacked.put(deliveryTag, m);
+            dispatcher.execute(() -> {
+                if (cancelled) return; // already requeued by cancel()
+                try {
+                    handler.handle(new MemDelivery(this, deliveryTag, m));
+                } catch (Exception e) {
+                    System.err.printf("[InMemoryBroker] consumer %s on %s failed: %s%n", tag, queue.name, e);
+                }
+            });
+        }
+
+        void settle(long deliveryTag, boolean requeue) throws IOException {
+            if (autoAck) throw new IOException("PRECONDITION_FAILED - consumer " + tag + " uses autoAck");
+            queue.settled(this, deliveryTag, requeue);
+        }
+
+        void settleUpTo(long deliveryTag) throws IOException {
+            if (autoAck) throw new IOException("PRECONDITION_FAILED - consumer " + tag + " uses autoAck");
+            queue.settledUpTo(this, deliveryTag);
+        }
+
+        void cancel() {
+            // Only once no delivery can reach the dispatcher any more
+            if (queue.removeConsumer(this)) dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * A delivery from the in-memory broker.
+     */
+    private static final class MemDelivery implements Delivery {
+        private final Consumer consumer;
+        private final long deliveryTag;
+        private final Message message;
+
+        MemDelivery(Consumer consumer, long deliveryTag, Message message) {
+            this.consumer = consumer;
+            this.deliveryTag = deliveryTag;
+            this.message = message;
+        }
+
+        @Override
+        public AMQP.BasicProperties properties() {
+            return message.props();
+        }
+
+        @Override
+        public byte[] body() {
+            return message.body();
+        }
+
+        @Override
+        public String routingKey() {
+            return message.routingKey();
+        }
+
+        @Override
+        public boolean redelivered() {
+            return message.redelivered();
+        }
+
+        @Override
+        public void ack(boolean multiple) throws IOException {
+            if (multiple) {
+                consumer.settleUpTo(deliveryTag);
+            } else {
+                consumer.settle(deliveryTag, false);
+            }
+        }
+
+        @Override
+        public void nack(boolean requeue) throws IOException {
+            consumer.settle(deliveryTag, requeue);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package main.transport;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Transport} connected to an {@link InMemoryBroker}; the in-JVM
+ * counterpart of one RabbitMQ connection.
+ */
+public final class InMemoryTransport implements Transport {
+
+    private final InMemoryBroker broker;
+    private final Map<String, InMemoryBroker.Consumer> consumers = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Connects to the given broker.
+     *
+     * @param broker the broker to use
+     */
+    public InMemoryTransport(InMemoryBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public void declareExchange(String exchange, BuiltinExchangeType type, boolean durable) throws IOException {
+        ensureOpen();
+        broker.declareExchange(exchange, type);
+    }
+
+    @Override
+    public String declareQueue(QueueSpec spec) throws IOException {
+        ensureOpen();
+        return broker.declareQueue(spec, this);
+    }
+
+    @Override
+    public void deleteQueue(String queue) throws IOException {
+        ensureOpen();
+        broker.deleteQueue(queue, this);
+    }
+
+    @Override
+    public void bindQueue(String queue, String exchange, String routingKey) throws IOException {
+        ensureOpen();
+        broker.bindQueue(queue, exchange, routingKey);
+    }
+
+    @Override
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        ensureOpen();
+        broker.publish(exchange, routingKey, props, body);
+    }
+
+    @Override
+    public String consume(String queue, boolean autoAck, int prefetch, DeliveryHandler handler) throws IOException {
+        ensureOpen();
+        InMemoryBroker.Consumer c = broker.consume(queue, autoAck, prefetch, handler, this);
+        consumers.put(c.tag, c);
+        return c.tag;
+    }
+
+    @Override
+    public void cancel(String consumerTag) throws IOException {
+        InMemoryBroker.Consumer c = consumers.remove(consumerTag);
+        if (c == null) throw new IOException("unknown consumer tag: " + consumerTag);
+        c.cancel();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (InMemoryBroker.Consumer c : consumers.values()) c.cancel();
+        consumers.clear();
+        broker.releaseExclusive(this);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("transport closed");
+    }
+}
@@ -0,0 +1,57 @@
+package main.transport;
+
+import java.util.Map;
+
+/**
+ * Name and settings of a queue to declare.
+ *
+ * @param name       the queue name, or null for a server-named queue
+ * @param durable    survives a broker restart
+ * @param exclusive  only usable by the declaring connection, deleted when it closes
+ * @param autoDelete deleted when its last consumer is cancelled
+ * @param arguments  optional broker-specific arguments (may be null)
+ */
+public record QueueSpec(String name, boolean durable, boolean exclusive, boolean autoDelete,
+                        Map<String, Object> arguments) {
+
+    /**
+     * A durable queue that survives broker restarts (shared inboxes).
+     *
+     * @param name the queue name
+     * @return the queue spec
+     */
+    public static QueueSpec durable(String name) {
+        return new QueueSpec(name, true, false, false, null);
+    }
+
+    /**
+     * A non-durable queue that is deleted once its consumer goes away (reply queues).
+     *
+     * @param name the queue name
+     * @return the queue spec
+     */
+    public static QueueSpec autoDelete(String name) {
+        return new QueueSpec(name, false, false, true, null);
+    }
+
+    /**
+     * A named queue that only the declaring connection may use; the broker refuses it to
+     * every other connection (RESOURCE_LOCKED) until that one closes or deletes it, which
+     * makes it a lock held for the life of a connection.
+     *
+     * @param name the queue name
+     * @return the queue spec
+     */
+    public static QueueSpec exclusive(String name) {
+        return new QueueSpec(name, false, true, false, null);
+    }
+
+    /**
+     * A private, server-named queue owned by the declaring connection.
+     *
+     * @return the queue spec
+     */
+    public static QueueSpec serverNamed() {
+        return new QueueSpec(null, false, true, true, null);
+    }
+}
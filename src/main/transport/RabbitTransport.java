@@ -0,0 +1,224 @@
+package main.transport;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import main.config.AppConfig;
+import main.util.ChannelPool;
+import main.util.DeclarationCache;
+import main.util.RabbitMQConfig;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Transport} backed by a RabbitMQ connection.
+ * Publishing and declarations use the calling thread's channel from a {@link ChannelPool},
+ * so every method may be called from any thread. Each consumer runs on its own
+ * dedicated channel, which also carries its acknowledgements.
+ * <p>
+ * Declarations of exchanges and of durable, non-exclusive, non-auto-delete queues (and their
+ * bindings) are cached per connection ({@link DeclarationCache}); the cache is cleared when
+ * the connection shuts down or recovers, or when a pooled channel is reopened. Auto-delete
+ * and exclusive queues are not cached: the broker deletes them on its own (last consumer
+ * gone, connection closed), and a skipped declaration would leave replies unroutable.
+ * Named exclusive queues, which another connection may hold, are declared on a short-lived
+ * channel so that a refused declaration never closes a pooled one.
+ */
+public final class RabbitTransport implements Transport {
+
+    private final Connection connection;
+    private final ChannelPool pool;
+    private final Map<String, Channel> consumerChannels = new ConcurrentHashMap<>();
+    private final DeclarationCache declarations = new DeclarationCache();
+
+    /**
+     * Wraps an open connection.
+     *
+     * @param connection the RabbitMQ connection to use (closed with this transport)
+     */
+    public RabbitTransport(Connection connection) {
+        this.connection = connection;
+        this.pool = new ChannelPool(connection, AppConfig.getPublisherChannels(), declarations::invalidate);
+        connection.addShutdownListener(cause -> declarations.invalidate());
+        if (connection instanceof Recoverable r) {
+            r.addRecoveryListener(new RecoveryListener() {
+                @Override
+                public void handleRecovery(Recoverable recoverable) {
+                    declarations.invalidate();
+                }
+
+                @Override
+                public void handleRecoveryStarted(Recoverable recoverable) {
+                    declarations.invalidate();
+                }
+            });
+        }
+    }
+
+    /**
+     * Connects to a RabbitMQ broker.
+     *
+     * @param host the RabbitMQ server hostname
+     * @param user the username for authentication
+     * @param pass the password for authentication
+     * @return a transport over a new connection
+     */
+    public static RabbitTransport connect(String host, String user, String pass) {
+        return new RabbitTransport(RabbitMQConfig.createConnection(host, user, pass));
+    }
+
+    @Override
+    public void declareExchange(String exchange, BuiltinExchangeType type, boolean durable) throws IOException {
+        String key = DeclarationCache.exchangeKey(exchange);
+        if (declarations.contains(key)) return;
+        pool.call(ch -> ch.exchangeDeclare(exchange, type, durable, false, false, null));
+        declarations.add(key);
+    }
+
+    @Override
+    public String declareQueue(QueueSpec spec) throws IOException {
+        if (spec.name() == null) {
+            return pool.call(ch -> ch.queueDeclare().getQueue()); // server-named, exclusive, auto-delete
+        }
+        String key = DeclarationCache.queueKey(spec.name());
+        if (declarations.contains(key)) return spec.name();
+        String queue = spec.exclusive() ? declareExclusive(spec)
+                : pool.call(ch -> ch.queueDeclare(spec.name(), spec.durable(), spec.exclusive(),
+                        spec.autoDelete(), spec.arguments()).getQueue());
+        if (spec.durable() && !spec.exclusive() && !spec.autoDelete()) declarations.add(key);
+        return queue;
+    }
+
+    /**
+     * Declares a named exclusive queue on a channel of its own. The declaration is expected
+     * to fail while another connection holds the queue (RESOURCE_LOCKED), and the broker then
+     * closes the channel; on a pooled channel that would also drop the declaration cache.
+     * The queue belongs to the connection, so it outlives the channel.
+     */
+    private String declareExclusive(QueueSpec spec) throws IOException {
+        Channel ch = pool.openDedicated();
+        try {
+            return ch.queueDeclare(spec.name(), spec.durable(), true, spec.autoDelete(), spec.arguments()).getQueue();
+        } finally {
+            pool.closeDedicated(ch);
+        }
+    }
+
+    @Override
+    public void deleteQueue(String queue) throws IOException {
+        pool.call(ch -> ch.queueDelete(queue));
+        declarations.invalidate(); // the queue and its bindings are gone
+    }
+
+    @Override
+    public void bindQueue(String queue, String exchange, String routingKey) throws IOException {
+        String key = DeclarationCache.bindingKey(queue, exchange, routingKey);
+        if (declarations.contains(key)) return;
+        pool.call(ch -> ch.queueBind(queue, exchange, routingKey));
+        // A binding lives as long as its queue, so only bindings of cached queues are cached
+        if (declarations.contains(DeclarationCache.queueKey(queue))) declarations.add(key);
+    }
+
+    @Override
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        pool.publish(exchange, routingKey, props, body);
+    }
+
+    @Override
+    public String consume(String queue, boolean autoAck, int prefetch, DeliveryHandler handler) throws IOException {
+        Channel channel = pool.openDedicated();
+        if (prefetch > 0) channel.basicQos(prefetch);
+        DeliverCallback cb = (tag, d) -> handler.handle(new RabbitDelivery(channel, d));
+        String tag = channel.basicConsume(queue, autoAck, cb, t -> {
+        });
+        consumerChannels.put(tag, channel);
+        return tag;
+    }
+
+    @Override
+    public void cancel(String consumerTag) throws IOException {
+        Channel channel = consumerChannels.remove(consumerTag);
+        if (channel == null) throw new IOException("unknown consumer tag: " + consumerTag);
+        // Closing the consumer's channel cancels it and requeues its unacknowledged messages
+        pool.closeDedicated(channel);
+    }
+
+    @Override
+    public void addConnectionListener(ConnectionListener listener) {
+        connection.addShutdownListener(cause -> {
+            if (!cause.isInitiatedByApplication()) listener.lost();
+        });
+        if (connection instanceof Recoverable r) {
+            r.addRecoveryListener(new RecoveryListener() {
+                @Override
+                public void handleRecovery(Recoverable recoverable) {
+                    listener.recovered();
+                }
+
+                @Override
+                public void handleRecoveryStarted(Recoverable recoverable) {
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            pool.close();
+            consumerChannels.clear();
+        } finally {
+            if (connection.isOpen()) connection.close();
+        }
+    }
+
+    /**
+     * A RabbitMQ delivery; acknowledgements go to the channel it arrived on.
+     */
+    private static final class RabbitDelivery implements Delivery {
+        private final Channel channel;
+        private final com.rabbitmq.client.Delivery delivery;
+
+        RabbitDelivery(Channel channel, com.rabbitmq.client.Delivery delivery) {
+            this.channel = channel;
+            this.delivery = delivery;
+        }
+
+        @Override
+        public AMQP.BasicProperties properties() {
+            return delivery.getProperties();
+        }
+
+        @Override
+        public byte[] body() {
+            return delivery.getBody();
+        }
+
+        @Override
+        public String routingKey() {
+            return delivery.getEnvelope().getRoutingKey();
+        }
+
+        @Override
+        public boolean redelivered() {
+            return delivery.getEnvelope().isRedeliver();
+        }
+
+        @Override
+        public void ack(boolean multiple) throws IOException {
+            channel.basicAck(delivery.getEnvelope().getDeliveryTag(), multiple);
+        }
+
+        @Override
+        public void nack(boolean requeue) throws IOException {
+            channel.basicNack(delivery.getEnvelope().getDeliveryTag(), false, requeue);
+        }
+    }
+}
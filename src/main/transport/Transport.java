@@ -0,0 +1,136 @@
+package main.transport;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+
+import java.io.IOException;
+
+/**
+ * Messaging transport used by all actors (clients, agents, buildings).
+ * Models the small subset of AMQP the system relies on: exchanges (fanout and
+ * direct), queues with bindings, publishing through an exchange or straight to a
+ * queue via the default exchange, and consumers with manual ack/nack.
+ * <p>
+ * Implementations:
+ *  - {@link RabbitTransport}: a RabbitMQ connection.
+ *  - {@link InMemoryTransport}: an in-JVM {@link InMemoryBroker}, for tests,
+ *    benchmarks and running the whole system without a broker.
+ * <p>
+ * Message properties reuse {@link AMQP.BasicProperties}, so contentType, headers
+ * and delivery mode travel the same way on every implementation.
+ */
+public interface Transport extends AutoCloseable {
+
+    /**
+     * Notified when the underlying connection is lost and when it has been recovered,
+     * with its queues and consumers re-registered.
+     */
+    interface ConnectionListener {
+        void lost();
+
+        void recovered();
+    }
+
+    /**
+     * Declares an exchange if it does not exist yet.
+     *
+     * @param exchange the exchange name
+     * @param type     FANOUT or DIRECT
+     * @param durable  whether the exchange should survive a broker restart
+     * @throws IOException if the exchange exists with different settings or the declaration fails
+     */
+    void declareExchange(String exchange, BuiltinExchangeType type, boolean durable) throws IOException;
+
+    /**
+     * Declares a queue if it does not exist yet.
+     *
+     * @param spec the queue name and settings; a null name asks for a server-named queue
+     * @return the queue name (generated for server-named queues)
+     * @throws IOException if the declaration fails
+     */
+    String declareQueue(QueueSpec spec) throws IOException;
+
+    /**
+     * Deletes a queue with its bindings and messages. Deleting a missing queue is not an error.
+     *
+     * @param queue the queue name
+     * @throws IOException if the deletion fails
+     */
+    void deleteQueue(String queue) throws IOException;
+
+    /**
+     * Binds a queue to an exchange.
+     *
+     * @param queue      the queue name
+     * @param exchange   the exchange name
+     * @param routingKey the binding key (ignored by fanout exchanges)
+     * @throws IOException if the binding fails
+     */
+    void bindQueue(String queue, String exchange, String routingKey) throws IOException;
+
+    /**
+     * Publishes a message. An empty exchange name addresses the queue named by the
+     * routing key directly (AMQP default exchange). Unroutable messages are dropped.
+     *
+     * @param exchange   the exchange name, or "" for the default exchange
+     * @param routingKey the routing key
+     * @param props      message properties (may be null)
+     * @param body       the message body
+     * @throws IOException if publishing fails
+     */
+    void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) throws IOException;
+
+    /**
+     * Starts a consumer on a queue. Deliveries of one consumer are handled one at a
+     * time, in queue order. Several consumers on the same queue share its messages
+     * round-robin.
+     *
+     * @param queue   the queue name
+     * @param autoAck true to consider messages acknowledged on delivery
+     * @param handler callback for each delivery; must ack/nack unless autoAck is set
+     * @return the consumer tag
+     * @throws IOException if the consumer cannot be registered
+     */
+    default String consume(String queue, boolean autoAck, DeliveryHandler handler) throws IOException {
+        return consume(queue, autoAck, 0, handler);
+    }
+
+    /**
+     * Starts a consumer that holds at most {@code prefetch} unacknowledged deliveries
+     * at a time (AMQP basic.qos). Further messages wait in the queue until earlier
+     * ones are acknowledged or rejected.
+     *
+     * @param queue    the queue name
+     * @param autoAck  true to consider messages acknowledged on delivery
+     * @param prefetch the maximum number of unacknowledged deliveries, 0 for no limit
+     * @param handler  callback for each delivery; must ack/nack unless autoAck is set
+     * @return the consumer tag
+     * @throws IOException if the consumer cannot be registered
+     */
+    String consume(String queue, boolean autoAck, int prefetch, DeliveryHandler handler) throws IOException;
+
+    /**
+     * Cancels a consumer. Its unacknowledged messages are requeued.
+     *
+     * @param consumerTag the tag returned by {@link #consume}
+     * @throws IOException if cancelling fails
+     */
+    void cancel(String consumerTag) throws IOException;
+
+    /**
+     * Registers a listener for connection loss and recovery. Transports whose connection
+     * cannot be lost (in-JVM) never call it.
+     *
+     * @param listener the listener
+     */
+    default void addConnectionListener(ConnectionListener listener) {
+    }
+
+    /**
+     * Closes the transport, cancelling its consumers and releasing exclusive queues.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    void close() throws IOException;
+}
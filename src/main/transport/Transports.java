@@ -0,0 +1,31 @@
+package main.transport;
+
+import main.config.AppConfig;
+
+import java.io.IOException;
+
+/**
+ * Factory for the transport selected in the configuration ({@code transport} setting).
+ */
+public final class Transports {
+
+    // Private constructor to prevent instantiation
+    private Transports() {}
+
+    /**
+     * Opens a new transport of the configured kind: "rabbitmq" connects to the
+     * configured broker, "memory" connects to the process-wide {@link InMemoryBroker}.
+     *
+     * @return a new transport owned by the caller
+     * @throws IOException if connecting fails
+     */
+    public static Transport create() throws IOException {
+        String kind = AppConfig.getTransport();
+        return switch (kind) {
+            case "rabbitmq" -> RabbitTransport.connect(
+                    AppConfig.getRabbitHost(), AppConfig.getRabbitUser(), AppConfig.getRabbitPass());
+            case "memory" -> new InMemoryTransport(InMemoryBroker.shared());
+            default -> throw new IllegalArgumentException("Unknown transport: " + kind);
+        };
+    }
+}
@@ -0,0 +1,359 @@
+package main.util;
+
+import main.domain.BookingReply;
+import main.domain.BookingRequest;
+import main.domain.MessageType;
+import main.domain.WireMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * Compact, versioned binary codec for {@link WireMessage} and its payloads.
+ * <p>
+ * Layout of an encoded message:
+ * <pre>
+ *   byte   MAGIC (0xC5)
+ *   byte   format version
+ *   byte   message type (0 = null, otherwise ordinal + 1)
+ *   str    sender
+ *   byte   payload tag (see TAG_*)
+ *   ...    payload fields
+ * </pre>
+ * Field encodings:
+ * <ul>
+ *   <li>str  - varint (UTF-8 byte length + 1), 0 meaning null, then the UTF-8 bytes</li>
+ *   <li>int  - varint of (zigzag(value) + 1), 0 meaning null</li>
+ *   <li>date - like int, holding the epoch day</li>
+ *   <li>time - varint of (minute of the day + 1), 0 meaning null</li>
+ * </ul>
+ * Version history:
+ * <ul>
+ *   <li>1 - initial layout</li>
+ *   <li>2 - BookingRequest: start time appended</li>
+ *   <li>3 - BookingRequest: hold timeout (int, seconds) appended</li>
+ *   <li>4 - BookingRequest: request id (str) appended</li>
+ *   <li>5 - BookingRequest: end date of a queried range appended</li>
+ * </ul>
+ * New {@link MessageType} constants must be appended so existing ordinals stay stable.
+ * Newer versions may only append fields. The encoder writes the lowest version that holds
+ * the fields a message sets, so nodes that do not know the newer fields still read it.
+ * The decoder reads the fields up to the version found in the message (or the newest it
+ * knows) and ignores any trailing bytes of a newer version, so old and new nodes can
+ * exchange messages during a rolling upgrade.
+ */
+public final class BinaryCodec {
+
+    public static final String CONTENT_TYPE = "application/x-cr-binary";
+    public static final byte MAGIC = (byte) 0xC5;
+    public static final byte VERSION = 5;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_BOOKING_REQUEST = 2;
+    private static final byte TAG_BOOKING_REPLY = 3;
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    // One reusable scratch buffer per thread keeps encoding down to a single allocation
+    private static final ThreadLocal<Encoder> ENCODER = ThreadLocal.withInitial(Encoder::new);
+
+    // Private constructor to prevent instantiation
+    private BinaryCodec() {}
+
+    /**
+     * Encodes a message into its compact binary form.
+     *
+     * @param msg the message to encode
+     * @return the encoded bytes
+     * @throws IllegalArgumentException if the payload type is not supported
+     */
+    public static byte[] encode(WireMessage msg) {
+        Encoder e = ENCODER.get();
+        e.reset();
+        int version = versionOf(msg.payload());
+        e.writeByte(MAGIC);
+        e.writeByte(version);
+        e.writeByte(msg.type() == null ? 0 : msg.type().ordinal() + 1);
+        e.writeString(msg.sender());
+        writePayload(e, msg.payload(), version);
+        return e.toByteArray();
+    }
+
+    /**
+     * Decodes a message previously produced by {@link #encode(WireMessage)}.
+     *
+     * @param bytes the encoded message
+     * @return the decoded message
+     * @throws IllegalArgumentException if the bytes are not a valid message
+     */
+    public static WireMessage decode(byte[] bytes) {
+        Decoder d = new Decoder(bytes);
+        if ((byte) d.readByte() != MAGIC) {
+            throw new IllegalArgumentException("not a binary wire message (bad magic)");
+        }
+        int version = d.readByte();
+        if (version < 1) {
+            throw new IllegalArgumentException("unsupported binary wire version " + version);
+        }
+        int typeCode = d.readByte();
+        if (typeCode > TYPES.length) {
+            throw new IllegalArgumentException("unknown message type code " + typeCode);
+        }
+        MessageType type = typeCode == 0 ? null : TYPES[typeCode - 1];
+        String sender = d.readString();
+        // Fields of a newer version follow the known ones and are skipped
+        Object payload = readPayload(d, Math.min(version, VERSION));
+        return new WireMessage(type, sender, payload);
+    }
+
+    /**
+     * Checks whether a byte array starts like a binary wire message.
+     *
+     * @param bytes the received bytes
+     * @return true if the magic byte matches
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    // payloads
+
+    /**
+     * Gets the lowest version that holds every field a payload sets.
+     *
+     * @param payload the payload
+     * @return the version to write
+     */
+    private static int versionOf(Object payload) {
+        if (!(payload instanceof BookingRequest r)) return 1;
+        if (r.endDate() != null) return 5;
+        if (r.requestId() != null) return 4;
+        if (r.holdSeconds() != null) return 3;
+        if (r.startTime() != null) return 2;
+        return 1;
+    }
+
+    private static void writePayload(Encoder e, Object payload, int version) {
+        if (payload == null) {
+            e.writeByte(TAG_NULL);
+        } else if (payload instanceof String s) {
+            e.writeByte(TAG_STRING);
+            e.writeString(s);
+        } else if (payload instanceof BookingRequest r) {
+            e.writeByte(TAG_BOOKING_REQUEST);
+            e.writeString(r.building());
+            e.writeNullableInt(r.rooms());
+            e.writeDate(r.date());
+            e.writeNullableInt(r.hours());
+            e.writeString(r.reservationNumber());
+            if (version >= 2) e.writeTime(r.startTime());
+            if (version >= 3) e.writeNullableInt(r.holdSeconds());
+            if (version >= 4) e.writeString(r.requestId());
+            if (version >= 5) e.writeDate(r.endDate());
+        } else if (payload instanceof BookingReply r) {
+            e.writeByte(TAG_BOOKING_REPLY);
+            e.writeByte(r.success() ? 1 : 0);
+            e.writeString(r.reservationNumber());
+            e.writeString(r.message());
+        } else {
+            throw new IllegalArgumentException("unsupported payload type: " + payload.getClass().getName());
+        }
+    }
+
+    private static Object readPayload(Decoder d, int version) {
+        int tag = d.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return d.readString();
+            case TAG_BOOKING_REQUEST: {
+                String building = d.readString();
+                Integer rooms = d.readNullableInt();
+                LocalDate date = d.readDate();
+                Integer hours = d.readNullableInt();
+                String reservationNumber = d.readString();
+                LocalTime startTime = version >= 2 ? d.readTime() : null;
+                Integer holdSeconds = version >= 3 ? d.readNullableInt() : null;
+                String requestId = version >= 4 ? d.readString() : null;
+                LocalDate endDate = version >= 5 ? d.readDate() : null;
+                return BookingRequest.of(building, rooms, date, startTime, hours, reservationNumber, holdSeconds,
+                        requestId, endDate);
+            }
+            case TAG_BOOKING_REPLY: {
+                boolean success = d.readByte() != 0;
+                String reservationNumber = d.readString();
+                String message = d.readString();
+                return new BookingReply(success, reservationNumber, message);
+            }
+            default:
+                throw new IllegalArgumentException("unknown payload tag " + tag);
+        }
+    }
+
+    // primitives
+
+    /**
+     * Growable write buffer with varint and UTF-8 helpers.
+     */
+    private static final class Encoder {
+        private byte[] buf = new byte[256];
+        private int pos;
+
+        void reset() {
+            pos = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeNullableInt(Integer v) {
+            writeVarLong(v == null ? 0 : zigzag(v) + 1);
+        }
+
+        void writeDate(LocalDate d) {
+            writeVarLong(d == null ? 0 : zigzag(d.toEpochDay()) + 1);
+        }
+
+        void writeTime(LocalTime t) {
+            writeVarLong(t == null ? 0 : t.getHour() * 60L + t.getMinute() + 1);
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeVarLong(0);
+                return;
+            }
+            int len = s.length();
+            int utf8 = utf8Length(s);
+            writeVarLong(utf8 + 1L);
+            ensure(utf8);
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    buf[pos++] = '?'; // unpaired surrogate, same as String.getBytes(UTF_8)
+                } else {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private static int utf8Length(String s) {
+            int len = s.length();
+            int n = len;
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    if (c < 0x800) {
+                        n += 1;
+                    } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        n += 2; // 4 bytes for the pair of 2 chars
+                        i++;
+                    } else if (!Character.isSurrogate(c)) {
+                        n += 2;
+                    }
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Cursor over a received byte array.
+     */
+    private static final class Decoder {
+        private final byte[] buf;
+        private int pos;
+
+        Decoder(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int readByte() {
+            if (pos >= buf.length) throw new IllegalArgumentException("truncated binary wire message");
+            return buf[pos++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        Integer readNullableInt() {
+            long v = readVarLong();
+            return v == 0 ? null : (int) unzigzag(v - 1);
+        }
+
+        LocalDate readDate() {
+            long v = readVarLong();
+            return v == 0 ? null : LocalDate.ofEpochDay(unzigzag(v - 1));
+        }
+
+        LocalTime readTime() {
+            long v = readVarLong();
+            if (v == 0) return null;
+            if (v > 24 * 60) throw new IllegalArgumentException("invalid time of day");
+            return LocalTime.of((int) ((v - 1) / 60), (int) ((v - 1) % 60));
+        }
+
+        String readString() {
+            long v = readVarLong();
+            if (v == 0) return null;
+            int len = (int) (v - 1);
+            if (len < 0 || pos + len > buf.length) throw new IllegalArgumentException("truncated string");
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,152 @@
+package main.util;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out RabbitMQ channels so that threads never share a channel for publishing.
+ * <p>
+ * AMQP channels must not be used for concurrent publishing. Instead of one channel
+ * guarded by a global lock, the pool keeps a fixed number of publisher channels and
+ * pins every thread to one of them on first use. With at least as many publisher
+ * channels as publishing threads (consumer callbacks, schedulers, reply stages),
+ * each thread effectively owns its channel and the per-channel lock is never contended.
+ * <p>
+ * Consumers get dedicated channels ({@link #openDedicated()}) so their deliveries and
+ * acknowledgements never interleave with publisher traffic.
+ */
+public final class ChannelPool implements AutoCloseable {
+
+    private final Connection connection;
+    private final PublisherSlot[] slots;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final ThreadLocal<PublisherSlot> pinned;
+    private final List<Channel> dedicated = new CopyOnWriteArrayList<>();
+    private final Runnable onReopen;
+
+    /**
+     * Creates a pool on an open connection.
+     *
+     * @param connection        the connection that owns all channels
+     * @param publisherChannels number of publisher channels (at least 1)
+     * @param onReopen          called when a closed publisher channel is replaced (may be null)
+     */
+    public ChannelPool(Connection connection, int publisherChannels, Runnable onReopen) {
+        this.connection = connection;
+        this.onReopen = onReopen;
+        this.slots = new PublisherSlot[Math.max(1, publisherChannels)];
+        for (int i = 0; i < slots.length; i++) slots[i] = new PublisherSlot();
+        this.pinned = ThreadLocal.withInitial(() -> slots[Math.floorMod(nextSlot.getAndIncrement(), slots.length)]);
+    }
+
+    /**
+     * Publishes on the calling thread's publisher channel.
+     *
+     * @param exchange   the exchange name, or "" for the default exchange
+     * @param routingKey the routing key
+     * @param props      message properties (may be null)
+     * @param body       the message body
+     * @throws IOException if publishing fails
+     */
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body)
+            throws IOException {
+        PublisherSlot slot = pinned.get();
+        synchronized (slot) {
+            slot.channel().basicPublish(exchange, routingKey, props, body);
+        }
+    }
+
+    /**
+     * Runs an operation (e.g. a declaration) on the calling thread's publisher channel.
+     *
+     * @param op  the operation to run
+     * @param <T> the result type
+     * @return the result of the operation
+     * @throws IOException if the operation fails
+     */
+    public <T> T call(ChannelOperation<T> op) throws IOException {
+        PublisherSlot slot = pinned.get();
+        synchronized (slot) {
+            return op.apply(slot.channel());
+        }
+    }
+
+    /**
+     * Opens a channel for the exclusive use of one consumer.
+     *
+     * @return a new channel, closed together with the pool
+     * @throws IOException if the channel cannot be opened
+     */
+    public Channel openDedicated() throws IOException {
+        Channel ch = connection.createChannel();
+        dedicated.add(ch);
+        return ch;
+    }
+
+    /**
+     * Closes a channel obtained from {@link #openDedicated()}.
+     *
+     * @param ch the channel to close
+     * @throws IOException if closing fails
+     */
+    public void closeDedicated(Channel ch) throws IOException {
+        dedicated.remove(ch);
+        closeQuietly(ch);
+    }
+
+    /**
+     * Closes every channel of the pool; the connection itself stays open.
+     */
+    @Override
+    public void close() {
+        for (Channel ch : dedicated) closeQuietly(ch);
+        dedicated.clear();
+        for (PublisherSlot slot : slots) {
+            synchronized (slot) {
+                if (slot.channel != null) closeQuietly(slot.channel);
+                slot.channel = null;
+            }
+        }
+    }
+
+    private static void closeQuietly(Channel ch) {
+        try {
+            if (ch.isOpen()) ch.close();
+        } catch (IOException | TimeoutException ignored) {
+        }
+    }
+
+    /**
+     * Operation run against a pooled channel.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface ChannelOperation<T> {
+        T apply(Channel ch) throws IOException;
+    }
+
+    /**
+     * One publisher channel, opened lazily and reopened if the broker closed it
+     * (e.g. after a failed declaration). Guarded by its own monitor.
+     */
+    private final class PublisherSlot {
+        private Channel channel;
+
+        Channel channel() throws IOException {
+            if (channel == null || !channel.isOpen()) {
+                boolean reopened = channel != null;
+                channel = connection.createChannel();
+                if (reopened && onReopen != null) onReopen.run();
+            }
+            return channel;
+        }
+    }
+}
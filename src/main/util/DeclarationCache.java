@@ -0,0 +1,57 @@
+package main.util;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which exchanges, queues and bindings were already declared on a connection,
+ * so repeated declarations (e.g. the shared exchanges and inboxes every component of a
+ * process declares on start) skip the synchronous broker round trip.
+ * <p>
+ * Declarations are idempotent, so the cache only has to be cleared when the broker
+ * side may have lost them: after connection recovery or when a channel is reopened.
+ * It must only hold entities the broker never deletes on its own: auto-delete and
+ * exclusive queues go away with their last consumer or their connection.
+ */
+public final class DeclarationCache {
+
+    private final Set<String> declared = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Checks whether a declaration was already made.
+     *
+     * @param key the declaration key (see the *Key helpers)
+     * @return true if it was declared since the last invalidation
+     */
+    public boolean contains(String key) {
+        return declared.contains(key);
+    }
+
+    /**
+     * Records a successful declaration.
+     *
+     * @param key the declaration key
+     */
+    public void add(String key) {
+        declared.add(key);
+    }
+
+    /**
+     * Forgets all declarations; the next declaration of each resource goes to the broker again.
+     */
+    public void invalidate() {
+        declared.clear();
+    }
+
+    public static String exchangeKey(String exchange) {
+        return "x:" + exchange;
+    }
+
+    public static String queueKey(String queue) {
+        return "q:" + queue;
+    }
+
+    public static String bindingKey(String queue, String exchange, String routingKey) {
+        return "b:" + queue + '|' + exchange + '|' + routingKey;
+    }
+}
@@ -0,0 +1,223 @@
+package main.util;
+
+import com.rabbitmq.client.AMQP;
+import main.config.Constants;
+import main.domain.BookingRequest;
+import main.domain.MessageType;
+import main.domain.WireMessage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utility class for the routing headers carried next to every client request.
+ * The message type, sender and target building are copied into AMQP headers so
+ * that agents can route a request without decoding its body.
+ */
+public final class MessageHeaders {
+
+    // Private constructor to prevent instantiation
+    private MessageHeaders() {}
+
+    /**
+     * Builds AMQP properties for a message, including its routing headers and the
+     * contentType of the current outgoing wire format.
+     *
+     * @param msg        the message that is about to be published
+     * @param persistent whether the message should be persisted by the broker
+     * @return properties carrying contentType, delivery mode and routing headers
+     */
+    public static AMQP.BasicProperties properties(WireMessage msg, boolean persistent) {
+        return new AMQP.BasicProperties.Builder()
+                .contentType(MessageSerializer.contentType())
+                .deliveryMode(persistent ? 2 : null)
+                .headers(headers(msg))
+                .build();
+    }
+
+    /**
+     * Builds AMQP properties for a request that expects a correlated reply.
+     *
+     * @param msg           the message that is about to be published
+     * @param persistent    whether the message should be persisted by the broker
+     * @param correlationId the id the reply must carry back
+     * @param replyTo       the queue the reply should be sent to
+     * @return properties carrying contentType, delivery mode, routing headers and reply metadata
+     */
+    public static AMQP.BasicProperties properties(WireMessage msg, boolean persistent,
+                                                  String correlationId, String replyTo) {
+        return new AMQP.BasicProperties.Builder()
+                .contentType(MessageSerializer.contentType())
+                .deliveryMode(persistent ? 2 : null)
+                .headers(headers(msg))
+                .correlationId(correlationId)
+                .replyTo(replyTo)
+                .build();
+    }
+
+    /**
+     * Builds AMQP properties for a reply, copying the correlationId of the request.
+     * Replies to an explicit replyTo queue may share that queue with other logical
+     * clients, so they also name the client in the {@code cr-client} header.
+     * Replies go to temporary client queues, so they are not persisted.
+     *
+     * @param request  the properties of the request being answered (may be null)
+     * @param clientId the original sender of the request
+     * @return properties for the reply
+     */
+    public static AMQP.BasicProperties replyProperties(AMQP.BasicProperties request, String clientId) {
+        String correlationId = request == null ? null : request.getCorrelationId();
+        String replyTo = request == null ? null : request.getReplyTo();
+        if (correlationId == null && replyTo == null) return MessageSerializer.properties(false);
+        return new AMQP.BasicProperties.Builder()
+                .contentType(MessageSerializer.contentType())
+                .correlationId(correlationId)
+                .headers(replyTo == null || clientId == null ? null : Map.of(Constants.HDR_CLIENT, clientId))
+                .build();
+    }
+
+    /**
+     * Resolves the queue a reply should be published to: the replyTo of the request
+     * if set, otherwise the private queue of the sending client.
+     *
+     * @param request  the properties of the request being answered (may be null)
+     * @param clientId the original sender of the request
+     * @return the reply queue name
+     */
+    public static String replyQueue(AMQP.BasicProperties request, String clientId) {
+        String replyTo = request == null ? null : request.getReplyTo();
+        return replyTo != null && !replyTo.isBlank() ? replyTo : Constants.clientReplyQueue(clientId);
+    }
+
+    /**
+     * Extracts the routing headers of a message.
+     *
+     * @param msg the message to describe
+     * @return a map with type, sender and (for booking requests) building, date and
+     *         reservation id, which pick the partition of a partitioned building
+     */
+    public static Map<String, Object> headers(WireMessage msg) {
+        Map<String, Object> h = new HashMap<>(8);
+        if (msg.type() != null) h.put(Constants.HDR_TYPE, msg.type().name());
+        if (msg.sender() != null) h.put(Constants.HDR_SENDER, msg.sender());
+        if (msg.payload() instanceof BookingRequest req) {
+            if (req.building() != null) h.put(Constants.HDR_BUILDING, req.building());
+            if (req.date() != null) h.put(Constants.HDR_DATE, req.date().toEpochDay());
+            if (req.reservationNumber() != null) h.put(Constants.HDR_RESERVATION, req.reservationNumber());
+        }
+        return h;
+    }
+
+    /**
+     * Reads the message type header.
+     *
+     * @param props the properties of a delivery
+     * @return the message type, or null if the header is missing or unknown
+     */
+    public static MessageType type(AMQP.BasicProperties props) {
+        String name = header(props, Constants.HDR_TYPE);
+        if (name == null) return null;
+        try {
+            return MessageType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the sender header.
+     *
+     * @param props the properties of a delivery
+     * @return the original sender id, or null if missing
+     */
+    public static String sender(AMQP.BasicProperties props) {
+        return header(props, Constants.HDR_SENDER);
+    }
+
+    /**
+     * Reads the target building header.
+     *
+     * @param props the properties of a delivery
+     * @return the target building name, or null if missing
+     */
+    public static String building(AMQP.BasicProperties props) {
+        return header(props, Constants.HDR_BUILDING);
+    }
+
+    /**
+     * Reads the booking date header.
+     *
+     * @param props the properties of a delivery
+     * @return the booking date as epoch day, or null if missing or malformed
+     */
+    public static Long date(AMQP.BasicProperties props) {
+        String v = header(props, Constants.HDR_DATE);
+        if (v == null) return null;
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the reservation id header.
+     *
+     * @param props the properties of a delivery
+     * @return the reservation id, or null if missing
+     */
+    public static String reservation(AMQP.BasicProperties props) {
+        return header(props, Constants.HDR_RESERVATION);
+    }
+
+    /**
+     * Builds the headers a building announces itself with: its partition scheme.
+     *
+     * @param scheme how the building is partitioned
+     * @return the announcement headers
+     */
+    public static Map<String, Object> announceHeaders(PartitionScheme scheme) {
+        return Map.of(Constants.HDR_PARTITIONS, scheme.partitions(), Constants.HDR_PARTITION_DAYS, scheme.blockDays());
+    }
+
+    /**
+     * Reads the partition scheme of a building announcement.
+     *
+     * @param props the properties of the announcement (may be null)
+     * @return the announced scheme, or {@link PartitionScheme#NONE} if none (older buildings)
+     */
+    public static PartitionScheme partitionScheme(AMQP.BasicProperties props) {
+        String partitions = header(props, Constants.HDR_PARTITIONS);
+        String days = header(props, Constants.HDR_PARTITION_DAYS);
+        if (partitions == null) return PartitionScheme.NONE;
+        try {
+            return new PartitionScheme(Integer.parseInt(partitions), days == null ? 1 : Integer.parseInt(days));
+        } catch (IllegalArgumentException e) {
+            return PartitionScheme.NONE;
+        }
+    }
+
+    /**
+     * Reads the logical client header of a reply.
+     *
+     * @param props the properties of a delivery
+     * @return the logical client id, or null if missing
+     */
+    public static String client(AMQP.BasicProperties props) {
+        return header(props, Constants.HDR_CLIENT);
+    }
+
+    /**
+     * Reads a header as a string. RabbitMQ delivers string headers as LongString,
+     * so the value is converted with toString().
+     *
+     * @param props the properties of a delivery (may be null)
+     * @param name  the header name
+     * @return the header value, or null if missing
+     */
+    private static String header(AMQP.BasicProperties props, String name) {
+        if (props == null || props.getHeaders() == null) return null;
+        Object v = props.getHeaders().get(name);
+        return v == null ? null : v.toString();
+    }
+}
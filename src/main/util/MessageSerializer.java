@@ -1,5 +1,7 @@
 package main.util;
 
+import com.rabbitmq.client.AMQP;
+import main.config.AppConfig;
 import main.domain.WireMessage;
 
 import java.io.*;
@@ -7,32 +9,90 @@ import java.io.*;
 /**
  * Utility class for serializing and deserializing messages for RabbitMQ communication.
  * Provides methods to convert objects to bytes and back, primarily used for WireMessage objects.
+ * <p>
+ * The format written by this process is chosen with the {@code wire.format} setting
+ * (see {@link AppConfig#getWireFormat()}). Reading always accepts every {@link WireFormat},
+ * using the AMQP contentType property and falling back to sniffing the first bytes.
  */
 public final class MessageSerializer {
 
+    // Java serialization streams always start with 0xACED
+    private static final byte JAVA_MAGIC_0 = (byte) 0xAC;
+    private static final byte JAVA_MAGIC_1 = (byte) 0xED;
+
+    private static volatile WireFormat format = AppConfig.getWireFormat();
+
+    // Immutable AMQP properties per [format][persistent], built once instead of per publish
+    private static final AMQP.BasicProperties[][] PROPERTIES = new AMQP.BasicProperties[WireFormat.values().length][2];
+
+    static {
+        for (WireFormat f : WireFormat.values()) {
+            PROPERTIES[f.ordinal()][0] = new AMQP.BasicProperties.Builder()
+                    .contentType(f.contentType()).build();
+            PROPERTIES[f.ordinal()][1] = new AMQP.BasicProperties.Builder()
+                    .contentType(f.contentType()).deliveryMode(2).build();
+        }
+    }
+
     // Private constructor to prevent instantiation
     private MessageSerializer() {}
 
     /**
-     * Serializes a Serializable object into a byte array.
-     * Primarily used for converting WireMessage objects for RabbitMQ transmission.
+     * Gets the format this process writes.
+     *
+     * @return the current outgoing wire format
+     */
+    public static WireFormat format() {
+        return format;
+    }
+
+    /**
+     * Overrides the format this process writes (e.g. for tests and benchmarks).
+     *
+     * @param f the new outgoing wire format
+     */
+    public static void setFormat(WireFormat f) {
+        format = java.util.Objects.requireNonNull(f);
+    }
+
+    /**
+     * Gets the contentType to advertise for messages produced by {@link #serialize(Object)}.
+     *
+     * @return the MIME type of the current outgoing format
+     */
+    public static String contentType() {
+        return format.contentType();
+    }
+
+    /**
+     * Gets AMQP properties advertising the current outgoing format.
+     *
+     * @param persistent whether the message should be persisted by the broker
+     * @return properties carrying the contentType (and delivery mode if persistent)
+     */
+    public static AMQP.BasicProperties properties(boolean persistent) {
+        return PROPERTIES[format.ordinal()][persistent ? 1 : 0];
+    }
+
+    /**
+     * Serializes an object into a byte array using the current outgoing format.
+     * WireMessages use the configured format; any other object falls back to
+     * Java serialization.
      *
      * @param obj the object to serialize (must implement Serializable)
      * @return byte array representation of the object
      * @throws RuntimeException if serialization fails
      */
     public static byte[] serialize(Object obj) {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-            oos.writeObject(obj);
-            return bos.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException("serialize failed: " + e.getMessage(), e);
+        if (format == WireFormat.BINARY && obj instanceof WireMessage msg) {
+            return BinaryCodec.encode(msg);
         }
+        return javaSerialize(obj);
     }
 
     /**
-     * Deserializes a byte array back into a WireMessage object.
+     * Deserializes a byte array back into a WireMessage object, detecting the format
+     * from the first bytes.
      * Used for converting received RabbitMQ messages back to domain objects.
      *
      * @param bytes the byte array to deserialize
@@ -40,6 +100,51 @@ public final class MessageSerializer {
      * @throws RuntimeException if deserialization fails due to I/O or class issues
      */
     public static WireMessage deserialize(byte[] bytes) {
+        return deserialize(bytes, null);
+    }
+
+    /**
+     * Deserializes a byte array back into a WireMessage object using the advertised format.
+     *
+     * @param bytes       the byte array to deserialize
+     * @param contentType the AMQP contentType of the delivery (may be null)
+     * @return the deserialized WireMessage object
+     * @throws RuntimeException if deserialization fails
+     */
+    public static WireMessage deserialize(byte[] bytes, String contentType) {
+        WireFormat f = WireFormat.fromContentType(contentType);
+        if (f == null) f = sniff(bytes);
+        return switch (f) {
+            case BINARY -> BinaryCodec.decode(bytes);
+            case JAVA -> javaDeserialize(bytes);
+        };
+    }
+
+    /**
+     * Detects the format of a message without a (known) contentType.
+     *
+     * @param bytes the received bytes
+     * @return the detected format
+     * @throws RuntimeException if the bytes match no known format
+     */
+    private static WireFormat sniff(byte[] bytes) {
+        if (BinaryCodec.isBinary(bytes)) return WireFormat.BINARY;
+        if (bytes.length > 1 && bytes[0] == JAVA_MAGIC_0 && bytes[1] == JAVA_MAGIC_1) return WireFormat.JAVA;
+        throw new RuntimeException("deserialize failed: unknown wire format");
+    }
+
+    private static byte[] javaSerialize(Object obj) {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(obj);
+            oos.flush();
+            return bos.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("serialize failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static WireMessage javaDeserialize(byte[] bytes) {
         try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
             Object o = ois.readObject();
             return (WireMessage) o;
@@ -47,4 +152,4 @@ public final class MessageSerializer {
             throw new RuntimeException("deserialize failed: " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+}
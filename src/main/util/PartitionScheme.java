@@ -0,0 +1,153 @@
+package main.util;
+
+import main.config.Constants;
+
+import java.time.LocalDate;
+
+/**
+ * How the dates of one building are split over partitions, each served by its own
+ * building instance with its own inbox, journal and capacity ledger.
+ * <p>
+ * Dates are cut into blocks of {@code blockDays} consecutive days, and the blocks are dealt
+ * round-robin over the partitions, so the busy near future is spread over all of them.
+ * A reservation id carries its partition in its shard bits, offset by the building's own
+ * shard ({@link ReservationIds#shardFor(String)}), so confirm/cancel requests can be
+ * routed without a lookup. With a single partition the building keeps its plain routing
+ * key, queue and id shard.
+ *
+ * @param partitions the number of partitions (1 to {@link ReservationIds#MAX_SHARD} + 1)
+ * @param blockDays  the number of consecutive days in the same partition
+ */
+public record PartitionScheme(int partitions, int blockDays) {
+
+    /** A building that is not partitioned. */
+    public static final PartitionScheme NONE = new PartitionScheme(1, 1);
+
+    private static final int SHARDS = ReservationIds.MAX_SHARD + 1;
+
+    /**
+     * Validates the scheme.
+     *
+     * @throws IllegalArgumentException if a value is out of range
+     */
+    public PartitionScheme {
+        if (partitions < 1 || partitions > SHARDS) {
+            throw new IllegalArgumentException("partitions must be 1.." + SHARDS + ": " + partitions);
+        }
+        if (blockDays < 1) throw new IllegalArgumentException("blockDays must be > 0: " + blockDays);
+    }
+
+    /**
+     * Tells whether dates are split at all.
+     *
+     * @return true for more than one partition
+     */
+    public boolean partitioned() {
+        return partitions > 1;
+    }
+
+    /**
+     * Gets the partition of a date.
+     *
+     * @param date the booking date
+     * @return the partition index
+     */
+    public int ofDate(LocalDate date) {
+        return ofEpochDay(date.toEpochDay());
+    }
+
+    /**
+     * Gets the partition of a date given as epoch day.
+     *
+     * @param epochDay the booking date, as {@link LocalDate#toEpochDay()}
+     * @return the partition index
+     */
+    public int ofEpochDay(long epochDay) {
+        return (int) Math.floorMod(Math.floorDiv(epochDay, blockDays), (long) partitions);
+    }
+
+    /**
+     * Gets the partition a reservation was booked in, from its id.
+     *
+     * @param building      the building name
+     * @param reservationId the reservation id as sent by clients
+     * @return the partition index (0 for ids not generated under this scheme)
+     */
+    public int ofReservation(String building, String reservationId) {
+        long id = ReservationIds.parse(reservationId);
+        if (id <= 0 || !partitioned()) return 0;
+        int partition = Math.floorMod(ReservationIds.shardOf(id) - ReservationIds.shardFor(building), SHARDS);
+        return partition < partitions ? partition : 0;
+    }
+
+    /**
+     * Gets the id shard of a partition.
+     *
+     * @param building  the building name
+     * @param partition the partition index
+     * @return the shard its reservation ids are generated in
+     */
+    public int shard(String building, int partition) {
+        return (ReservationIds.shardFor(building) + partition) & ReservationIds.MAX_SHARD;
+    }
+
+    /**
+     * Gets the routing key of a partition on the building direct exchange.
+     *
+     * @param building  the building name
+     * @param partition the partition index
+     * @return {@code building.<name>.p<k>}, or {@code building.<name>} if not partitioned
+     */
+    public String routingKey(String building, int partition) {
+        return partitioned() ? Constants.buildingRoutingKey(building, partition)
+                : Constants.buildingRoutingKey(building);
+    }
+
+    /**
+     * Gets the inbox queue of a partition.
+     *
+     * @param building  the building name
+     * @param partition the partition index
+     * @return {@code cr.building.<name>.p<k>.inbox}, or {@code cr.building.<name>.inbox} if not partitioned
+     */
+    public String inboxQueue(String building, int partition) {
+        return partitioned() ? Constants.buildingInboxQueue(building, partition)
+                : Constants.buildingInboxQueue(building);
+    }
+
+    /**
+     * Gets the exclusive queue whose holder owns a partition (see {@link main.transport.QueueSpec#exclusive}).
+     *
+     * @param building  the building name
+     * @param partition the partition index
+     * @return {@code cr.building.<name>.p<k>.owner}, or {@code cr.building.<name>.owner} if not partitioned
+     */
+    public String ownerQueue(String building, int partition) {
+        return partitioned() ? Constants.buildingOwnerQueue(building, partition)
+                : Constants.buildingOwnerQueue(building);
+    }
+
+    /**
+     * Gets the routing key of a partition's replication stream.
+     *
+     * @param building  the building name
+     * @param partition the partition index
+     * @return {@code replica.<name>.p<k>}, or {@code replica.<name>} if not partitioned
+     */
+    public String replicationKey(String building, int partition) {
+        return partitioned() ? Constants.replicationRoutingKey(building, partition)
+                : Constants.replicationRoutingKey(building);
+    }
+
+    /**
+     * Gets the queue on which the primary of a partition answers sync requests of its followers.
+     *
+     * @param building  the building name
+     * @param partition the partition index
+     * @return {@code cr.building.<name>.p<k>.sync}, or {@code cr.building.<name>.sync} if not partitioned
+     */
+    public String syncQueue(String building, int partition) {
+        return partitioned() ? Constants.buildingSyncQueue(building, partition)
+                : Constants.buildingSyncQueue(building);
+    }
+}
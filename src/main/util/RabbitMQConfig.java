@@ -3,13 +3,17 @@ package main.util;
 import com.rabbitmq.client.BuiltinExchangeType;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.Channel;
+import main.config.AppConfig;
 import main.config.Constants;
+import main.transport.QueueSpec;
+import main.transport.Transport;
 
 /**
  * Utility class for RabbitMQ configuration and setup.
  * Provides methods for creating connections and declaring common
  * exchanges and queues used throughout the application.
+ * The declarations work on any {@link Transport}, so the same topology
+ * is used with RabbitMQ and with the in-memory broker.
  */
 public final class RabbitMQConfig {
 
@@ -31,6 +35,11 @@ public final class RabbitMQConfig {
             f.setHost(host);
             if (user != null && !user.isBlank()) f.setUsername(user);
             if (pass != null && !pass.isBlank()) f.setPassword(pass);
+            // Recover connection and channels after network failures; transports
+            // drop their cached declarations when this happens
+            f.setAutomaticRecoveryEnabled(true);
+            // Bounds how long a dead building process keeps its building (see BuildingService ownership)
+            f.setRequestedHeartbeat(AppConfig.getRabbitHeartbeatSeconds());
             // Additional connection settings can be configured here if needed
             return f.newConnection();
         } catch (Exception e) {
@@ -39,16 +48,16 @@ public final class RabbitMQConfig {
     }
 
     /**
-     * Should be called once per channel during initialization.
+     * Should be called once per transport during initialization.
      *
-     * @param ch the channel to use for declaration
+     * @param transport the transport to use for declaration
      * @throws RuntimeException if exchange declaration fails
      */
-    public static void declareCommonExchanges(Channel ch) {
+    public static void declareCommonExchanges(Transport transport) {
         try {
             // Make exchanges durable (survive broker restarts)
-            ch.exchangeDeclare(Constants.BUILDINGS_FANOUT_EXCHANGE, BuiltinExchangeType.FANOUT, true, false, false, null);
-            ch.exchangeDeclare(Constants.BUILDING_DIRECT_EXCHANGE, BuiltinExchangeType.DIRECT, true, false, false, null);
+            transport.declareExchange(Constants.BUILDINGS_FANOUT_EXCHANGE, BuiltinExchangeType.FANOUT, true);
+            transport.declareExchange(Constants.BUILDING_DIRECT_EXCHANGE, BuiltinExchangeType.DIRECT, true);
         } catch (Exception e) {
             throw new RuntimeException("declareCommonExchanges failed: " + e.getMessage(), e);
         }
@@ -58,13 +67,13 @@ public final class RabbitMQConfig {
      * Ensures the shared client-to-agent inbox queue exists.
      * Multiple agents can consume from this queue for load distribution.
      * Made durable for fault tolerance.
-     * @param ch the channel to use for declaration
+     * @param transport the transport to use for declaration
      * @throws RuntimeException if queue declaration fails
      */
-    public static void declareAgentInbox(Channel ch) {
+    public static void declareAgentInbox(Transport transport) {
         try {
             // Make durable (survive broker restarts)
-            ch.queueDeclare(Constants.AGENT_INBOX_QUEUE, true, false, false, null);
+            transport.declareQueue(QueueSpec.durable(Constants.AGENT_INBOX_QUEUE));
         } catch (Exception e) {
             throw new RuntimeException("declareAgentInbox failed: " + e.getMessage(), e);
         }
@@ -74,38 +83,68 @@ public final class RabbitMQConfig {
      * Ensures a client-specific reply queue exists.
      * Uses auto-delete since these queues are temporary and client-specific.
      *
-     * @param ch the channel to use for declaration
+     * @param transport the transport to use for declaration
      * @param clientId the unique identifier of the client
      * @return the name of the declared queue
      * @throws RuntimeException if queue declaration fails
      */
-    public static String declareClientReplyQueue(Channel ch, String clientId) {
+    public static String declareClientReplyQueue(Transport transport, String clientId) {
         try {
             String q = Constants.clientReplyQueue(clientId);
-            ch.queueDeclare(q, false, false, true, null);
+            transport.declareQueue(QueueSpec.autoDelete(q));
             return q;
         } catch (Exception e) {
             throw new RuntimeException("declareClientReplyQueue failed: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Declares the direct exchange primaries publish their replication streams on.
+     *
+     * @param transport the transport to use for declaration
+     * @throws RuntimeException if declaration fails
+     */
+    public static void declareReplicationExchange(Transport transport) {
+        try {
+            transport.declareExchange(Constants.REPLICATION_EXCHANGE, BuiltinExchangeType.DIRECT, false);
+        } catch (Exception e) {
+            throw new RuntimeException("declareReplicationExchange failed: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Declares and binds a building-specific inbox queue to the direct exchange.
      * Each building has its own queue for receiving commands.
      * Made durable for fault tolerance.
      *
-     * @param ch the channel to use for declaration and binding
+     * @param transport the transport to use for declaration and binding
+     * @param buildingName the name of the building
+     * @return the name of the declared and bound queue
+     * @throws RuntimeException if declaration or binding fails
+     */
+    public static String declareAndBindBuildingInbox(Transport transport, String buildingName) {
+        return declareAndBindBuildingInbox(transport, buildingName, PartitionScheme.NONE, 0);
+    }
+
+    /**
+     * Declares and binds the inbox queue of one partition of a building
+     * (routing key {@code building.<name>.p<k>}, or the plain building key if not partitioned).
+     *
+     * @param transport the transport to use for declaration and binding
      * @param buildingName the name of the building
+     * @param scheme how the building is partitioned
+     * @param partition the partition served by the caller
      * @return the name of the declared and bound queue
      * @throws RuntimeException if declaration or binding fails
      */
-    public static String declareAndBindBuildingInbox(Channel ch, String buildingName) {
+    public static String declareAndBindBuildingInbox(Transport transport, String buildingName, PartitionScheme scheme,
+                                                     int partition) {
         try {
-            String q  = Constants.buildingInboxQueue(buildingName);
-            String rk = Constants.buildingRoutingKey(buildingName);
+            String q  = scheme.inboxQueue(buildingName, partition);
+            String rk = scheme.routingKey(buildingName, partition);
             // Make durable (survive broker restarts)
-            ch.queueDeclare(q, true, false, false, null);
-            ch.queueBind(q, Constants.BUILDING_DIRECT_EXCHANGE, rk);
+            transport.declareQueue(QueueSpec.durable(q));
+            transport.bindQueue(q, Constants.BUILDING_DIRECT_EXCHANGE, rk);
             return q;
         } catch (Exception e) {
             throw new RuntimeException("declareAndBindBuildingInbox failed: " + e.getMessage(), e);
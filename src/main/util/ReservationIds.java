@@ -0,0 +1,192 @@
+package main.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generator of compact, time-ordered 64-bit reservation ids.
+ * <p>
+ * Bit layout (the sign bit is always 0):
+ * <pre>
+ *   41 bits  milliseconds since 2024-01-01T00:00Z (about 69 years)
+ *   10 bits  shard (identifies the building)
+ *   12 bits  sequence within the millisecond
+ * </pre>
+ * Ids are rendered as 13 Crockford base32 characters, zero padded, so their string
+ * form sorts like the number and like the creation time. Generating is a single CAS
+ * on the last timestamp/sequence pair. If a millisecond's 4096 sequence numbers are used
+ * up, or the clock steps back, ids borrow from the following milliseconds rather than
+ * repeat.
+ * <p>
+ * Ids that are not in this form (e.g. UUIDs of reservations made by older versions)
+ * still get a 64-bit key from {@link #key(String)}: a hash with the sign bit set, so it
+ * never equals a generated id.
+ */
+public final class ReservationIds {
+
+    public static final long EPOCH_MILLIS = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    public static final int SHARD_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_SHARD = (1 << SHARD_BITS) - 1;
+    public static final int LENGTH = 13;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        java.util.Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+            DECODE[Character.toLowerCase(ALPHABET[i])] = (byte) i;
+        }
+        // Crockford aliases for easily confused characters
+        DECODE['O'] = DECODE['o'] = 0;
+        DECODE['I'] = DECODE['i'] = DECODE['L'] = DECODE['l'] = 1;
+    }
+
+    private final long shard;
+    // (milliseconds since EPOCH_MILLIS << SEQUENCE_BITS) | sequence of the last id
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * Creates a generator for one shard.
+     *
+     * @param shard the shard number, 0 to {@link #MAX_SHARD}
+     * @throws IllegalArgumentException if the shard is out of range
+     */
+    public ReservationIds(int shard) {
+        if (shard < 0 || shard > MAX_SHARD) throw new IllegalArgumentException("shard out of range: " + shard);
+        this.shard = shard;
+    }
+
+    /**
+     * Derives a stable shard number from a building name.
+     *
+     * @param buildingName the building name
+     * @return a shard number in 0..{@link #MAX_SHARD}
+     */
+    public static int shardFor(String buildingName) {
+        return (int) (legacyHash(buildingName) & MAX_SHARD);
+    }
+
+    /**
+     * Generates the next id.
+     *
+     * @return a positive id, greater than every id generated or observed before
+     */
+    public long next() {
+        while (true) {
+            long prev = last.get();
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            long candidate = Math.max(now << SEQUENCE_BITS, prev + 1);
+            if (last.compareAndSet(prev, candidate)) {
+                return (candidate >>> SEQUENCE_BITS) << (SHARD_BITS + SEQUENCE_BITS)
+                        | shard << SEQUENCE_BITS
+                        | (candidate & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * Generates the next id in its string form.
+     *
+     * @return the rendered id
+     */
+    public String nextString() {
+        return format(next());
+    }
+
+    /**
+     * Makes sure later ids are greater than an existing one, e.g. one restored from disk
+     * after the clock was set back.
+     *
+     * @param id an id generated before
+     */
+    public void observe(long id) {
+        if (id <= 0) return;
+        long packed = timestampOf(id) << SEQUENCE_BITS | (id & SEQUENCE_MASK);
+        last.accumulateAndGet(packed, Math::max);
+    }
+
+    /**
+     * Gets the creation time of an id.
+     *
+     * @param id a generated id
+     * @return milliseconds since {@link #EPOCH_MILLIS}
+     */
+    public static long timestampOf(long id) {
+        return id >>> (SHARD_BITS + SEQUENCE_BITS);
+    }
+
+    /**
+     * Gets the shard an id was generated in.
+     *
+     * @param id a generated id
+     * @return the shard number
+     */
+    public static int shardOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_SHARD;
+    }
+
+    /**
+     * Renders an id as 13 Crockford base32 characters.
+     *
+     * @param id a generated (non-negative) id
+     * @return the string form
+     */
+    public static String format(long id) {
+        char[] out = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            out[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(out);
+    }
+
+    /**
+     * Parses the string form of a generated id.
+     *
+     * @param s the string
+     * @return the id, or -1 if the string is not a generated id
+     */
+    public static long parse(String s) {
+        if (s == null || s.length() != LENGTH) return -1;
+        long id = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = s.charAt(i);
+            int v = c < 128 ? DECODE[c] : -1;
+            if (v < 0) return -1;
+            id = id << 5 | v;
+        }
+        // 13 characters carry 65 bits; the top two must be zero for a non-negative long
+        return DECODE[s.charAt(0)] > 7 ? -1 : id;
+    }
+
+    /**
+     * Gets the 64-bit key of any reservation id: the id itself if generated here,
+     * otherwise a hash with the sign bit set.
+     *
+     * @param reservationId the reservation id as sent by clients
+     * @return a non-zero key
+     */
+    public static long key(String reservationId) {
+        long id = parse(reservationId);
+        return id > 0 ? id : legacyHash(reservationId) | Long.MIN_VALUE;
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes with a final avalanche.
+     */
+    private static long legacyHash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,59 @@
+package main.util;
+
+/**
+ * Encodings a {@link main.domain.WireMessage} can travel in.
+ * The format of every message is advertised in the AMQP {@code contentType}
+ * property, so actors using different formats can coexist during a rollout:
+ * every actor decodes both, and each process chooses which one it writes.
+ */
+public enum WireFormat {
+    /**
+     * Standard Java object serialization (the original format).
+     */
+    JAVA("application/x-java-serialized-object"),
+
+    /**
+     * Hand-written compact binary codec, see {@link BinaryCodec}.
+     */
+    BINARY(BinaryCodec.CONTENT_TYPE);
+
+    private final String contentType;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Gets the MIME type advertised in the AMQP contentType property.
+     *
+     * @return the content type for this format
+     */
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Resolves a format from an AMQP contentType property.
+     *
+     * @param contentType the content type of a received message (may be null)
+     * @return the matching format, or null if the content type is unknown or missing
+     */
+    public static WireFormat fromContentType(String contentType) {
+        if (contentType == null) return null;
+        for (WireFormat f : values()) {
+            if (contentType.startsWith(f.contentType)) return f;
+        }
+        return null;
+    }
+
+    /**
+     * Parses a format name from configuration ("java" or "binary").
+     *
+     * @param name the configured name
+     * @return the matching format
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static WireFormat parse(String name) {
+        return valueOf(name.trim().toUpperCase(java.util.Locale.ROOT));
+    }
+}